@@ -0,0 +1,315 @@
+/*
+ * Copyright 2018-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A bounded, thread-safe cache from condition strings to the {@link ParseResult}s of parsing them. Each
+ * {@link CppConditionParser} has its own cache, so the settings of the parser are implicitly part of the key.
+ * <p>
+ * Conditions can be looked up by a range of any {@link CharSequence}, so that a lookup does not need to create a
+ * string of the condition. Only when a result is added, the condition is copied into a string.
+ * <p>
+ * Eviction is frequency-aware: each entry counts how often it was read. When the cache is full, a few entries are
+ * sampled at random positions and the least frequently used one is evicted; the counters of the other sampled entries
+ * are halved, so that entries that were popular a long time ago eventually become candidates for eviction, too. To
+ * sample at random positions, every cached key occupies a slot in an array; a new entry takes the slot of the entry
+ * that it replaced. The array grows with the number of entries, so a large maximum size does not cost memory until
+ * the cache is actually filled.
+ * <p>
+ * Only eviction considers the frequency: there is no admission filter, so every added condition is cached, even if
+ * this evicts an entry that is used more often than the new one will be.
+ *
+ * @author Adam
+ */
+final class ConditionCache {
+
+    /**
+     * The number of entries that are looked at to find an entry to evict.
+     */
+    private static final int SAMPLE_SIZE = 8;
+
+    /**
+     * The initial length of the {@link #slots} array.
+     */
+    private static final int INITIAL_SLOTS = 64;
+
+    /**
+     * A cached result together with its usage counter.
+     */
+    private static final class Entry {
+
+        private final @NonNull ParseResult result;
+
+        /**
+         * The index of the slot in {@link ConditionCache#slots} that holds the key of this entry.
+         */
+        private final int slot;
+
+        /**
+         * How often this entry was read. Not synchronized, since an approximate number is good enough.
+         */
+        private volatile int frequency;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param result The cached result.
+         * @param slot The index of the slot that holds the key of this entry.
+         */
+        Entry(@NonNull ParseResult result, int slot) {
+            this.result = result;
+            this.slot = slot;
+            this.frequency = 1;
+        }
+
+    }
+
+    /**
+     * The key of a cached condition: a range of a {@link CharSequence}. Keys are equal if the characters in their
+     * ranges are equal, and the hash code is the same as the one of a {@link String} with these characters.
+     * <p>
+     * Keys that are stored in the cache always use a {@link String}; keys for lookups may use any (even mutable)
+     * {@link CharSequence}, since they are only used during the lookup.
+     */
+    private static final class Key {
+
+        private final @NonNull CharSequence chars;
+
+        private final int start;
+
+        private final int end;
+
+        private final int hash;
+
+        /**
+         * Creates a key for a complete string.
+         * 
+         * @param condition The condition string.
+         */
+        Key(@NonNull String condition) {
+            this.chars = condition;
+            this.start = 0;
+            this.end = condition.length();
+            this.hash = condition.hashCode();
+        }
+
+        /**
+         * Creates a key for a range of a character sequence.
+         * 
+         * @param chars The character sequence that contains the condition.
+         * @param start The index of the first character of the condition.
+         * @param end The index after the last character of the condition.
+         */
+        Key(@NonNull CharSequence chars, int start, int end) {
+            this.chars = chars;
+            this.start = start;
+            this.end = end;
+
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + chars.charAt(i);
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            boolean equal = false;
+            if (obj instanceof Key) {
+                Key other = (Key) obj;
+                equal = this.hash == other.hash && this.end - this.start == other.end - other.start;
+                for (int i = 0; equal && i < this.end - this.start; i++) {
+                    equal = this.chars.charAt(this.start + i) == other.chars.charAt(other.start + i);
+                }
+            }
+            return equal;
+        }
+
+    }
+
+    private final @NonNull ConcurrentHashMap<@NonNull Key, @NonNull Entry> entries;
+
+    private final int maxSize;
+
+    /**
+     * The keys of all cached entries, indexed by {@link Entry#slot}. Only the first {@link #usedSlots} slots are
+     * filled. Grows up to {@link #maxSize} slots. Guarded by the lock of this cache.
+     */
+    private @Nullable Key @NonNull [] slots;
+
+    /**
+     * The number of filled slots. Guarded by the lock of this cache.
+     */
+    private int usedSlots;
+
+    private final @NonNull LongAdder hits;
+
+    private final @NonNull LongAdder misses;
+
+    /**
+     * Creates a new, empty cache.
+     *
+     * @param maxSize The maximum number of entries in this cache. Must be positive.
+     */
+    ConditionCache(int maxSize) {
+        this.entries = new ConcurrentHashMap<>();
+        this.maxSize = maxSize;
+        this.slots = new @Nullable Key[Math.min(maxSize, INITIAL_SLOTS)];
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Returns the cached result for the given condition.
+     *
+     * @param condition The condition string.
+     *
+     * @return The cached result, or <code>null</code> if the condition is not cached.
+     */
+    @Nullable ParseResult get(@NonNull String condition) {
+        return get(new Key(condition));
+    }
+
+    /**
+     * Returns the cached result for the condition in the given range of a character sequence.
+     *
+     * @param condition The character sequence that contains the condition.
+     * @param start The index of the first character of the condition.
+     * @param end The index after the last character of the condition.
+     *
+     * @return The cached result, or <code>null</code> if the condition is not cached.
+     */
+    @Nullable ParseResult get(@NonNull CharSequence condition, int start, int end) {
+        return get(new Key(condition, start, end));
+    }
+
+    /**
+     * Returns the cached result for the given key.
+     *
+     * @param key The key of the condition.
+     *
+     * @return The cached result, or <code>null</code> if the condition is not cached.
+     */
+    private @Nullable ParseResult get(@NonNull Key key) {
+        Entry entry = entries.get(key);
+        ParseResult result = null;
+        if (entry != null) {
+            hits.increment();
+            int frequency = entry.frequency;
+            if (frequency < Integer.MAX_VALUE) {
+                entry.frequency = frequency + 1;
+            }
+            result = entry.result;
+
+        } else {
+            misses.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Adds the result for the given condition to this cache. If the cache is full, another entry is evicted first.
+     *
+     * @param condition The condition string.
+     * @param result The result of parsing the condition.
+     */
+    synchronized void put(@NonNull String condition, @NonNull ParseResult result) {
+        Key key = new Key(condition);
+        if (!entries.containsKey(key)) {
+            int slot;
+            if (usedSlots < maxSize) {
+                if (usedSlots == slots.length) {
+                    slots = notNull(Arrays.copyOf(slots, (int) Math.min(maxSize, 2L * slots.length)));
+                }
+                slot = usedSlots++;
+            } else {
+                slot = evict();
+            }
+            slots[slot] = key;
+            entries.put(key, new Entry(result, slot));
+        }
+    }
+
+    /**
+     * Evicts the least frequently used entry of a sample of {@link #SAMPLE_SIZE} randomly chosen entries, and ages the
+     * others. Must only be called while holding the lock of this cache and if all {@link #maxSize} slots are filled.
+     *
+     * @return The index of the slot of the evicted entry, which is free to be re-used.
+     */
+    private int evict() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Entry victim = null;
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            Entry candidate = notNull(entries.get(notNull(slots[random.nextInt(maxSize)])));
+            if (victim == null || candidate.frequency < victim.frequency) {
+                if (victim != null) {
+                    victim.frequency >>= 1;
+                }
+                victim = candidate;
+            } else if (candidate != victim) {
+                candidate.frequency >>= 1;
+            }
+        }
+
+        int slot = notNull(victim).slot;
+        entries.remove(notNull(slots[slot]));
+        slots[slot] = null;
+        return slot;
+    }
+
+    /**
+     * Returns the number of entries in this cache.
+     *
+     * @return The number of cached conditions.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns how often a condition was found in this cache.
+     *
+     * @return The number of cache hits.
+     */
+    long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns how often a condition was not found in this cache.
+     *
+     * @return The number of cache misses.
+     */
+    long getMisses() {
+        return misses.sum();
+    }
+
+}
@@ -17,43 +17,239 @@ package net.ssehub.kernel_haven.cpp_utils;
 
 import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import net.ssehub.kernel_haven.cpp_utils.DerivedVariables.Derivation;
 import net.ssehub.kernel_haven.cpp_utils.parser.CppOperator;
+import net.ssehub.kernel_haven.cpp_utils.parser.CppExpressionFormatException;
 import net.ssehub.kernel_haven.cpp_utils.parser.CppParser;
+import net.ssehub.kernel_haven.cpp_utils.parser.ICppExpressionBuilder;
+import net.ssehub.kernel_haven.cpp_utils.parser.SymbolTable;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.CppExpression;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.CppExpressionWalker;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.FunctionCall;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.ICppExressionVisitor;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.NumberLiteral;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.Operator;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.Variable;
-import net.ssehub.kernel_haven.util.logic.Conjunction;
-import net.ssehub.kernel_haven.util.logic.Disjunction;
 import net.ssehub.kernel_haven.util.logic.False;
 import net.ssehub.kernel_haven.util.logic.Formula;
-import net.ssehub.kernel_haven.util.logic.Negation;
 import net.ssehub.kernel_haven.util.logic.True;
 import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
 
 /**
  * Parses boolean CPP conditions.
+ * <p>
+ * The translation into {@link Formula}s is defined by the <code>translate*()</code> methods. They are either called
+ * while visiting the {@link CppExpression} AST created by the {@link CppParser}, or directly while parsing (see
+ * {@link #isDirectTranslationSupported()}). In the latter case, no AST is created at all.
+ * <p>
+ * Instances of this class are thread-safe: the configuration is immutable, parsing only uses per-thread scratch
+ * buffers (see {@link CppParser}) and the cache is a concurrent data structure. Thus, a single configured instance
+ * can be shared by all threads (e.g. all extractor threads working on one source tree), which also lets them share
+ * the cache. Sub-classes must not add mutable state if they want to keep this guarantee.
+ * <p>
+ * Neither way of translating recurses, so deeply nested conditions do not cause a {@link StackOverflowError}: the
+ * AST is walked with a {@link CppExpressionWalker}, and the translations of all inner nodes are computed bottom-up
+ * before their parents are visited (see {@link #toFormula(Object)}). This only applies to the conditions translated
+ * by the methods of this class; a caller that visits an AST on its own (i.e. calls
+ * {@link CppExpression#accept(ICppExressionVisitor)} with this parser) still translates it recursively.
  *
  * @author Adam
  */
 public class CppConditionParser implements ICppExressionVisitor<@NonNull Formula> {
-
+    
     public static final net.ssehub.kernel_haven.util.logic.@NonNull Variable ERROR_VARIBLE
-            = new net.ssehub.kernel_haven.util.logic.Variable("PARSING_ERROR");
+            = DerivedVariables.getPermanent("PARSING_ERROR");
     
-    private boolean handleLinuxMacros;
+    /**
+     * Translates the elements of an expression directly while it is parsed. The elements are the operands expected
+     * by the <code>translate*()</code> methods: variables and literals are kept as their name ({@link String}) or
+     * value ({@link Number}), since the translation of operators may depend on them; everything else is translated
+     * into a {@link Formula} right away.
+     * <p>
+     * If the translation of an element fails, its exception is kept as the element, instead of aborting the parsing.
+     * It is only thrown if the translation of an enclosing element needs the element (see {@link #toFormula(Object)}).
+     * Thus, the result is exactly the same as when visiting the complete AST, which only translates operands on
+     * demand; but no AST is created, and nothing is translated recursively.
+     */
+    private class DirectTranslator implements ICppExpressionBuilder<@NonNull Object> {
+        
+        @Override
+        public @NonNull Object variable(@NonNull String name) {
+            return name;
+        }
+        
+        @Override
+        public @NonNull Object literal(@NonNull Number value) {
+            return value;
+        }
+        
+        @Override
+        public @NonNull Object functionCall(@NonNull String name, @Nullable Object argument) {
+            Object result;
+            try {
+                result = translateFunctionCall(name, argument);
+            } catch (ExpressionFormatException e) {
+                result = e;
+            }
+            return result;
+        }
+        
+        @Override
+        public @NonNull Object unaryOperator(@NonNull CppOperator operator, @NonNull Object operand) {
+            Object result;
+            try {
+                result = translateOperator(operator, operand, null);
+            } catch (ExpressionFormatException e) {
+                result = e;
+            }
+            return result;
+        }
+        
+        @Override
+        public @NonNull Object binaryOperator(@NonNull CppOperator operator, @NonNull Object leftSide,
+                @NonNull Object rightSide) {
+            Object result;
+            try {
+                result = translateOperator(operator, leftSide, rightSide);
+            } catch (ExpressionFormatException e) {
+                result = e;
+            }
+            return result;
+        }
+        
+    }
     
-    private boolean fuzzyParsing;
+    /**
+     * Translates an AST bottom-up while it is walked by a {@link CppExpressionWalker} (see
+     * {@link CppConditionParser#translateAst(CppExpression)}). Each thread re-uses one instance, so that translating an
+     * AST does not allocate a new listener and map.
+     */
+    private final class AstTranslator implements CppExpressionWalker.IListener {
+        
+        /**
+         * The translations of the inner nodes of the AST that is currently translated. The values are {@link Formula}s,
+         * or the {@link ExpressionFormatException}s of nodes whose translation failed. Empty if no AST is translated.
+         */
+        private @NonNull IdentityHashMap<@NonNull CppExpression, @NonNull Object> translations
+                = new IdentityHashMap<>();
+        
+        /**
+         * Whether this translator currently translates an AST.
+         */
+        private boolean active;
+        
+        /**
+         * Translates the given AST. Must not be called while this translator is active.
+         * 
+         * @param ast The AST to translate.
+         * 
+         * @return The boolean formula for the AST.
+         * 
+         * @throws ExpressionFormatException If the AST can not be translated into a boolean formula.
+         */
+        @NonNull Formula translate(@NonNull CppExpression ast) throws ExpressionFormatException {
+            Formula result;
+            active = true;
+            try {
+                CppExpressionWalker.walk(ast, this);
+                Object translation = translations.get(ast);
+                result = translation != null ? toFormula(translation) : ast.accept(CppConditionParser.this);
+                
+            } finally {
+                active = false;
+                // clearing an IdentityHashMap takes time proportional to its capacity, which never shrinks
+                if (translations.size() > MAX_RETAINED_TRANSLATIONS) {
+                    translations = new IdentityHashMap<>();
+                } else {
+                    translations.clear();
+                }
+            }
+            return result;
+        }
+        
+        /**
+         * Returns the translation of the given node of the AST that is currently translated.
+         * 
+         * @param node The node to get the translation for.
+         * 
+         * @return The translation of the node (see {@link #translations}), or <code>null</code> if it was not
+         *      translated yet.
+         */
+        @Nullable Object getTranslation(@NonNull CppExpression node) {
+            return active ? translations.get(node) : null;
+        }
+        
+        @Override
+        public void leave(@NonNull CppExpression node) {
+            if (!(node instanceof Variable) && !(node instanceof NumberLiteral)) {
+                Object translation;
+                try {
+                    translation = node.accept(CppConditionParser.this);
+                } catch (ExpressionFormatException e) {
+                    // only thrown if the parent needs this node, like in the direct translation
+                    translation = e;
+                }
+                translations.put(node, translation);
+            }
+        }
+        
+    }
     
-    private InvalidConditionHandling invalidConditionHandling;
+    /**
+     * The maximum number of translations for which the map of an {@link AstTranslator} is kept and cleared after
+     * translating an AST; a larger map is replaced by a new one.
+     */
+    private static final int MAX_RETAINED_TRANSLATIONS = 1024;
     
-    private CppParser cppParser;
-
     /**
-     * Creates a new {@link CppConditionParser}.
+     * The minimum number of distinct expressions for which {@link #parseAll(Collection)} parses in parallel. For
+     * fewer expressions, the overhead of distributing the work is higher than the gain.
+     */
+    private static final int PARALLEL_THRESHOLD = 32;
+    
+    private final boolean handleLinuxMacros;
+    
+    private final boolean fuzzyParsing;
+    
+    private final InvalidConditionHandling invalidConditionHandling;
+    
+    private final @NonNull CppParser cppParser;
+    
+    private final @NonNull DirectTranslator directTranslator;
+    
+    private final @Nullable ConditionCache cache;
+    
+    private final @NonNull FormulaFactory formulaFactory;
+    
+    private final @NonNull LongAdder fastPathCount;
+    
+    /**
+     * The configuration that determines the translation of this parser (see {@link #getTranslationKey()}).
+     */
+    private final @NonNull List<@NonNull Object> translationKey;
+    
+    /**
+     * The translator that {@link #translateAst(CppExpression)} uses on each thread. While it translates an AST, it
+     * holds the translations of the inner nodes.
+     */
+    private final @NonNull ThreadLocal<@NonNull AstTranslator> astTranslators;
+    
+    /**
+     * Creates a new {@link CppConditionParser} without a cache.
      * 
      * @param handleLinuxMacros Whether to handle preprocessor macros found in the Linux Kernel (i.e.
      *      IS_ENABLED, IS_BUILTIN, IS_MODULE).
@@ -63,10 +259,53 @@ public class CppConditionParser implements ICppExressionVisitor<@NonNull Formula
     public CppConditionParser(boolean handleLinuxMacros, boolean fuzzyParsing,
             InvalidConditionHandling invalidConditionHandling) {
         
+        this(handleLinuxMacros, fuzzyParsing, invalidConditionHandling, 0);
+    }
+    
+    /**
+     * Creates a new {@link CppConditionParser}.
+     * 
+     * @param handleLinuxMacros Whether to handle preprocessor macros found in the Linux Kernel (i.e.
+     *      IS_ENABLED, IS_BUILTIN, IS_MODULE).
+     * @param fuzzyParsing Whether to do fuzzy parsing for non-boolean integer comparisons.
+     * @param invalidConditionHandling How to handle unparseable conditions.
+     * @param cacheSize The maximum number of parsed conditions to cache (see
+     *      {@link CppParsingSettings#CONDITION_CACHE_SIZE}). 0 disables the cache.
+     */
+    public CppConditionParser(boolean handleLinuxMacros, boolean fuzzyParsing,
+            InvalidConditionHandling invalidConditionHandling, int cacheSize) {
+        
+        this(handleLinuxMacros, fuzzyParsing, invalidConditionHandling, cacheSize, FormulaFactory.DEFAULT);
+    }
+    
+    /**
+     * Creates a new {@link CppConditionParser}.
+     * 
+     * @param handleLinuxMacros Whether to handle preprocessor macros found in the Linux Kernel (i.e.
+     *      IS_ENABLED, IS_BUILTIN, IS_MODULE).
+     * @param fuzzyParsing Whether to do fuzzy parsing for non-boolean integer comparisons.
+     * @param invalidConditionHandling How to handle unparseable conditions.
+     * @param cacheSize The maximum number of parsed conditions to cache (see
+     *      {@link CppParsingSettings#CONDITION_CACHE_SIZE}). 0 disables the cache.
+     * @param formulaFactory The factory that creates the resulting formulas. {@link FormulaFactory#SHARED} lets all
+     *      parsers share structurally identical formulas (see {@link CppParsingSettings#SHARE_FORMULAS}).
+     */
+    public CppConditionParser(boolean handleLinuxMacros, boolean fuzzyParsing,
+            InvalidConditionHandling invalidConditionHandling, int cacheSize,
+            @NonNull FormulaFactory formulaFactory) {
+        
         this.handleLinuxMacros = handleLinuxMacros;
         this.fuzzyParsing = fuzzyParsing;
         this.invalidConditionHandling = invalidConditionHandling;
-        this.cppParser = new CppParser();
+        // exceptions only reach the user in EXCEPTION mode; otherwise, skip the expensive stack traces
+        this.cppParser = new CppParser(invalidConditionHandling == InvalidConditionHandling.EXCEPTION);
+        this.directTranslator = new DirectTranslator();
+        this.cache = cacheSize > 0 ? new ConditionCache(cacheSize) : null;
+        this.formulaFactory = formulaFactory;
+        this.fastPathCount = new LongAdder();
+        this.translationKey = notNull(Arrays.asList(getClass(), handleLinuxMacros, fuzzyParsing,
+                invalidConditionHandling, formulaFactory));
+        this.astTranslators = ThreadLocal.withInitial(AstTranslator::new);
     }
     
     /**
@@ -79,7 +318,64 @@ public class CppConditionParser implements ICppExressionVisitor<@NonNull Formula
     }
     
     /**
-     * Parses the given CPP expression into a boolean {@link Formula}.
+     * Returns the factory that creates the resulting formulas. Sub-classes should use it for all formulas they create,
+     * so that the formulas are shared if the factory hash-conses.
+     * 
+     * @return The formula factory of this parser.
+     */
+    protected @NonNull FormulaFactory getFormulaFactory() {
+        return formulaFactory;
+    }
+    
+    /**
+     * Whether the expression may be translated directly while it is parsed, without creating a
+     * {@link CppExpression} AST and visiting it. This is only the case if the <code>visit*()</code> methods of this
+     * class are not overridden, since they would not be called in direct translation. Thus, this returns
+     * <code>false</code> for sub-classes; sub-classes that do not override the <code>visit*()</code> methods may
+     * override this to return <code>true</code>.
+     * 
+     * @return Whether expressions are translated directly while parsing.
+     */
+    protected boolean isDirectTranslationSupported() {
+        return getClass() == CppConditionParser.class;
+    }
+    
+    /**
+     * Returns how often a condition was found in the cache of this parser.
+     * 
+     * @return The number of cache hits; 0 if this parser has no cache.
+     */
+    public long getCacheHits() {
+        ConditionCache cache = this.cache;
+        return cache != null ? cache.getHits() : 0;
+    }
+    
+    /**
+     * Returns how often a condition was not found in the cache of this parser, and thus had to be parsed.
+     * 
+     * @return The number of cache misses; 0 if this parser has no cache.
+     */
+    public long getCacheMisses() {
+        ConditionCache cache = this.cache;
+        return cache != null ? cache.getMisses() : 0;
+    }
+    
+    /**
+     * Returns how often a condition was translated by the fast path for simple conditions, i.e. without the
+     * {@link CppParser}. This is the case for <code>defined(X)</code>, <code>!defined(X)</code> and chains of these
+     * that are all connected by <code>&amp;&amp;</code> or all connected by <code>||</code>. Conditions that are
+     * found in the cache are not counted.
+     * 
+     * @return The number of conditions that were translated by the fast path.
+     */
+    public long getFastPathCount() {
+        return fastPathCount.sum();
+    }
+    
+    /**
+     * Parses the given CPP expression into a boolean {@link Formula}. If this parser has a cache, the result for an
+     * expression that was already parsed before is taken from the cache. Conditions that lead to an exception are not
+     * cached.
      * 
      * @param expression The expression to parse.
      * 
@@ -88,39 +384,473 @@ public class CppConditionParser implements ICppExressionVisitor<@NonNull Formula
      * @throws ExpressionFormatException If the expression can not be parsed into a boolean formula.
      */
     public @NonNull Formula parse(@NonNull String expression) throws ExpressionFormatException {
-        Formula result;
+        return getFormula(tryParse(expression, 0, expression.length()));
+    }
+    
+    /**
+     * Parses the given CPP expression into a boolean {@link Formula}. See {@link #parse(CharSequence, int, int)}.
+     * 
+     * @param expression The expression to parse.
+     * 
+     * @return The boolean formula created from the given expression.
+     * 
+     * @throws ExpressionFormatException If the expression can not be parsed into a boolean formula.
+     */
+    public @NonNull Formula parse(@NonNull CharSequence expression) throws ExpressionFormatException {
+        return getFormula(tryParse(expression, 0, expression.length()));
+    }
+    
+    /**
+     * Parses the CPP expression in the given range of a character sequence into a boolean {@link Formula}. The
+     * expression is not copied into a string (see {@link CppParser#parse(CharSequence, int, int)}), so a condition can
+     * be parsed directly from a {@link java.nio.CharBuffer} slice of a larger file buffer. Only if the expression is
+     * not yet in the cache of this parser, a string of it is created as the cache key.
+     * 
+     * @param expression The character sequence that contains the expression to parse.
+     * @param start The index of the first character of the expression.
+     * @param end The index after the last character of the expression.
+     * 
+     * @return The boolean formula created from the given expression.
+     * 
+     * @throws ExpressionFormatException If the expression can not be parsed into a boolean formula.
+     * @throws IndexOutOfBoundsException If the range is not within the given character sequence.
+     */
+    public @NonNull Formula parse(@NonNull CharSequence expression, int start, int end)
+            throws ExpressionFormatException {
+        return getFormula(tryParse(expression, start, end));
+    }
+    
+    /**
+     * Parses the given CPP expression into a boolean {@link Formula}, without throwing an exception if the expression
+     * is invalid. Instead, the returned {@link ParseResult} describes the failure; its
+     * {@link ParseResult#getFormula()} is the replacement according to the configured {@link InvalidConditionHandling}.
+     * The error message is only built if it is requested, so an invalid condition is about as cheap as a valid one.
+     * <p>
+     * Like {@link #parse(String)}, this uses the cache of this parser.
+     * 
+     * @param expression The expression to parse.
+     * 
+     * @return The result of parsing the expression.
+     */
+    public @NonNull ParseResult tryParse(@NonNull String expression) {
+        return tryParse(expression, 0, expression.length());
+    }
+    
+    /**
+     * Parses the CPP expression in the given range of a character sequence into a boolean {@link Formula}, without
+     * throwing an exception if the expression is invalid. See {@link #tryParse(String)} and
+     * {@link #parse(CharSequence, int, int)}.
+     * 
+     * @param expression The character sequence that contains the expression to parse.
+     * @param start The index of the first character of the expression.
+     * @param end The index after the last character of the expression.
+     * 
+     * @return The result of parsing the expression.
+     * 
+     * @throws IndexOutOfBoundsException If the range is not within the given character sequence.
+     */
+    public @NonNull ParseResult tryParse(@NonNull CharSequence expression, int start, int end) {
+        if (start < 0 || end > expression.length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length "
+                    + expression.length());
+        }
+        
+        ConditionCache cache = this.cache;
+        ParseResult result = null;
+        if (cache != null) {
+            result = cache.get(expression, start, end);
+        }
+        
+        if (result == null) {
+            result = parseUncached(expression, start, end);
+            if (cache != null
+                    && (result.isSuccess() || invalidConditionHandling != InvalidConditionHandling.EXCEPTION)) {
+                cache.put(notNull(expression.subSequence(start, end).toString()), result);
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Parses all given CPP expressions into boolean {@link Formula}s. Duplicate expressions are only parsed once; the
+     * distinct expressions are parsed in parallel on the common {@link java.util.concurrent.ForkJoinPool}.
+     * <p>
+     * Each expression is handled on its own according to the {@link InvalidConditionHandling}: with
+     * {@link InvalidConditionHandling#TRUE} or {@link InvalidConditionHandling#ERROR_VARIABLE}, the result list
+     * contains the replacement for each invalid expression. With {@link InvalidConditionHandling#EXCEPTION}, the
+     * exception of the first invalid expression (in input order) is thrown, after all expressions were parsed.
+     * 
+     * @param expressions The expressions to parse.
+     * 
+     * @return The formulas for the given expressions, in the same order as the input.
+     * 
+     * @throws ExpressionFormatException If an expression can not be parsed into a boolean formula.
+     */
+    public @NonNull List<@NonNull Formula> parseAll(@NonNull Collection<@NonNull String> expressions)
+            throws ExpressionFormatException {
+        
+        // de-duplicate; inputToDistinct maps each input index to the index of its distinct expression
+        Map<@NonNull String, Integer> distinctIndices = new HashMap<>();
+        List<@NonNull String> distinct = new ArrayList<>();
+        int[] inputToDistinct = new int[expressions.size()];
+        int inputIndex = 0;
+        for (String expression : expressions) {
+            Integer index = distinctIndices.get(expression);
+            if (index == null) {
+                index = distinct.size();
+                distinctIndices.put(expression, index);
+                distinct.add(expression);
+            }
+            inputToDistinct[inputIndex++] = index;
+        }
+        
+        ParseResult[] distinctResults = new ParseResult[distinct.size()];
+        IntStream indices = IntStream.range(0, distinct.size());
+        if (distinct.size() >= PARALLEL_THRESHOLD) {
+            indices = indices.parallel();
+        }
+        indices.forEach((index) -> distinctResults[index] = tryParse(notNull(distinct.get(index))));
+        
+        List<@NonNull Formula> result = new ArrayList<>(inputToDistinct.length);
+        for (int index : inputToDistinct) {
+            result.add(getFormula(notNull(distinctResults[index])));
+        }
+        return result;
+    }
+    
+    /**
+     * Parses all given CPP expressions into boolean {@link Formula}s. See {@link #parseAll(Collection)}.
+     * 
+     * @param expressions The expressions to parse.
+     * 
+     * @return The formulas for the given expressions, in the same order as the input.
+     * 
+     * @throws ExpressionFormatException If an expression can not be parsed into a boolean formula.
+     */
+    public @NonNull List<@NonNull Formula> parseAll(@NonNull Stream<@NonNull String> expressions)
+            throws ExpressionFormatException {
+        return parseAll(notNull(expressions.collect(Collectors.toList())));
+    }
+    
+    /**
+     * Returns the formula of the given result, or throws its exception if there is no (replacement) formula.
+     * 
+     * @param result The result of parsing an expression.
+     * 
+     * @return The formula of the result.
+     * 
+     * @throws ExpressionFormatException If parsing failed and {@link InvalidConditionHandling#EXCEPTION} is
+     *      configured.
+     */
+    static @NonNull Formula getFormula(@NonNull ParseResult result) throws ExpressionFormatException {
+        Formula formula = result.getFormula();
+        if (formula == null) {
+            throw notNull(result.getException());
+        }
+        return formula;
+    }
+    
+    /**
+     * Parses the given CPP expression into a boolean {@link Formula}, without looking at the cache.
+     * 
+     * @param expression The character sequence that contains the expression to parse.
+     * @param start The index of the first character of the expression.
+     * @param end The index after the last character of the expression.
+     * 
+     * @return The result of parsing the expression.
+     */
+    private @NonNull ParseResult parseUncached(@NonNull CharSequence expression, int start, int end) {
+        ParseResult result;
         try {
-            result = cppParser.parse(expression).accept(this);
+            Formula fastPathResult = null;
+            if (isDirectTranslationSupported()) {
+                fastPathResult = FastPathTranslator.translate(this, expression, start, end);
+            }
+            
+            if (fastPathResult != null) {
+                fastPathCount.increment();
+                result = new ParseResult(fastPathResult);
+            } else if (isDirectTranslationSupported()) {
+                result = new ParseResult(parseDirectly(expression, start, end));
+            } else {
+                result = new ParseResult(translateAst(cppParser.parse(expression, start, end)));
+            }
         } catch (ExpressionFormatException e) {
+            result = createFailedResult(e);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Creates the result for an expression that can not be parsed, according to the configured
+     * {@link InvalidConditionHandling}.
+     * 
+     * @param exception The exception describing why parsing failed.
+     * 
+     * @return The failed result.
+     */
+    private @NonNull ParseResult createFailedResult(@NonNull ExpressionFormatException exception) {
+        ParseResult result;
+        if (invalidConditionHandling == InvalidConditionHandling.TRUE) {
+            result = new ParseResult(exception, True.INSTANCE);
             
-            if (invalidConditionHandling == InvalidConditionHandling.TRUE) {
-                result = True.INSTANCE;
-                
-            } else if (invalidConditionHandling == InvalidConditionHandling.ERROR_VARIABLE) {
-                result = ERROR_VARIBLE;
-                
+        } else if (invalidConditionHandling == InvalidConditionHandling.ERROR_VARIABLE) {
+            result = new ParseResult(exception, ERROR_VARIBLE);
+            
+        } else {
+            result = new ParseResult(exception, null);
+        }
+        return result;
+    }
+    
+    /**
+     * Creates an exception for a condition that can't be translated. The exception only records a stack trace if it
+     * can reach the user, i.e. if {@link InvalidConditionHandling#EXCEPTION} is configured.
+     * 
+     * @param reason The message describing the problem.
+     * 
+     * @return The exception to throw.
+     */
+    protected @NonNull CppExpressionFormatException createException(@NonNull String reason) {
+        return new CppExpressionFormatException(reason,
+                invalidConditionHandling == InvalidConditionHandling.EXCEPTION);
+    }
+    
+    /**
+     * Translates an already parsed condition, like {@link #tryParse(String)} would translate its text. The cache of
+     * this parser is not used; the result is memoized by the {@link ParsedCondition} instead.
+     * 
+     * @param condition The parsed condition.
+     * 
+     * @return The result of translating the condition.
+     */
+    @NonNull ParseResult translate(@NonNull ParsedCondition condition) {
+        ParseResult result;
+        try {
+            if (isDirectTranslationSupported()) {
+                result = new ParseResult(toFormula(condition.getExpression().accept(directTranslator)));
             } else {
-                throw e;
+                result = new ParseResult(translateAst(condition.getAst()));
             }
+        } catch (ExpressionFormatException e) {
+            result = createFailedResult(e);
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the key under which a {@link ParsedCondition} memoizes its translation by this parser. Parsers with the
+     * same key translate all conditions into the same formulas, so they share the memoized translation. For parsers
+     * that support direct translation, this is their configuration; other sub-classes may translate differently, so
+     * only the same instance has the same key.
+     * 
+     * @return The key for the translations of this parser.
+     */
+    @NonNull Object getTranslationKey() {
+        return isDirectTranslationSupported() ? translationKey : this;
+    }
+    
+    /**
+     * Parses the given expression with the {@link DirectTranslator}.
+     * 
+     * @param expression The character sequence that contains the expression to parse.
+     * @param start The index of the first character of the expression.
+     * @param end The index after the last character of the expression.
+     * 
+     * @return The boolean formula created from the given expression.
+     * 
+     * @throws ExpressionFormatException If the expression can not be parsed into a boolean formula.
+     */
+    private @NonNull Formula parseDirectly(@NonNull CharSequence expression, int start, int end)
+            throws ExpressionFormatException {
+        return toFormula(cppParser.parse(expression, start, end, directTranslator));
+    }
+    
+    /**
+     * Translates the given AST by visiting it. The AST is walked bottom-up with a {@link CppExpressionWalker}: each
+     * inner node is visited after its children, and its translation is kept until the parent is visited, where
+     * {@link #toFormula(Object)} returns it instead of visiting the node again. Thus, visiting a node never recurses
+     * into its children. Leaves (variables and literals) are only visited if their parent translates them, like
+     * in a recursive visit.
+     * <p>
+     * The {@link AstTranslator} of the current thread is re-used. Only if this is called again while it translates
+     * another AST (e.g. by a sub-class that parses a condition while visiting a node), a new one is created.
+     * 
+     * @param ast The AST to translate.
+     * 
+     * @return The boolean formula for the AST.
+     * 
+     * @throws ExpressionFormatException If the AST can not be translated into a boolean formula.
+     */
+    private @NonNull Formula translateAst(@NonNull CppExpression ast) throws ExpressionFormatException {
+        AstTranslator translator = astTranslators.get();
+        Formula result;
+        if (!translator.active) {
+            result = translator.translate(ast);
             
+        } else {
+            AstTranslator nested = new AstTranslator();
+            astTranslators.set(nested);
+            try {
+                result = nested.translate(ast);
+            } finally {
+                astTranslators.set(translator);
+            }
         }
-        
         return result;
     }
-
+    
     @Override
     public @NonNull Formula visitFunctionCall(@NonNull FunctionCall call) throws ExpressionFormatException {
+        return translateFunctionCall(call.getFunctionName(), call.getArgument());
+    }
+    
+    @Override
+    public @NonNull Formula visitVariable(@NonNull Variable variable) throws ExpressionFormatException {
+        return translateVariable(variable.getName());
+    }
+    
+    @Override
+    public @NonNull Formula visitOperator(@NonNull Operator operator) throws ExpressionFormatException {
+        return translateOperator(operator.getOperator(), operator.getLeftSide(), operator.getRightSide());
+    }
+    
+    @Override
+    public @NonNull Formula visitLiteral(@NonNull NumberLiteral literal) throws ExpressionFormatException {
+        return translateLiteral(literal.getValue());
+    }
+    
+    /**
+     * Translates an operand into a {@link Formula}. An operand is one of:
+     * <ul>
+     *      <li>a {@link CppExpression}, which is visited by this class (unless its translation was already computed
+     *      by {@link #translateAst(CppExpression)}),</li>
+     *      <li>the name of a variable ({@link String}), which is translated by {@link #translateVariable(String)},</li>
+     *      <li>the value of a literal ({@link Number}), which is translated by {@link #translateLiteral(Number)},</li>
+     *      <li>an already translated {@link Formula},</li>
+     *      <li>or the {@link ExpressionFormatException} of an operand whose translation failed, which is thrown.</li>
+     * </ul>
+     * 
+     * @param operand The operand to translate.
+     * 
+     * @return The formula for the operand.
+     * 
+     * @throws ExpressionFormatException If the operand can not be translated.
+     */
+    protected @NonNull Formula toFormula(@NonNull Object operand) throws ExpressionFormatException {
+        Formula result;
+        if (operand instanceof Formula) {
+            result = (Formula) operand;
+        } else if (operand instanceof CppExpression) {
+            Object translation = astTranslators.get().getTranslation((CppExpression) operand);
+            if (translation != null) {
+                result = toFormula(translation);
+            } else {
+                result = ((CppExpression) operand).accept(this);
+            }
+        } else if (operand instanceof String) {
+            result = translateVariable((String) operand);
+        } else if (operand instanceof ExpressionFormatException) {
+            throw (ExpressionFormatException) operand;
+        } else {
+            result = translateLiteral((Number) operand);
+        }
+        return result;
+    }
+    
+    /**
+     * Checks whether the given operand (see {@link #toFormula(Object)}) is a variable.
+     * 
+     * @param operand The operand to check.
+     * 
+     * @return Whether the operand is a variable.
+     */
+    protected static boolean isVariable(@Nullable Object operand) {
+        return operand instanceof String || operand instanceof Variable;
+    }
+    
+    /**
+     * Returns the name of the given variable operand (see {@link #isVariable(Object)}).
+     * 
+     * @param operand The variable operand.
+     * 
+     * @return The name of the variable.
+     */
+    protected static @NonNull String getVariableName(@NonNull Object operand) {
+        return operand instanceof String ? (String) operand : ((Variable) operand).getName();
+    }
+    
+    /**
+     * Checks whether the given operand (see {@link #toFormula(Object)}) is a number literal.
+     * 
+     * @param operand The operand to check.
+     * 
+     * @return Whether the operand is a number literal.
+     */
+    protected static boolean isLiteral(@Nullable Object operand) {
+        return operand instanceof Number || operand instanceof NumberLiteral;
+    }
+    
+    /**
+     * Returns the value of the given literal operand (see {@link #isLiteral(Object)}).
+     * 
+     * @param operand The literal operand.
+     * 
+     * @return The value of the literal.
+     */
+    protected static @NonNull Number getLiteralValue(@NonNull Object operand) {
+        return operand instanceof Number ? (Number) operand : ((NumberLiteral) operand).getValue();
+    }
+    
+    /**
+     * Creates a variable for a resulting {@link Formula}. Variables are cached globally, so all formulas share one
+     * instance per name; the name is interned in the {@link SymbolTable#GLOBAL} symbol table.
+     * 
+     * @param name The name of the variable.
+     * 
+     * @return The variable.
+     */
+    protected static net.ssehub.kernel_haven.util.logic.@NonNull Variable createVariable(@NonNull String name) {
+        return DerivedVariables.get(name, Derivation.PLAIN);
+    }
+    
+    /**
+     * Creates the variable for the module variant of the given Linux variable, i.e. <code>name_MODULE</code>. Like
+     * {@link #createVariable(String)}, the variable is cached globally, and its name is only built once.
+     * 
+     * @param name The name of the Linux variable.
+     * 
+     * @return The module variable.
+     */
+    protected static net.ssehub.kernel_haven.util.logic.@NonNull Variable createModuleVariable(
+            @NonNull String name) {
+        return DerivedVariables.get(name, Derivation.MODULE);
+    }
+    
+    /**
+     * Translates a function call.
+     * 
+     * @param function The name of the called function.
+     * @param argument The argument operand (see {@link #toFormula(Object)}). <code>null</code> if the function is
+     *      called without argument.
+     * 
+     * @return The formula for the function call.
+     * 
+     * @throws ExpressionFormatException If the function call can not be translated.
+     */
+    protected @NonNull Formula translateFunctionCall(@NonNull String function, @Nullable Object argument)
+            throws ExpressionFormatException {
         
-        String function = call.getFunctionName();
-        CppExpression arg = call.getArgument();
         net.ssehub.kernel_haven.util.logic.Variable variable;
-        if (arg == null) {
-            throw new ExpressionFormatException("Can't handle function " + function + " without argument");
+        if (argument == null) {
+            throw createException("Can't handle function " + function + " without argument");
         }
-        if (arg instanceof Variable) {
-            variable = new net.ssehub.kernel_haven.util.logic.Variable(((Variable) arg).getName());
+        if (isVariable(argument)) {
+            variable = createVariable(getVariableName(argument));
         } else {
-            throw new ExpressionFormatException("defined() call without variable");
+            throw createException("defined() call without variable");
         }
         
         Formula result;
@@ -128,46 +858,63 @@ public class CppConditionParser implements ICppExressionVisitor<@NonNull Formula
             result = variable;
             
         } else if (handleLinuxMacros && function.equals("IS_ENABLED")) {
-            result = new Disjunction(variable,
-                    new net.ssehub.kernel_haven.util.logic.Variable(variable.getName() + "_MODULE"));
+            result = formulaFactory.or(variable, createModuleVariable(variable.getName()));
             
         } else if (handleLinuxMacros && function.equals("IS_MODULE")) {
-            result = new net.ssehub.kernel_haven.util.logic.Variable(variable.getName() + "_MODULE");
+            result = createModuleVariable(variable.getName());
             
         } else if (handleLinuxMacros && function.equals("IS_BUILTIN")) {
             result = variable;
             
         } else {
-            throw new ExpressionFormatException("Unsupported function/macro: " + function);
+            throw createException("Unsupported function/macro: " + function);
         }
         
         return result;
     }
-
-    @Override
-    public @NonNull Formula visitVariable(@NonNull Variable variable) throws ExpressionFormatException {
+    
+    /**
+     * Translates a variable.
+     * 
+     * @param name The name of the variable.
+     * 
+     * @return The formula for the variable.
+     * 
+     * @throws ExpressionFormatException If the variable can not be translated.
+     */
+    protected @NonNull Formula translateVariable(@NonNull String name) throws ExpressionFormatException {
         if (fuzzyParsing) {
-            return new net.ssehub.kernel_haven.util.logic.Variable(variable.getName() + "_ne_0");
+            return DerivedVariables.get(name, Derivation.NOT_ZERO);
         }
         
-        throw new ExpressionFormatException("Found variable outside of defined() call: " + variable);
+        throw createException("Found variable outside of defined() call: Variable " + name);
     }
-
-    @Override
-    public @NonNull Formula visitOperator(@NonNull Operator operator) throws ExpressionFormatException {
+    
+    /**
+     * Translates an operator. The operands are only translated if the operator needs them.
+     * 
+     * @param operator The operator.
+     * @param leftSide The left operand (see {@link #toFormula(Object)}). This is the only operand of unary operators.
+     * @param rightSide The right operand (see {@link #toFormula(Object)}). <code>null</code> for unary operators.
+     * 
+     * @return The formula for the operator.
+     * 
+     * @throws ExpressionFormatException If the operator can not be translated.
+     */
+    protected @NonNull Formula translateOperator(@NonNull CppOperator operator, @NonNull Object leftSide,
+            @Nullable Object rightSide) throws ExpressionFormatException {
+        
         Formula result;
         
-        switch (operator.getOperator()) {
+        switch (operator) {
         case BOOL_AND:
-            result = new Conjunction(operator.getLeftSide().accept(this),
-                    notNull(operator.getRightSide()).accept(this));
+            result = formulaFactory.and(toFormula(leftSide), toFormula(notNull(rightSide)));
             break;
         case BOOL_OR:
-            result = new Disjunction(operator.getLeftSide().accept(this),
-                    notNull(operator.getRightSide()).accept(this));
+            result = formulaFactory.or(toFormula(leftSide), toFormula(notNull(rightSide)));
             break;
         case BOOL_NOT:
-            result = new Negation(operator.getLeftSide().accept(this));
+            result = formulaFactory.not(toFormula(leftSide));
             break;
             
         case CMP_EQ:
@@ -176,32 +923,39 @@ public class CppConditionParser implements ICppExressionVisitor<@NonNull Formula
         case CMP_LE:
         case CMP_GT:
         case CMP_GE:
-            result = fuzzyParse(operator);
+            result = fuzzyParse(operator, leftSide, notNull(rightSide));
             break;
             
         case INT_SUB_UNARY:
-            if (operator.getLeftSide() instanceof NumberLiteral) {
+            if (isLiteral(leftSide)) {
                 // support -LITERAL, e.g. -2; everything != 0 is TRUE
-                result = ((NumberLiteral) operator.getLeftSide()).getValue().doubleValue() != 0.0
-                        ? True.INSTANCE : False.INSTANCE;
+                result = getLiteralValue(leftSide).doubleValue() != 0.0 ? True.INSTANCE : False.INSTANCE;
                 
             } else {
-                throw new ExpressionFormatException("Unsupported operator: " + operator.getOperator());
+                throw createException("Unsupported operator: " + operator);
             }
             break;
             
         default:
-            throw new ExpressionFormatException("Unsupported operator: " + operator.getOperator());
+            throw createException("Unsupported operator: " + operator);
         }
         
         return result;
     }
-
-    @Override
-    public @NonNull Formula visitLiteral(@NonNull NumberLiteral literal) throws ExpressionFormatException {
+    
+    /**
+     * Translates a number literal.
+     * 
+     * @param value The value of the literal.
+     * 
+     * @return The formula for the literal.
+     * 
+     * @throws ExpressionFormatException If the literal can not be translated.
+     */
+    protected @NonNull Formula translateLiteral(@NonNull Number value) throws ExpressionFormatException {
         Formula result;
         
-        if (literal.getValue().doubleValue() == 0.0) {
+        if (value.doubleValue() == 0.0) {
             result = False.INSTANCE;
         } else {
             result = True.INSTANCE;
@@ -211,87 +965,86 @@ public class CppConditionParser implements ICppExressionVisitor<@NonNull Formula
     }
     
     /**
-     * Fuzzy-parses the given operator.
+     * Fuzzy-parses the given comparison.
      * 
-     * @param op The operator to parse. Must be a comparator operator.
+     * @param op The comparison operator.
+     * @param leftSide The left operand (see {@link #toFormula(Object)}).
+     * @param rightSide The right operand (see {@link #toFormula(Object)}).
      * 
      * @return The result of the fuzzy parsing.
      * 
      * @throws ExpressionFormatException If the given operator cannot be fuzzy-parsed.
      */
-    private @NonNull Formula fuzzyParse(@NonNull Operator op) throws ExpressionFormatException {
+    private @NonNull Formula fuzzyParse(@NonNull CppOperator op, @NonNull Object leftSide, @NonNull Object rightSide)
+            throws ExpressionFormatException {
+        
         if (!fuzzyParsing) {
-            throw new ExpressionFormatException(op.getOperator() + " is only supported if fuzzy parsing is enabled");
+            throw createException(op + " is only supported if fuzzy parsing is enabled");
         }
         
-        CppExpression leftSide = op.getLeftSide();
-        CppExpression rightSide = notNull(op.getRightSide());
-        
-        String variable;
-        String opStr;
-        String value;
+        net.ssehub.kernel_haven.util.logic.Variable result;
         
-        if (leftSide instanceof Variable && rightSide instanceof NumberLiteral) {
-            variable = ((Variable) leftSide).getName();
-            value = String.valueOf(((NumberLiteral) rightSide).getValue()).replace('.', '_');
-            opStr = getOpString(op.getOperator(), false);
+        if (isVariable(leftSide) && isLiteral(rightSide)) {
+            result = DerivedVariables.get(getVariableName(leftSide), getComparison(op, false),
+                    getLiteralValue(rightSide));
             
-        } else if (leftSide instanceof NumberLiteral && rightSide instanceof Variable) {
-            variable = ((Variable) rightSide).getName();
-            value = String.valueOf((((NumberLiteral) leftSide).getValue())).replace('.', '_');
-            opStr = getOpString(op.getOperator(), true);
+        } else if (isLiteral(leftSide) && isVariable(rightSide)) {
+            result = DerivedVariables.get(getVariableName(rightSide), getComparison(op, true),
+                    getLiteralValue(leftSide));
             
-        } else if (leftSide instanceof Variable && rightSide instanceof Variable) {
-            variable = ((Variable) leftSide).getName();
-            value = ((Variable) rightSide).getName();
-            opStr = getOpString(op.getOperator(), false);
+        } else if (isVariable(leftSide) && isVariable(rightSide)) {
+            result = DerivedVariables.get(getVariableName(leftSide), getComparison(op, false),
+                    getVariableName(rightSide));
             
         } else {
-            throw new ExpressionFormatException("Can only fuzzy-parse variables compared with integer literals "
+            throw createException("Can only fuzzy-parse variables compared with integer literals "
                     + "or other variables");
         }
         
-        return new net.ssehub.kernel_haven.util.logic.Variable(variable + opStr + value);
+        return result;
     }
     
     /**
-     * Returns a string to be used in variable names as a replacement for the given operator.
+     * Returns the kind of derived variable that replaces the given comparison operator. Its suffix is used in the
+     * variable name as a replacement for the operator.
      * 
      * @param op The operator to replace.
      * @param switched Whether greater and less than comparisons should be inverted.
      * 
-     * @return A string to be used as a replacement for the given operator.
+     * @return The derivation that replaces the given operator.
      * 
      * @throws ExpressionFormatException If the given operator is not a comparator.
      */
-    private String getOpString(CppOperator op, boolean switched) throws ExpressionFormatException {
-        String opStr;
+    private @NonNull Derivation getComparison(@NonNull CppOperator op, boolean switched)
+            throws ExpressionFormatException {
+        
+        Derivation result;
         
         switch (op) {
         case CMP_EQ:
-            opStr = "_eq_";
+            result = Derivation.EQ;
             break;
         case CMP_NE:
-            opStr = "_ne_";
+            result = Derivation.NE;
             break;
         case CMP_LT:
-            opStr = switched ? "_gt_" : "_lt_";
+            result = switched ? Derivation.GT : Derivation.LT;
             break;
         case CMP_LE:
-            opStr = switched ? "_ge_" : "_le_";
+            result = switched ? Derivation.GE : Derivation.LE;
             break;
         case CMP_GT:
-            opStr = switched ? "_lt_" : "_gt_";
+            result = switched ? Derivation.LT : Derivation.GT;
             break;
         case CMP_GE:
-            opStr = switched ? "_le_" : "_ge_";
+            result = switched ? Derivation.LE : Derivation.GE;
             break;
             
         default:
-            throw new ExpressionFormatException("Unsupported operator: " + op);
+            throw createException("Unsupported operator: " + op);
         }
         
-        return opStr;
+        return result;
     }
     
 }
@@ -22,6 +22,11 @@ import net.ssehub.kernel_haven.util.null_checks.NonNull;
 
 /**
  * General settings  for parsing CPP expressions, which may be used by Code-Extractors.
+ * <p>
+ * This plugin does not read these settings itself. A code extractor that uses a {@link CppConditionParser} registers
+ * the settings it supports in its configuration and passes their values to the constructor of the parser:
+ * {@link #HANDLE_LINUX_MACROS}, {@link #INVALID_CONDITION_SETTING} and {@link #CONDITION_CACHE_SIZE} are passed as
+ * they are; {@link #SHARE_FORMULAS} selects {@link FormulaFactory#SHARED} instead of {@link FormulaFactory#DEFAULT}.
  * @author Adam
  * @author El-Sharkawy
  *
@@ -39,4 +44,14 @@ public class CppParsingSettings {
         "code.extractor.handle_linux_macros", Type.BOOLEAN, true, "false", "Whether to handle the preprocessor macros "
             + "IS_ENABLED, IS_BUILTIN and IS_MODULE in preprocessor block conditions.");
 
+    public static final @NonNull Setting<@NonNull Integer> CONDITION_CACHE_SIZE = new Setting<>(
+        "code.extractor.condition_cache_size", Type.INTEGER, true, "10000", "The maximum number of parsed "
+            + "preprocessor block conditions that a condition parser caches. The same conditions appear in many "
+            + "files, so they only need to be parsed once. 0 disables the cache.");
+
+    public static final @NonNull Setting<@NonNull Boolean> SHARE_FORMULAS = new Setting<>(
+        "code.extractor.share_formulas", Type.BOOLEAN, true, "false", "Whether the condition parsers create "
+            + "structurally identical formulas only once (see FormulaFactory.SHARED). This reduces the memory needed "
+            + "for large sets of presence conditions, since common sub-formulas are shared.");
+
 }
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2018-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.ssehub.kernel_haven.cpp_utils.parser.SymbolTable;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A global, thread-safe cache of the {@link Variable}s that the condition parsers create. Besides the plain
+ * variables, this contains the variables that are derived from a variable name, e.g. <code>X_MODULE</code> for
+ * <code>IS_ENABLED(X)</code> or <code>X_eq_3</code> for the fuzzy parsing of <code>X == 3</code>.
+ * <p>
+ * The cache is keyed by the ID of the base name in the {@link SymbolTable#GLOBAL} symbol table, the kind of
+ * derivation and the constant (if any). Thus, the name of a derived variable is only built once. Different keys may
+ * result in the same name (e.g. <code>IS_MODULE(A)</code> and <code>defined(A_MODULE)</code>, or the fuzzy variables
+ * of <code>X</code> and <code>X != 0</code>); a second table keyed by the resulting name makes sure that all formulas
+ * share one {@link Variable} instance per name.
+ * <p>
+ * Like the {@link SymbolTable}, this cache does not shrink on its own; the number of variables in a code base is
+ * limited. Since the keys are symbol IDs, the cache is cleared when the {@link SymbolTable#GLOBAL} table is cleared
+ * (see {@link SymbolTable#clear()}); thus, a long-running process can release all cached variables with that one
+ * call.
+ *
+ * @author Adam
+ */
+final class DerivedVariables {
+
+    /**
+     * The kinds of derived variables. Each kind has a suffix that is appended to the base name.
+     */
+    enum Derivation {
+
+        /**
+         * The variable itself, without a suffix.
+         */
+        PLAIN(""),
+
+        /**
+         * The variable for the module variant of a Linux variable (<code>IS_MODULE(X)</code>).
+         */
+        MODULE("_MODULE"),
+
+        /**
+         * The fuzzy variable for a variable that is used as an integer (<code>X != 0</code>).
+         */
+        NOT_ZERO("_ne_0"),
+
+        /**
+         * The fuzzy variable for an equality comparison.
+         */
+        EQ("_eq_"),
+
+        /**
+         * The fuzzy variable for an inequality comparison.
+         */
+        NE("_ne_"),
+
+        /**
+         * The fuzzy variable for a less-than comparison.
+         */
+        LT("_lt_"),
+
+        /**
+         * The fuzzy variable for a less-or-equal comparison.
+         */
+        LE("_le_"),
+
+        /**
+         * The fuzzy variable for a greater-than comparison.
+         */
+        GT("_gt_"),
+
+        /**
+         * The fuzzy variable for a greater-or-equal comparison.
+         */
+        GE("_ge_");
+
+        private final @NonNull String suffix;
+
+        /**
+         * Creates a derivation.
+         *
+         * @param suffix The suffix that is appended to the base name.
+         */
+        Derivation(@NonNull String suffix) {
+            this.suffix = suffix;
+        }
+
+    }
+
+    /**
+     * Key type for derivations without a constant.
+     */
+    private static final int NO_CONSTANT = 0;
+
+    /**
+     * Key type for derivations with an integer constant. The constant is the value.
+     */
+    private static final int LONG_CONSTANT = 1;
+
+    /**
+     * Key type for derivations with a floating point constant. The constant is the raw bits of the value.
+     */
+    private static final int DOUBLE_CONSTANT = 2;
+
+    /**
+     * Key type for derivations with another variable. The constant is the symbol ID of the other variable.
+     */
+    private static final int VARIABLE_CONSTANT = 3;
+
+    /**
+     * The key of a cached variable.
+     */
+    private static final class Key {
+
+        private final int symbol;
+
+        private final @NonNull Derivation derivation;
+
+        private final int constantType;
+
+        private final long constant;
+
+        /**
+         * Creates a key.
+         *
+         * @param symbol The symbol ID of the base name.
+         * @param derivation The kind of derivation.
+         * @param constantType The type of the constant; one of the <code>*_CONSTANT</code> constants.
+         * @param constant The constant; the meaning depends on the type.
+         */
+        Key(int symbol, @NonNull Derivation derivation, int constantType, long constant) {
+            this.symbol = symbol;
+            this.derivation = derivation;
+            this.constantType = constantType;
+            this.constant = constant;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((symbol * 31 + derivation.ordinal()) * 31 + constantType) * 31 + Long.hashCode(constant);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            boolean equal = false;
+            if (obj instanceof Key) {
+                Key other = (Key) obj;
+                equal = this.symbol == other.symbol && this.derivation == other.derivation
+                        && this.constantType == other.constantType && this.constant == other.constant;
+            }
+            return equal;
+        }
+
+    }
+
+    private static final @NonNull ConcurrentHashMap<@NonNull Key, @NonNull Variable> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * The canonical variables by their name. All variables in the {@link #CACHE} are taken from here. Cleared
+     * together with the {@link #CACHE}.
+     */
+    private static final @NonNull ConcurrentHashMap<@NonNull String, @NonNull Variable> BY_NAME
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The variables that are kept in {@link #BY_NAME} when it is cleared (see {@link #getPermanent(String)}). Only
+     * modified while holding the lock of the {@link #CACHE}.
+     */
+    private static final @NonNull ConcurrentHashMap<@NonNull String, @NonNull Variable> PERMANENT
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The {@link SymbolTable#getGeneration()} of the symbol IDs in the keys of the {@link #CACHE}. Only modified while
+     * holding the lock of the cache.
+     */
+    private static volatile int generation = SymbolTable.GLOBAL.getGeneration();
+
+    /**
+     * Don't allow any instances.
+     */
+    private DerivedVariables() {
+    }
+
+    /**
+     * Returns the cache of the variables. If the {@link SymbolTable#GLOBAL} table was cleared since the cache was
+     * filled, the cache is cleared first, since its keys are outdated.
+     *
+     * @return The cache.
+     */
+    private static @NonNull ConcurrentHashMap<@NonNull Key, @NonNull Variable> getCache() {
+        int current = SymbolTable.GLOBAL.getGeneration();
+        if (current != generation) {
+            synchronized (CACHE) {
+                if (current != generation) {
+                    CACHE.clear();
+                    BY_NAME.clear();
+                    BY_NAME.putAll(PERMANENT);
+                    generation = current;
+                }
+            }
+        }
+        return CACHE;
+    }
+
+    /**
+     * Returns the canonical variable for the given name, and keeps it canonical even if the cache is cleared. This is
+     * meant for variables that are stored in constants, like {@link CppConditionParser#ERROR_VARIBLE}.
+     *
+     * @param name The name of the variable.
+     *
+     * @return The canonical variable with the given name.
+     */
+    static @NonNull Variable getPermanent(@NonNull String name) {
+        Variable result = get(name, Derivation.PLAIN);
+        synchronized (CACHE) {
+            Variable existing = PERMANENT.putIfAbsent(name, result);
+            if (existing != null) {
+                result = existing;
+            } else if (BY_NAME.get(name) != result) {
+                // the cache was cleared in the meantime
+                BY_NAME.put(name, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the derived variable for the given name.
+     *
+     * @param name The base name.
+     * @param derivation The kind of derivation. Must not be a comparison (these need a constant).
+     *
+     * @return The canonical variable with the derived name.
+     */
+    static @NonNull Variable get(@NonNull String name, @NonNull Derivation derivation) {
+        int symbol = SymbolTable.GLOBAL.getId(name);
+        Key key = new Key(symbol, derivation, NO_CONSTANT, 0);
+        Variable result = getCache().get(key);
+        if (result == null) {
+            result = add(key, name + derivation.suffix);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the variable for the comparison of the given variable with a literal.
+     *
+     * @param name The name of the compared variable.
+     * @param comparison The kind of comparison.
+     * @param value The value of the literal; either a {@link Long} or a {@link Double}.
+     *
+     * @return The canonical variable for the comparison.
+     */
+    static @NonNull Variable get(@NonNull String name, @NonNull Derivation comparison, @NonNull Number value) {
+        int symbol = SymbolTable.GLOBAL.getId(name);
+        Key key;
+        if (value instanceof Double) {
+            key = new Key(symbol, comparison, DOUBLE_CONSTANT, Double.doubleToLongBits(value.doubleValue()));
+        } else {
+            key = new Key(symbol, comparison, LONG_CONSTANT, value.longValue());
+        }
+
+        Variable result = getCache().get(key);
+        if (result == null) {
+            result = add(key, name + comparison.suffix + String.valueOf(value).replace('.', '_'));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the variable for the comparison of the given variable with another variable.
+     *
+     * @param name The name of the compared variable.
+     * @param comparison The kind of comparison.
+     * @param otherName The name of the other variable.
+     *
+     * @return The canonical variable for the comparison.
+     */
+    static @NonNull Variable get(@NonNull String name, @NonNull Derivation comparison, @NonNull String otherName) {
+        Key key = new Key(SymbolTable.GLOBAL.getId(name), comparison, VARIABLE_CONSTANT,
+                SymbolTable.GLOBAL.getId(otherName));
+
+        Variable result = getCache().get(key);
+        if (result == null) {
+            result = add(key, name + comparison.suffix + otherName);
+        }
+        return result;
+    }
+
+    /**
+     * Adds a new variable to the cache, if no other thread added it in the meantime.
+     *
+     * @param key The key of the variable.
+     * @param name The name of the variable.
+     *
+     * @return The canonical variable for the key.
+     */
+    private static @NonNull Variable add(@NonNull Key key, @NonNull String name) {
+        ConcurrentHashMap<@NonNull Key, @NonNull Variable> cache = getCache();
+        Variable variable = BY_NAME.get(name);
+        if (variable == null) {
+            Variable created = new Variable(SymbolTable.GLOBAL.intern(name));
+            variable = BY_NAME.putIfAbsent(created.getName(), created);
+            if (variable == null) {
+                variable = created;
+            }
+        }
+        Variable existing = cache.putIfAbsent(key, variable);
+        return existing != null ? existing : variable;
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import net.ssehub.kernel_haven.cpp_utils.parser.CppOperator;
+import net.ssehub.kernel_haven.cpp_utils.parser.CppParser;
+import net.ssehub.kernel_haven.cpp_utils.parser.SymbolTable;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Recognizes the most common shapes of conditions in a single scan, and translates them without the
+ * {@link CppParser}. The recognized shapes are a single term, or a chain of terms that are all connected by
+ * <code>&amp;&amp;</code> or all connected by <code>||</code>. A term is <code>defined(X)</code> or
+ * <code>defined X</code>, optionally negated with <code>!</code>. Spaces and tabs are allowed between all elements.
+ * <p>
+ * The terms are translated with the <code>translate*()</code> methods of the {@link CppConditionParser}, in the same
+ * order and with the same operands as in direct translation; chains are left-associative, like in the
+ * {@link CppParser}. Thus, the result is the same as with the general parser. Everything else (including
+ * conditions whose translation fails) is left to the general parser.
+ *
+ * @author Adam
+ */
+final class FastPathTranslator {
+
+    private static final @NonNull String DEFINED = "defined";
+
+    /**
+     * Don't allow any instances.
+     */
+    private FastPathTranslator() {
+    }
+
+    /**
+     * Translates the given condition, if it has one of the recognized shapes.
+     *
+     * @param parser The parser whose <code>translate*()</code> methods are used.
+     * @param expression The character sequence that contains the condition.
+     * @param start The index of the first character of the condition.
+     * @param end The index after the last character of the condition.
+     *
+     * @return The formula for the condition; <code>null</code> if the condition does not have one of the recognized
+     *      shapes, or if its translation fails.
+     */
+    static @Nullable Formula translate(@NonNull CppConditionParser parser, @NonNull CharSequence expression,
+            int start, int end) {
+
+        Formula result = null;
+        CppOperator chainOperator = null;
+        boolean valid = true;
+        boolean expectTerm = true;
+        int pos = skipWhitespace(expression, start, end);
+
+        try {
+            while (valid && expectTerm) {
+                boolean negated = pos < end && expression.charAt(pos) == '!';
+                if (negated) {
+                    pos = skipWhitespace(expression, pos + 1, end);
+                }
+
+                valid = startsWithDefined(expression, pos, end);
+                pos += DEFINED.length();
+
+                int nameStart = skipWhitespace(expression, pos, end);
+                boolean brackets = valid && nameStart < end && expression.charAt(nameStart) == '(';
+                if (brackets) {
+                    nameStart = skipWhitespace(expression, nameStart + 1, end);
+                } else {
+                    // defined X needs whitespace; otherwise, definedX is a variable
+                    valid &= nameStart > pos;
+                }
+
+                int nameEnd = identifierEnd(expression, nameStart, end);
+                // defined(defined) is left to the general parser, which treats defined as a keyword
+                valid &= nameEnd > nameStart && !(nameEnd - nameStart == DEFINED.length()
+                        && startsWithDefined(expression, nameStart, end));
+                pos = skipWhitespace(expression, nameEnd, end);
+
+                if (brackets) {
+                    valid &= pos < end && expression.charAt(pos) == ')';
+                    pos = skipWhitespace(expression, pos + 1, end);
+                }
+
+                if (valid) {
+                    String name = SymbolTable.GLOBAL.intern(notNull(expression.subSequence(nameStart, nameEnd)
+                            .toString()));
+                    Formula term = parser.translateFunctionCall(DEFINED, name);
+                    if (negated) {
+                        term = parser.translateOperator(CppOperator.BOOL_NOT, term, null);
+                    }
+                    result = chainOperator == null ? term : parser.translateOperator(chainOperator, notNull(result),
+                            term);
+
+                    expectTerm = pos < end;
+                    if (expectTerm) {
+                        CppOperator operator = getChainOperator(expression, pos, end);
+                        valid = operator != null && (chainOperator == null || chainOperator == operator);
+                        chainOperator = operator;
+                        pos = skipWhitespace(expression, pos + 2, end);
+                    }
+                }
+            }
+
+        } catch (ExpressionFormatException e) {
+            // let the general parser create the same exception as without the fast path
+            valid = false;
+        }
+
+        return valid ? result : null;
+    }
+
+    /**
+     * Checks whether the keyword <code>defined</code> starts at the given position.
+     *
+     * @param expression The character sequence that contains the condition.
+     * @param pos The position to check.
+     * @param end The index after the last character of the condition.
+     *
+     * @return Whether <code>defined</code> starts at the given position.
+     */
+    private static boolean startsWithDefined(@NonNull CharSequence expression, int pos, int end) {
+        boolean result = pos + DEFINED.length() <= end;
+        for (int i = 0; result && i < DEFINED.length(); i++) {
+            result = expression.charAt(pos + i) == DEFINED.charAt(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the operator at the given position, if it is <code>&amp;&amp;</code> or <code>||</code>.
+     *
+     * @param expression The character sequence that contains the condition.
+     * @param pos The position of the operator.
+     * @param end The index after the last character of the condition.
+     *
+     * @return The operator; <code>null</code> if there is no <code>&amp;&amp;</code> or <code>||</code> at the given
+     *      position.
+     */
+    private static @Nullable CppOperator getChainOperator(@NonNull CharSequence expression, int pos, int end) {
+        CppOperator result = null;
+        if (pos + 1 < end) {
+            char first = expression.charAt(pos);
+            char second = expression.charAt(pos + 1);
+            if (first == '&' && second == '&') {
+                result = CppOperator.BOOL_AND;
+            } else if (first == '|' && second == '|') {
+                result = CppOperator.BOOL_OR;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Skips spaces and tabs.
+     *
+     * @param expression The character sequence that contains the condition.
+     * @param pos The position to start at.
+     * @param end The index after the last character of the condition.
+     *
+     * @return The position of the first character that is not a space or tab; <code>end</code> if there is none.
+     */
+    private static int skipWhitespace(@NonNull CharSequence expression, int pos, int end) {
+        int result = pos;
+        while (result < end && (expression.charAt(result) == ' ' || expression.charAt(result) == '\t')) {
+            result++;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the end of the identifier that starts at the given position. Only identifiers that start with a letter or
+     * underscore, followed by letters, digits and underscores, are recognized.
+     *
+     * @param expression The character sequence that contains the condition.
+     * @param pos The position of the first character of the identifier.
+     * @param end The index after the last character of the condition.
+     *
+     * @return The index after the last character of the identifier; <code>pos</code> if there is no identifier.
+     */
+    private static int identifierEnd(@NonNull CharSequence expression, int pos, int end) {
+        int result = pos;
+        if (result < end && isIdentifierStart(expression.charAt(result))) {
+            result++;
+            while (result < end && (isIdentifierStart(expression.charAt(result))
+                    || (expression.charAt(result) >= '0' && expression.charAt(result) <= '9'))) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the given character may start an identifier.
+     *
+     * @param c The character to check.
+     *
+     * @return Whether the character is an ASCII letter or an underscore.
+     */
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+}
@@ -0,0 +1,528 @@
+/*
+ * Copyright 2018-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.ssehub.kernel_haven.cpp_utils.DerivedVariables.Derivation;
+import net.ssehub.kernel_haven.cpp_utils.non_boolean.FormulaWalker;
+import net.ssehub.kernel_haven.cpp_utils.non_boolean.Literal;
+import net.ssehub.kernel_haven.cpp_utils.non_boolean.Macro;
+import net.ssehub.kernel_haven.cpp_utils.non_boolean.NonBooleanOperator;
+import net.ssehub.kernel_haven.cpp_utils.non_boolean.NumericLiteral;
+import net.ssehub.kernel_haven.cpp_utils.parser.CppOperator;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Creates the {@link Formula}s of the condition parsers. A factory either simply creates new instances
+ * ({@link #DEFAULT}), or it hash-conses them ({@link #SHARED}): structurally identical formulas are created only once,
+ * and the same instance is returned for all of them. Thus, formulas created by a hash-consing factory can be compared
+ * with <code>==</code>, and large sets of presence conditions share their common sub-formulas in memory.
+ * <p>
+ * Hash-consing works bottom-up: the operands passed to the methods of a hash-consing factory should have been created
+ * by the same factory (or by {@link #intern(Formula)}). Since the operands are canonical, a formula is looked up by
+ * the identity of its operands, so a lookup does not traverse the whole formula. The table only references the
+ * formulas weakly, so formulas that are not used anymore are garbage collected as usual. {@link Variable}s are always
+ * canonical (see {@link CppConditionParser#createVariable(String)}); {@link True} and {@link False} are singletons.
+ * <p>
+ * Factories are thread-safe.
+ *
+ * @author Adam
+ */
+public final class FormulaFactory {
+
+    /**
+     * A factory that creates a new instance for each formula.
+     */
+    public static final @NonNull FormulaFactory DEFAULT = new FormulaFactory(false);
+
+    /**
+     * A global hash-consing factory. Parsers that use this factory share all their formulas.
+     */
+    public static final @NonNull FormulaFactory SHARED = new FormulaFactory(true);
+
+    /**
+     * The number of segments of the table. Each segment has its own lock. Must be a power of two.
+     */
+    private static final int SEGMENTS = 32;
+
+    /**
+     * A weakly referenced formula in the table.
+     */
+    private static final class Entry extends WeakReference<Formula> {
+
+        private final int hash;
+
+        private @Nullable Entry next;
+
+        /**
+         * Creates an entry.
+         *
+         * @param formula The canonical formula.
+         * @param hash The shallow hash of the formula (see {@link FormulaFactory#shallowHash(Formula)}).
+         * @param queue The queue to register the entry with.
+         * @param next The next entry in the same bucket.
+         */
+        Entry(@NonNull Formula formula, int hash, @NonNull ReferenceQueue<Formula> queue, @Nullable Entry next) {
+            super(formula, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+
+    }
+
+    /**
+     * A segment of the table: a hash table with chaining, guarded by the lock of the segment.
+     */
+    private static final class Segment {
+
+        private @Nullable Entry @NonNull [] buckets;
+
+        private int size;
+
+        private final @NonNull ReferenceQueue<Formula> queue;
+
+        /**
+         * Creates an empty segment.
+         */
+        Segment() {
+            this.buckets = new Entry[16];
+            this.queue = new ReferenceQueue<>();
+        }
+
+        /**
+         * Returns the canonical instance of the given formula. If there is none yet, the given formula becomes the
+         * canonical instance.
+         *
+         * @param candidate The formula to look up.
+         * @param hash The shallow hash of the formula.
+         *
+         * @return The canonical formula that is structurally identical to the candidate.
+         */
+        synchronized @NonNull Formula share(@NonNull Formula candidate, int hash) {
+            removeCollected();
+
+            Formula result = null;
+            for (Entry entry = buckets[hash & (buckets.length - 1)]; entry != null && result == null;
+                    entry = entry.next) {
+                Formula existing = entry.get();
+                if (entry.hash == hash && existing != null && shallowEquals(existing, candidate)) {
+                    result = existing;
+                }
+            }
+
+            if (result == null) {
+                if (size >= buckets.length * 3 / 4) {
+                    resize();
+                }
+                int index = hash & (buckets.length - 1);
+                buckets[index] = new Entry(candidate, hash, queue, buckets[index]);
+                size++;
+                result = candidate;
+            }
+            return result;
+        }
+
+        /**
+         * Removes the entries of formulas that were garbage collected.
+         */
+        private void removeCollected() {
+            Entry collected = (Entry) queue.poll();
+            while (collected != null) {
+                int index = collected.hash & (buckets.length - 1);
+                Entry previous = null;
+                Entry entry = buckets[index];
+                while (entry != null && entry != collected) {
+                    previous = entry;
+                    entry = entry.next;
+                }
+                if (entry != null) {
+                    if (previous == null) {
+                        buckets[index] = entry.next;
+                    } else {
+                        previous.next = entry.next;
+                    }
+                    size--;
+                }
+                collected = (Entry) queue.poll();
+            }
+        }
+
+        /**
+         * Doubles the number of buckets.
+         */
+        private void resize() {
+            @Nullable Entry[] newBuckets = new Entry[buckets.length * 2];
+            for (Entry entry : buckets) {
+                while (entry != null) {
+                    Entry next = entry.next;
+                    int index = entry.hash & (newBuckets.length - 1);
+                    entry.next = newBuckets[index];
+                    newBuckets[index] = entry;
+                    entry = next;
+                }
+            }
+            buckets = newBuckets;
+        }
+
+        /**
+         * Returns the number of entries in this segment.
+         *
+         * @return The number of entries, including formulas that were collected but not yet removed.
+         */
+        synchronized int size() {
+            return size;
+        }
+
+    }
+
+    /**
+     * The segments of the table; <code>null</code> if this factory does not hash-cons.
+     */
+    private final @NonNull Segment @Nullable [] segments;
+
+    /**
+     * Creates a new factory. Usually, one of the global factories {@link #DEFAULT} or {@link #SHARED} should be used
+     * instead; a separate hash-consing factory is useful to limit the sharing (and the table) to a set of formulas.
+     *
+     * @param hashConsing Whether structurally identical formulas should be created only once.
+     */
+    public FormulaFactory(boolean hashConsing) {
+        if (hashConsing) {
+            @NonNull Segment[] segments = new @NonNull Segment[SEGMENTS];
+            for (int i = 0; i < SEGMENTS; i++) {
+                segments[i] = new Segment();
+            }
+            this.segments = segments;
+        } else {
+            this.segments = null;
+        }
+    }
+
+    /**
+     * Returns whether this factory hash-conses the formulas, i.e. whether structurally identical formulas created by
+     * this factory are the same instance.
+     *
+     * @return Whether this factory hash-conses.
+     */
+    public boolean isHashConsing() {
+        return segments != null;
+    }
+
+    /**
+     * Creates a {@link Conjunction}.
+     *
+     * @param left The left operand.
+     * @param right The right operand.
+     *
+     * @return The conjunction of the operands.
+     */
+    public @NonNull Formula and(@NonNull Formula left, @NonNull Formula right) {
+        return share(new Conjunction(left, right));
+    }
+
+    /**
+     * Creates a {@link Disjunction}.
+     *
+     * @param left The left operand.
+     * @param right The right operand.
+     *
+     * @return The disjunction of the operands.
+     */
+    public @NonNull Formula or(@NonNull Formula left, @NonNull Formula right) {
+        return share(new Disjunction(left, right));
+    }
+
+    /**
+     * Creates a {@link Negation}.
+     *
+     * @param formula The negated formula.
+     *
+     * @return The negation of the formula.
+     */
+    public @NonNull Formula not(@NonNull Formula formula) {
+        return share(new Negation(formula));
+    }
+
+    /**
+     * Creates a non-Boolean {@link Literal}.
+     *
+     * @param literal The literal (string or number constant).
+     *
+     * @return The literal.
+     */
+    public @NonNull Formula literal(@NonNull String literal) {
+        return share(new Literal(literal));
+    }
+
+    /**
+     * Creates a non-Boolean {@link NumericLiteral} for a number constant.
+     *
+     * @param value The value of the literal.
+     *
+     * @return The literal.
+     */
+    public @NonNull Formula literal(@NonNull Number value) {
+        return share(NumericLiteral.valueOf(value));
+    }
+
+    /**
+     * Creates a non-Boolean {@link NumericLiteral} for a negated number constant (see
+     * {@link NumericLiteral#negate()}).
+     *
+     * @param value The value of the literal, before negation.
+     *
+     * @return The negated literal.
+     */
+    public @NonNull Formula negatedLiteral(@NonNull Number value) {
+        return share(NumericLiteral.valueOf(value).negate());
+    }
+
+    /**
+     * Creates a non-Boolean {@link Macro}.
+     *
+     * @param function The name of the called function.
+     * @param argument The argument of the function call; may be <code>null</code>.
+     *
+     * @return The macro.
+     */
+    public @NonNull Formula macro(@NonNull String function, @Nullable Formula argument) {
+        return share(new Macro(function, argument));
+    }
+
+    /**
+     * Creates a {@link NonBooleanOperator}.
+     *
+     * @param left The left operand.
+     * @param operator The operator.
+     * @param right The right operand.
+     *
+     * @return The operation.
+     */
+    public @NonNull Formula operator(@NonNull Formula left, @NonNull CppOperator operator, @NonNull Formula right) {
+        return share(new NonBooleanOperator(left, operator, right));
+    }
+
+    /**
+     * Returns the canonical instance of the given formula. In contrast to the other methods, the operands of the
+     * given formula do not need to be canonical; the whole formula is traversed (iteratively, with a
+     * {@link FormulaWalker}). For a factory that does not hash-cons, the formula is returned unchanged.
+     *
+     * @param formula The formula.
+     *
+     * @return The canonical formula that is structurally identical to the given formula.
+     */
+    public @NonNull Formula intern(@NonNull Formula formula) {
+        Formula result;
+        if (segments == null) {
+            result = formula;
+
+        } else {
+            // the canonical operands of the formulas that are currently left, with the right operand on top
+            List<@NonNull Formula> operands = new ArrayList<>();
+            FormulaWalker.walk(formula, new FormulaWalker.IListener() {
+
+                @Override
+                public void leave(@NonNull Formula current) {
+                    Formula canonical;
+                    if (current instanceof Conjunction) {
+                        Formula right = pop(operands);
+                        canonical = and(pop(operands), right);
+
+                    } else if (current instanceof Disjunction) {
+                        Formula right = pop(operands);
+                        canonical = or(pop(operands), right);
+
+                    } else if (current instanceof Negation) {
+                        canonical = not(pop(operands));
+
+                    } else if (current instanceof Macro) {
+                        Macro macro = (Macro) current;
+                        canonical = macro(macro.getFunction(), macro.getArgument() != null ? pop(operands) : null);
+
+                    } else if (current instanceof NonBooleanOperator) {
+                        Formula right = pop(operands);
+                        canonical = operator(pop(operands), ((NonBooleanOperator) current).getOperator(), right);
+
+                    } else {
+                        canonical = share(current);
+                    }
+                    operands.add(canonical);
+                }
+
+            });
+            result = pop(operands);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the topmost element of the given stack.
+     *
+     * @param stack The stack.
+     *
+     * @return The removed element.
+     */
+    private static @NonNull Formula pop(@NonNull List<@NonNull Formula> stack) {
+        return notNull(stack.remove(stack.size() - 1));
+    }
+
+    /**
+     * Returns the number of formulas in the table of this factory. This is approximate, since formulas that were
+     * garbage collected are only removed from the table lazily.
+     *
+     * @return The number of canonical formulas; 0 if this factory does not hash-cons.
+     */
+    public int size() {
+        int result = 0;
+        @NonNull Segment[] segments = this.segments;
+        if (segments != null) {
+            for (Segment segment : segments) {
+                result += segment.size();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the canonical instance of the given formula, whose operands are already canonical.
+     *
+     * @param formula The formula.
+     *
+     * @return The canonical formula; the given formula if this factory does not hash-cons.
+     */
+    private @NonNull Formula share(@NonNull Formula formula) {
+        Formula result;
+        @NonNull Segment[] segments = this.segments;
+        if (segments == null || formula instanceof True || formula instanceof False) {
+            result = formula;
+
+        } else if (formula.getClass() == Variable.class) {
+            result = DerivedVariables.get(((Variable) formula).getName(), Derivation.PLAIN);
+
+        } else {
+            int hash = shallowHash(formula);
+            hash ^= hash >>> 16;
+            result = segments[hash & (SEGMENTS - 1)].share(formula, hash >>> 5);
+        }
+        return result;
+    }
+
+    /**
+     * Computes a hash of the given formula that only considers the identity of its operands. This is consistent with
+     * {@link #shallowEquals(Formula, Formula)}.
+     *
+     * @param formula The formula, whose operands are canonical.
+     *
+     * @return The hash of the formula.
+     */
+    private static int shallowHash(@NonNull Formula formula) {
+        int result;
+        if (formula instanceof Conjunction) {
+            Conjunction conjunction = (Conjunction) formula;
+            result = hash(1, conjunction.getLeft(), conjunction.getRight());
+
+        } else if (formula instanceof Disjunction) {
+            Disjunction disjunction = (Disjunction) formula;
+            result = hash(2, disjunction.getLeft(), disjunction.getRight());
+
+        } else if (formula instanceof Negation) {
+            result = hash(3, ((Negation) formula).getFormula(), null);
+
+        } else if (formula instanceof Macro) {
+            Macro macro = (Macro) formula;
+            result = hash(macro.getFunction().hashCode(), macro.getArgument(), null);
+
+        } else if (formula instanceof NonBooleanOperator) {
+            NonBooleanOperator operator = (NonBooleanOperator) formula;
+            result = hash(operator.getOperator().ordinal(), operator.getLeft(), operator.getRight());
+
+        } else {
+            result = formula.hashCode();
+        }
+        return result;
+    }
+
+    /**
+     * Combines a seed with the identity hashes of up to two operands.
+     *
+     * @param seed The seed, e.g. the type of the formula.
+     * @param first The first operand; may be <code>null</code>.
+     * @param second The second operand; may be <code>null</code>.
+     *
+     * @return The combined hash.
+     */
+    private static int hash(int seed, @Nullable Formula first, @Nullable Formula second) {
+        return (seed * 31 + System.identityHashCode(first)) * 31 + System.identityHashCode(second);
+    }
+
+    /**
+     * Checks whether the given formulas are of the same type and have the same operands. The operands are compared
+     * by identity, since they are canonical.
+     *
+     * @param existing The canonical formula.
+     * @param candidate The formula that is looked up.
+     *
+     * @return Whether the formulas are structurally identical.
+     */
+    private static boolean shallowEquals(@NonNull Formula existing, @NonNull Formula candidate) {
+        boolean result;
+        if (existing.getClass() != candidate.getClass()) {
+            result = false;
+
+        } else if (existing instanceof Conjunction) {
+            Conjunction a = (Conjunction) existing;
+            Conjunction b = (Conjunction) candidate;
+            result = a.getLeft() == b.getLeft() && a.getRight() == b.getRight();
+
+        } else if (existing instanceof Disjunction) {
+            Disjunction a = (Disjunction) existing;
+            Disjunction b = (Disjunction) candidate;
+            result = a.getLeft() == b.getLeft() && a.getRight() == b.getRight();
+
+        } else if (existing instanceof Negation) {
+            result = ((Negation) existing).getFormula() == ((Negation) candidate).getFormula();
+
+        } else if (existing instanceof Macro) {
+            Macro a = (Macro) existing;
+            Macro b = (Macro) candidate;
+            result = a.getFunction().equals(b.getFunction()) && a.getArgument() == b.getArgument();
+
+        } else if (existing instanceof NonBooleanOperator) {
+            NonBooleanOperator a = (NonBooleanOperator) existing;
+            NonBooleanOperator b = (NonBooleanOperator) candidate;
+            result = a.getOperator() == b.getOperator() && a.getLeft() == b.getLeft() && a.getRight() == b.getRight();
+
+        } else {
+            result = existing.equals(candidate);
+        }
+        return result;
+    }
+
+}
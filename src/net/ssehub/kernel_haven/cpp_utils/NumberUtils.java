@@ -15,8 +15,6 @@
  */
 package net.ssehub.kernel_haven.cpp_utils;
 
-import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
-
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
 import net.ssehub.kernel_haven.util.null_checks.Nullable;
 
@@ -43,12 +41,25 @@ public class NumberUtils {
      * @see <a href="https://stackoverflow.com/a/5439547">https://stackoverflow.com/a/5439547</a>
      */
     public static boolean isInteger(@NonNull String str, int radix) {
+        return isInteger(str, 0, str.length(), radix);
+    }
+    
+    /**
+     * Checks if a range of the given character sequence is an integer value.
+     * @param str The character sequence that contains the range to test.
+     * @param start The index of the first character of the range.
+     * @param end The index after the last character of the range.
+     * @param radix the radix (usually 10, or 16 for hex values).
+     * 
+     * @return <tt>true</tt> if the range is an Integer.
+     */
+    public static boolean isInteger(@NonNull CharSequence str, int start, int end, int radix) {
         boolean result = false;
-        if (!str.isEmpty()) {
+        if (start < end) {
             result = true;
-            for (int i = 0; i < str.length() && result; i++) {
-                if (i == 0 && str.charAt(i) == '-') {
-                    if (str.length() == 1) {
+            for (int i = start; i < end && result; i++) {
+                if (i == start && str.charAt(i) == '-') {
+                    if (end - start == 1) {
                         result = false;
                     }
                 } else {
@@ -70,29 +81,37 @@ public class NumberUtils {
      * @return A number or <tt>null</tt> if it could not be converted.
      */
     public static @Nullable Number convertToNumber(@NonNull String str) {
+        return convertToNumber(str, 0, str.length());
+    }
+    
+    /**
+     * Converts a range of the given character sequence into a number (considering correct sub class, e.g., Long or
+     * Double). Integer values are converted in a single pass over the range, without creating a sub-string.
+     * 
+     * @param str The character sequence that contains the range to convert.
+     * @param start The index of the first character of the range.
+     * @param end The index after the last character of the range.
+     * @return A number or <tt>null</tt> if it could not be converted.
+     */
+    public static @Nullable Number convertToNumber(@NonNull CharSequence str, int start, int end) {
         Number result = null;
         
-        if (isInteger(str, 10)) {
+        if (isInteger(str, start, end, 10)) {
             // Convert normal long
-            try {
-                result = Long.valueOf(str, 10);
-            } catch (NumberFormatException e) {
-                // ignore, just return null
-            }
-        } else if (str.startsWith("0x") && isInteger(notNull(str.substring(2)), 16)) {
+            result = parseLong(str, start, end, 10);
+            
+        } else if (end - start >= 2 && str.charAt(start) == '0' && str.charAt(start + 1) == 'x'
+                && isInteger(str, start + 2, end, 16)) {
             // Convert hex value to long
-            try {
-                result = Long.valueOf(str.substring(2), 16);
-            } catch (NumberFormatException e) {
-                // ignore, just return null
-            }
+            result = parseLong(str, start + 2, end, 16);
+            
         } else {
             // Convert it into a double
             try {
-                Double tmpResult = Double.valueOf(str);
+                double tmpResult = Double.parseDouble(str.subSequence(start, end).toString());
                 if ((tmpResult == Math.floor(tmpResult)) && !Double.isInfinite(tmpResult)) {
                     // Cast to Long if possible (e.g., if it ends with .0)
-                    result = tmpResult.longValue();
+                    result = (long) tmpResult;
                 } else {
                     result = tmpResult;
                 }
@@ -103,5 +122,37 @@ public class NumberUtils {
         
         return result;
     }
+    
+    /**
+     * Parses a range that was checked by {@link #isInteger(CharSequence, int, int, int)} into a long.
+     * 
+     * @param str The character sequence that contains the range to parse.
+     * @param start The index of the first character of the range.
+     * @param end The index after the last character of the range.
+     * @param radix The radix of the digits.
+     * @return The value, or <tt>null</tt> if it does not fit into a long.
+     */
+    private static @Nullable Long parseLong(@NonNull CharSequence str, int start, int end, int radix) {
+        // accumulate negatively, since the range of negative values is larger (same as Long.parseLong())
+        boolean negative = str.charAt(start) == '-';
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / radix;
+        long value = 0;
+        boolean valid = true;
+        for (int i = negative ? start + 1 : start; i < end && valid; i++) {
+            int digit = Character.digit(str.charAt(i), radix);
+            if (value < multiplyLimit || value * radix < limit + digit) {
+                valid = false;
+            } else {
+                value = value * radix - digit;
+            }
+        }
+        
+        Long result = null;
+        if (valid) {
+            result = negative ? value : -value;
+        }
+        return result;
+    }
 
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils;
+
+import net.ssehub.kernel_haven.cpp_utils.parser.CppExpressionFormatException;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * The result of parsing a single condition with {@link CppConditionParser#tryParse(String)}. Either the condition was
+ * parsed successfully into a {@link Formula}, or parsing failed. In the latter case, the error message is only built
+ * when {@link #getErrorMessage()} is called.
+ *
+ * @author Adam
+ */
+public final class ParseResult {
+
+    private final @Nullable Formula formula;
+
+    private final @Nullable ExpressionFormatException exception;
+
+    /**
+     * Creates a successful result.
+     *
+     * @param formula The formula that the condition was parsed into.
+     */
+    ParseResult(@NonNull Formula formula) {
+        this.formula = formula;
+        this.exception = null;
+    }
+
+    /**
+     * Creates a failed result.
+     *
+     * @param exception The exception describing why parsing failed.
+     * @param replacement The replacement formula according to the {@link InvalidConditionHandling}; <code>null</code>
+     *      for {@link InvalidConditionHandling#EXCEPTION}.
+     */
+    ParseResult(@NonNull ExpressionFormatException exception, @Nullable Formula replacement) {
+        this.formula = replacement;
+        this.exception = exception;
+    }
+
+    /**
+     * Returns whether the condition was parsed successfully.
+     *
+     * @return Whether parsing succeeded.
+     */
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    /**
+     * Returns the formula for the condition. If parsing failed, this is the replacement formula according to the
+     * configured {@link InvalidConditionHandling}.
+     *
+     * @return The formula; <code>null</code> if parsing failed and {@link InvalidConditionHandling#EXCEPTION} is
+     *      configured.
+     */
+    public @Nullable Formula getFormula() {
+        return formula;
+    }
+
+    /**
+     * Returns the exception describing why parsing failed.
+     *
+     * @return The exception; <code>null</code> if parsing succeeded.
+     */
+    public @Nullable ExpressionFormatException getException() {
+        return exception;
+    }
+
+    /**
+     * Returns the index of the character in the condition where parsing failed.
+     *
+     * @return The error position; <code>-1</code> if parsing succeeded or the position is not known (e.g. for
+     *      unsupported operators or functions).
+     */
+    public int getErrorPosition() {
+        int result = -1;
+        if (exception instanceof CppExpressionFormatException) {
+            result = ((CppExpressionFormatException) exception).getPosition();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the message describing why parsing failed. The message is built when this method is called for the
+     * first time.
+     *
+     * @return The error message; <code>null</code> if parsing succeeded.
+     */
+    public @Nullable String getErrorMessage() {
+        ExpressionFormatException exception = this.exception;
+        return exception != null ? exception.getMessage() : null;
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2018-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.util.Arrays;
+
+import net.ssehub.kernel_haven.cpp_utils.parser.CompactExpression;
+import net.ssehub.kernel_haven.cpp_utils.parser.CppParser;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.CppExpression;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A condition that is parsed once, and can be translated into several flavors of {@link Formula}s: by
+ * {@link CppConditionParser}s with and without fuzzy parsing or Linux macros, and by
+ * {@link net.ssehub.kernel_haven.cpp_utils.non_boolean.CppNonBooleanConditionParser}s. The condition is lexed and
+ * parsed only once, when the handle is created; it is kept as a {@link CompactExpression}. Each flavor is translated
+ * when it is requested for the first time, and then memoized by this handle.
+ * <p>
+ * The result of a translation is the same as if the parser parsed the text of the condition (including syntax
+ * errors, which are handled according to the {@link InvalidConditionHandling} of each parser). Parsers with the same
+ * configuration share the memoized translation; sub-classes that do not support direct translation only share it with
+ * the same instance.
+ * <p>
+ * Handles are thread-safe.
+ *
+ * @author Adam
+ */
+public final class ParsedCondition {
+
+    private static final @NonNull CppParser PARSER = new CppParser();
+
+    private static final @NonNull Object @NonNull [] NO_TRANSLATIONS = new Object[0];
+
+    private final @Nullable CompactExpression expression;
+
+    private final @Nullable ExpressionFormatException syntaxError;
+
+    private volatile @Nullable CppExpression ast;
+
+    /**
+     * The memoized translations: the translation key of a parser (see
+     * {@link CppConditionParser#getTranslationKey()}), followed by its {@link ParseResult}. There are only a few
+     * flavors, so this is searched linearly. Guarded by <code>this</code>.
+     */
+    private @NonNull Object @NonNull [] translations;
+
+    /**
+     * Creates a handle.
+     *
+     * @param expression The parsed condition; <code>null</code> if the condition has a syntax error.
+     * @param syntaxError The syntax error; <code>null</code> if the condition was parsed successfully.
+     */
+    private ParsedCondition(@Nullable CompactExpression expression, @Nullable ExpressionFormatException syntaxError) {
+        this.expression = expression;
+        this.syntaxError = syntaxError;
+        this.translations = NO_TRANSLATIONS;
+    }
+
+    /**
+     * Parses the given condition. A syntax error does not lead to an exception here; it is thrown by (or handled by)
+     * the translations instead.
+     *
+     * @param condition The condition to parse.
+     *
+     * @return The handle for the parsed condition.
+     */
+    public static @NonNull ParsedCondition parse(@NonNull CharSequence condition) {
+        return parse(condition, 0, condition.length());
+    }
+
+    /**
+     * Parses the condition in the given range of a character sequence. See {@link #parse(CharSequence)}.
+     *
+     * @param condition The character sequence that contains the condition to parse.
+     * @param start The index of the first character of the condition.
+     * @param end The index after the last character of the condition.
+     *
+     * @return The handle for the parsed condition.
+     *
+     * @throws IndexOutOfBoundsException If the range is not within the given character sequence.
+     */
+    public static @NonNull ParsedCondition parse(@NonNull CharSequence condition, int start, int end) {
+        ParsedCondition result;
+        try {
+            result = new ParsedCondition(PARSER.parseCompact(condition, start, end), null);
+        } catch (ExpressionFormatException e) {
+            result = new ParsedCondition(null, e);
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the condition was parsed without syntax errors. The translations may still fail, e.g. because
+     * of unsupported operators.
+     *
+     * @return Whether the condition has valid syntax.
+     */
+    public boolean isSyntaxValid() {
+        return syntaxError == null;
+    }
+
+    /**
+     * Returns the parsed condition.
+     *
+     * @return The compact form of the parsed condition.
+     *
+     * @throws ExpressionFormatException If the condition has a syntax error.
+     */
+    public @NonNull CompactExpression getExpression() throws ExpressionFormatException {
+        CompactExpression expression = this.expression;
+        if (expression == null) {
+            throw notNull(syntaxError);
+        }
+        return expression;
+    }
+
+    /**
+     * Returns the AST of the parsed condition. The (frozen) AST is created when it is requested for the first time.
+     *
+     * @return The AST of the condition.
+     *
+     * @throws ExpressionFormatException If the condition has a syntax error.
+     */
+    public @NonNull CppExpression getAst() throws ExpressionFormatException {
+        CppExpression ast = this.ast;
+        if (ast == null) {
+            ast = getExpression().toAst();
+            this.ast = ast;
+        }
+        return ast;
+    }
+
+    /**
+     * Translates this condition with the given parser. The result is memoized, so each flavor is translated only
+     * once.
+     *
+     * @param parser The parser that defines the translation.
+     *
+     * @return The formula for this condition.
+     *
+     * @throws ExpressionFormatException If the condition can not be parsed into a formula and the parser is configured
+     *      with {@link InvalidConditionHandling#EXCEPTION}.
+     */
+    public @NonNull Formula translate(@NonNull CppConditionParser parser) throws ExpressionFormatException {
+        return CppConditionParser.getFormula(tryTranslate(parser));
+    }
+
+    /**
+     * Translates this condition with the given parser, without throwing an exception if the translation fails (see
+     * {@link CppConditionParser#tryParse(String)}). The result is memoized, so each flavor is translated only once.
+     *
+     * @param parser The parser that defines the translation.
+     *
+     * @return The result of translating this condition.
+     */
+    public @NonNull ParseResult tryTranslate(@NonNull CppConditionParser parser) {
+        Object key = parser.getTranslationKey();
+        ParseResult result = getTranslation(key);
+        if (result == null) {
+            // translated outside of the lock; if two threads translate the same flavor, the first result is kept
+            result = addTranslation(key, parser.translate(this));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of flavors that this condition was translated into so far.
+     *
+     * @return The number of memoized translations.
+     */
+    public synchronized int getTranslationCount() {
+        return translations.length / 2;
+    }
+
+    /**
+     * Returns the memoized translation for the given key.
+     *
+     * @param key The translation key of a parser.
+     *
+     * @return The memoized result; <code>null</code> if this condition was not translated with that key yet.
+     */
+    private synchronized @Nullable ParseResult getTranslation(@NonNull Object key) {
+        ParseResult result = null;
+        for (int i = 0; result == null && i < translations.length; i += 2) {
+            if (translations[i].equals(key)) {
+                result = (ParseResult) translations[i + 1];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Memoizes a translation, unless another thread memoized one for the same key in the meantime.
+     *
+     * @param key The translation key of a parser.
+     * @param translation The result of the translation.
+     *
+     * @return The memoized result for the key.
+     */
+    private synchronized @NonNull ParseResult addTranslation(@NonNull Object key, @NonNull ParseResult translation) {
+        ParseResult result = getTranslation(key);
+        if (result == null) {
+            Object[] newTranslations = Arrays.copyOf(translations, translations.length + 2);
+            newTranslations[translations.length] = key;
+            newTranslations[translations.length + 1] = translation;
+            translations = newTranslations;
+            result = translation;
+        }
+        return result;
+    }
+
+}
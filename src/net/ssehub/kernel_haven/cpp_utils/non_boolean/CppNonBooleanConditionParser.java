@@ -18,16 +18,10 @@ package net.ssehub.kernel_haven.cpp_utils.non_boolean;
 import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
 
 import net.ssehub.kernel_haven.cpp_utils.CppConditionParser;
+import net.ssehub.kernel_haven.cpp_utils.FormulaFactory;
 import net.ssehub.kernel_haven.cpp_utils.InvalidConditionHandling;
-import net.ssehub.kernel_haven.cpp_utils.parser.ast.CppExpression;
-import net.ssehub.kernel_haven.cpp_utils.parser.ast.FunctionCall;
-import net.ssehub.kernel_haven.cpp_utils.parser.ast.NumberLiteral;
-import net.ssehub.kernel_haven.cpp_utils.parser.ast.Operator;
-import net.ssehub.kernel_haven.cpp_utils.parser.ast.Variable;
-import net.ssehub.kernel_haven.util.logic.Conjunction;
-import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.cpp_utils.parser.CppOperator;
 import net.ssehub.kernel_haven.util.logic.Formula;
-import net.ssehub.kernel_haven.util.logic.Negation;
 import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
 import net.ssehub.kernel_haven.util.null_checks.Nullable;
@@ -43,33 +37,65 @@ import net.ssehub.kernel_haven.util.null_checks.Nullable;
 public class CppNonBooleanConditionParser extends CppConditionParser {
 
     /**
-     * Creates a new {@link CppNonBooleanConditionParser}.
+     * Creates a new {@link CppNonBooleanConditionParser} without a cache.
      * 
      * @param handleLinuxMacros Whether to handle preprocessor macros found in the Linux Kernel (i.e.
      *      IS_ENABLED, IS_BUILTIN, IS_MODULE).
      * @param invalidConditionHandling How to handle unparseable conditions.
      */
     public CppNonBooleanConditionParser(boolean handleLinuxMacros, InvalidConditionHandling invalidConditionHandling) {
+        this(handleLinuxMacros, invalidConditionHandling, 0);
+    }
+    
+    /**
+     * Creates a new {@link CppNonBooleanConditionParser}.
+     * 
+     * @param handleLinuxMacros Whether to handle preprocessor macros found in the Linux Kernel (i.e.
+     *      IS_ENABLED, IS_BUILTIN, IS_MODULE).
+     * @param invalidConditionHandling How to handle unparseable conditions.
+     * @param cacheSize The maximum number of parsed conditions to cache (see
+     *      {@link net.ssehub.kernel_haven.cpp_utils.CppParsingSettings#CONDITION_CACHE_SIZE}). 0 disables the cache.
+     */
+    public CppNonBooleanConditionParser(boolean handleLinuxMacros, InvalidConditionHandling invalidConditionHandling,
+            int cacheSize) {
+        this(handleLinuxMacros, invalidConditionHandling, cacheSize, FormulaFactory.DEFAULT);
+    }
+    
+    /**
+     * Creates a new {@link CppNonBooleanConditionParser}.
+     * 
+     * @param handleLinuxMacros Whether to handle preprocessor macros found in the Linux Kernel (i.e.
+     *      IS_ENABLED, IS_BUILTIN, IS_MODULE).
+     * @param invalidConditionHandling How to handle unparseable conditions.
+     * @param cacheSize The maximum number of parsed conditions to cache (see
+     *      {@link net.ssehub.kernel_haven.cpp_utils.CppParsingSettings#CONDITION_CACHE_SIZE}). 0 disables the cache.
+     * @param formulaFactory The factory that creates the resulting formulas (see {@link FormulaFactory#SHARED}).
+     */
+    public CppNonBooleanConditionParser(boolean handleLinuxMacros, InvalidConditionHandling invalidConditionHandling,
+            int cacheSize, @NonNull FormulaFactory formulaFactory) {
         // Fuzzy parsing is not required by this parser
-        super(handleLinuxMacros, false, invalidConditionHandling);
+        super(handleLinuxMacros, false, invalidConditionHandling, cacheSize, formulaFactory);
     }
     
+    @Override
+    protected boolean isDirectTranslationSupported() {
+        return getClass() == CppNonBooleanConditionParser.class;
+    }
     
     @Override
-    public @NonNull Formula visitOperator(@NonNull Operator operator) throws ExpressionFormatException {
+    protected @NonNull Formula translateOperator(@NonNull CppOperator operator, @NonNull Object leftSide,
+            @Nullable Object rightSide) throws ExpressionFormatException {
         Formula result;
         
-        switch (operator.getOperator()) {
+        switch (operator) {
         case BOOL_AND:
-            result = new Conjunction(operator.getLeftSide().accept(this),
-                notNull(operator.getRightSide()).accept(this));
+            result = getFormulaFactory().and(toFormula(leftSide), toFormula(notNull(rightSide)));
             break;
         case BOOL_OR:
-            result = new Disjunction(operator.getLeftSide().accept(this),
-                notNull(operator.getRightSide()).accept(this));
+            result = getFormulaFactory().or(toFormula(leftSide), toFormula(notNull(rightSide)));
             break;
         case BOOL_NOT:
-            result = new Negation(operator.getLeftSide().accept(this));
+            result = getFormulaFactory().not(toFormula(leftSide));
             break;
             
         case CMP_EQ: // falls through
@@ -78,25 +104,22 @@ public class CppNonBooleanConditionParser extends CppConditionParser {
         case CMP_LE: // falls through
         case CMP_GT: // falls through
         case CMP_GE:
-            result = new NonBooleanOperator(operator.getLeftSide().accept(this), operator.getOperator(),
-                notNull(operator.getRightSide()).accept(this));
+            result = getFormulaFactory().operator(toFormula(leftSide), operator, toFormula(notNull(rightSide)));
             break;
             
         case INT_SUB_UNARY:
-            if (operator.getLeftSide() instanceof NumberLiteral) {
-                result = new Literal("-" + ((NumberLiteral) operator.getLeftSide()).getValue().toString());
+            if (isLiteral(leftSide)) {
+                result = getFormulaFactory().negatedLiteral(getLiteralValue(leftSide));
             } else {
-                throw new ExpressionFormatException("Unsupported operator: " + operator.getOperator());
+                throw createException("Unsupported operator: " + operator);
             }
             break;
             
         default:
-            CppExpression rightSide = operator.getRightSide();
             if (null != rightSide) {
-                result = new NonBooleanOperator(operator.getLeftSide().accept(this), operator.getOperator(),
-                    rightSide.accept(this));
+                result = getFormulaFactory().operator(toFormula(leftSide), operator, toFormula(rightSide));
             } else {
-                throw new ExpressionFormatException("Unsupported operator: " + operator.getOperator());
+                throw createException("Unsupported operator: " + operator);
             }
             break;
         }
@@ -105,73 +128,71 @@ public class CppNonBooleanConditionParser extends CppConditionParser {
     }
     
     @Override
-    public @NonNull Formula visitVariable(@NonNull Variable variable) throws ExpressionFormatException {
-        return new net.ssehub.kernel_haven.util.logic.Variable(variable.getName());
+    protected @NonNull Formula translateVariable(@NonNull String name) throws ExpressionFormatException {
+        return createVariable(name);
     }
 
     @Override
-    public @NonNull Formula visitLiteral(@NonNull NumberLiteral literal) throws ExpressionFormatException {
-        return new Literal(notNull(literal.getValue().toString()));
+    protected @NonNull Formula translateLiteral(@NonNull Number value) throws ExpressionFormatException {
+        return getFormulaFactory().literal(value);
     }
     
     @Override
-    public @NonNull Formula visitFunctionCall(@NonNull FunctionCall call) throws ExpressionFormatException {
+    protected @NonNull Formula translateFunctionCall(@NonNull String function, @Nullable Object arg)
+            throws ExpressionFormatException {
         
-        String function = call.getFunctionName();
-        CppExpression arg = call.getArgument();
         @Nullable Formula argument = null;
         if (null != arg) {
-            argument = arg.accept(this);
+            argument = toFormula(arg);
         }
         
         
         Formula result;
         if (function.equals("defined")) {
             if (argument == null) {
-                throw new ExpressionFormatException("Can't handle defined()-function without argument");
+                throw createException("Can't handle defined()-function without argument");
             } else if (!(argument instanceof net.ssehub.kernel_haven.util.logic.Variable)) {
-                throw new ExpressionFormatException("Can't handle defined()-function one other elements than "
+                throw createException("Can't handle defined()-function one other elements than "
                     + "variables");
             }
             result = argument;
             
         } else if (getHandleLinuxMacros() && function.equals("IS_ENABLED")) {
             if (argument == null) {
-                throw new ExpressionFormatException("Can't handle IS_ENABLED()-function without argument");
+                throw createException("Can't handle IS_ENABLED()-function without argument");
             } else if (!(argument instanceof net.ssehub.kernel_haven.util.logic.Variable)) {
-                throw new ExpressionFormatException("Can't handle IS_ENABLED()-function one other elements than "
+                throw createException("Can't handle IS_ENABLED()-function one other elements than "
                     + "variables");
             }
             
             net.ssehub.kernel_haven.util.logic.Variable variable
                 = (net.ssehub.kernel_haven.util.logic.Variable) argument;
-            result = new Disjunction(variable,
-                    new net.ssehub.kernel_haven.util.logic.Variable(variable.getName() + "_MODULE"));
+            result = getFormulaFactory().or(variable, createModuleVariable(variable.getName()));
             
         } else if (getHandleLinuxMacros() && function.equals("IS_MODULE")) {
             if (argument == null) {
-                throw new ExpressionFormatException("Can't handle IS_MODULE()-function without argument");
+                throw createException("Can't handle IS_MODULE()-function without argument");
             } else if (!(argument instanceof net.ssehub.kernel_haven.util.logic.Variable)) {
-                throw new ExpressionFormatException("Can't handle IS_MODULE()-function one other elements than "
+                throw createException("Can't handle IS_MODULE()-function one other elements than "
                     + "variables");
             }
             
             net.ssehub.kernel_haven.util.logic.Variable variable
                 = (net.ssehub.kernel_haven.util.logic.Variable) argument;
-            result = new net.ssehub.kernel_haven.util.logic.Variable(variable.getName() + "_MODULE");
+            result = createModuleVariable(variable.getName());
             
         } else if (getHandleLinuxMacros() && function.equals("IS_BUILTIN")) {
             if (argument == null) {
-                throw new ExpressionFormatException("Can't handle IS_BUILTIN()-function without argument");
+                throw createException("Can't handle IS_BUILTIN()-function without argument");
             } else if (!(argument instanceof net.ssehub.kernel_haven.util.logic.Variable)) {
-                throw new ExpressionFormatException("Can't handle IS_BUILTIN()-function one other elements than "
+                throw createException("Can't handle IS_BUILTIN()-function one other elements than "
                     + "variables");
             }
             
             result = argument;
             
         } else {
-            result = new Macro(function, argument);
+            result = getFormulaFactory().macro(function, argument);
         }
         
         return result;
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.non_boolean;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.util.Arrays;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Walks over a {@link Formula}, which may contain the non-Boolean extensions of this package, with an explicit stack
+ * instead of recursing like an {@link INonBooleanFormulaVisitor}. Thus, the depth of the formula is not limited by the
+ * size of the thread stack.
+ * <p>
+ * Each formula is passed to {@link IListener#enter(Formula)} before its operands (pre-order) and to
+ * {@link IListener#leave(Formula)} after its operands (post-order). Operands are walked from left to right; a
+ * {@link Macro} without argument has no operands. Bottom-up computations can keep the results of the operands on
+ * their own stack in {@link IListener#leave(Formula)}: the results of the operands are the topmost elements, with
+ * the rightmost operand on top.
+ *
+ * @author Adam
+ */
+public final class FormulaWalker {
+    
+    /**
+     * The callbacks of a walk.
+     */
+    public interface IListener {
+        
+        /**
+         * Called for a formula before its operands are walked.
+         * 
+         * @param formula The formula.
+         * 
+         * @return Whether to walk the operands of the formula. If <code>false</code>, neither the operands are walked
+         *      nor {@link #leave(Formula)} is called for the formula.
+         */
+        public default boolean enter(@NonNull Formula formula) {
+            return true;
+        }
+        
+        /**
+         * Called for a formula after its operands were walked.
+         * 
+         * @param formula The formula.
+         */
+        public default void leave(@NonNull Formula formula) {
+        }
+        
+    }
+    
+    /**
+     * Don't allow any instances.
+     */
+    private FormulaWalker() {
+    }
+    
+    /**
+     * Walks over the given formula.
+     * 
+     * @param root The formula to walk over.
+     * @param listener The callbacks for the formulas.
+     */
+    public static void walk(@NonNull Formula root, @NonNull IListener listener) {
+        Formula[] formulas = new Formula[16];
+        // whether the formula at the same index was already entered, i.e. needs to be left when it is popped
+        boolean[] entered = new boolean[16];
+        int size = 0;
+        
+        formulas[size++] = root;
+        while (size > 0) {
+            size--;
+            Formula formula = notNull(formulas[size]);
+            formulas[size] = null;
+            
+            if (entered[size]) {
+                listener.leave(formula);
+                
+            } else if (listener.enter(formula)) {
+                // at most two operands are pushed
+                if (size + 3 > formulas.length) {
+                    formulas = Arrays.copyOf(formulas, formulas.length * 2);
+                    entered = Arrays.copyOf(entered, formulas.length);
+                }
+                
+                formulas[size] = formula;
+                entered[size++] = true;
+                
+                // the right operand is pushed first, so that the left operand is on top
+                Formula left = null;
+                Formula right = null;
+                if (formula instanceof Conjunction) {
+                    left = ((Conjunction) formula).getLeft();
+                    right = ((Conjunction) formula).getRight();
+                } else if (formula instanceof Disjunction) {
+                    left = ((Disjunction) formula).getLeft();
+                    right = ((Disjunction) formula).getRight();
+                } else if (formula instanceof NonBooleanOperator) {
+                    left = ((NonBooleanOperator) formula).getLeft();
+                    right = ((NonBooleanOperator) formula).getRight();
+                } else if (formula instanceof Negation) {
+                    left = ((Negation) formula).getFormula();
+                } else if (formula instanceof Macro) {
+                    left = ((Macro) formula).getArgument();
+                }
+                
+                if (right != null) {
+                    formulas[size] = right;
+                    entered[size++] = false;
+                }
+                if (left != null) {
+                    formulas[size] = left;
+                    entered[size++] = false;
+                }
+            }
+        }
+    }
+    
+}
@@ -15,6 +15,8 @@
  */
 package net.ssehub.kernel_haven.cpp_utils.non_boolean;
 
+import java.util.Objects;
+
 import net.ssehub.kernel_haven.util.logic.Formula;
 import net.ssehub.kernel_haven.util.logic.IFormulaVisitor;
 import net.ssehub.kernel_haven.util.logic.IVoidFormulaVisitor;
@@ -32,8 +34,14 @@ import net.ssehub.kernel_haven.util.null_checks.Nullable;
 public class Macro extends Formula {
 
     private static final long serialVersionUID = 449836254832473290L;
-    private @NonNull String function;
-    private @Nullable Formula argument;
+    private final @NonNull String function;
+    private final @Nullable Formula argument;
+    
+    /**
+     * The cached hash code; 0 if it was not computed yet. Transient, so that the serialized form does not change; it
+     * is computed again after deserialization.
+     */
+    private transient int hash;
     
     /**
      * Creates a non-Boolean {@link Macro}.
@@ -83,22 +91,24 @@ public class Macro extends Formula {
 
     @Override
     public boolean equals(@Nullable Object obj) {
-        boolean equal = false;
-        if (obj instanceof Macro) {
-            equal = ((Macro) obj).function.equals(function);
-            if (equal && null != argument) {
-                equal = argument.equals(((Macro) obj).argument);
-            } else {
-                equal = ((Macro) obj).argument == null;
-            }
-        } 
+        boolean equal = this == obj;
+        if (!equal && obj instanceof Macro) {
+            Macro other = (Macro) obj;
+            equal = hashCode() == other.hashCode() && function.equals(other.function)
+                    && Objects.equals(argument, other.argument);
+        }
         
         return equal;
     }
 
     @Override
     public int hashCode() {
-        return function.hashCode() + (argument != null ? argument.hashCode() : 27);
+        int result = hash;
+        if (result == 0) {
+            result = function.hashCode() + (argument != null ? argument.hashCode() : 27);
+            hash = result;
+        }
+        return result;
     }
 
     @Override
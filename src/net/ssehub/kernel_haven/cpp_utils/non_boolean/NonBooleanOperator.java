@@ -32,9 +32,15 @@ import net.ssehub.kernel_haven.util.null_checks.Nullable;
 public class NonBooleanOperator extends Formula {
     
     private static final long serialVersionUID = -3318742597724247806L;
-    private @NonNull Formula left;    
-    private @NonNull CppOperator operation;
-    private @NonNull Formula right;
+    private final @NonNull Formula left;    
+    private final @NonNull CppOperator operation;
+    private final @NonNull Formula right;
+    
+    /**
+     * The cached hash code; 0 if it was not computed yet. Transient, so that the serialized form does not change; it
+     * is computed again after deserialization.
+     */
+    private transient int hash;
     
     /**
      * Creates a {@link NonBooleanOperator}.
@@ -92,16 +98,24 @@ public class NonBooleanOperator extends Formula {
     
     @Override
     public boolean equals(@Nullable Object obj) {
-        if (obj instanceof NonBooleanOperator) {
+        boolean equal = this == obj;
+        if (!equal && obj instanceof NonBooleanOperator) {
             NonBooleanOperator other = (NonBooleanOperator) obj;
-            return left.equals(other.getLeft()) && right.equals(other.getRight());
+            equal = hashCode() == other.hashCode() && operation == other.operation && left.equals(other.left)
+                    && right.equals(other.right);
         }
-        return false;
+        return equal;
     }
     
     @Override
     public int hashCode() {
-        return (left.hashCode() + right.hashCode()) * operation.hashCode() * 5591;
+        int result = hash;
+        if (result == 0) {
+            // the name of the operator has a stable hash code, in contrast to the enum constant itself
+            result = (left.hashCode() * 31 + operation.name().hashCode()) * 31 + right.hashCode();
+            hash = result;
+        }
+        return result;
     }
     
     /**
@@ -113,6 +127,15 @@ public class NonBooleanOperator extends Formula {
         return left;
     }
     
+    /**
+     * Returns the operator of this operation.
+     * 
+     * @return The operator.
+     */
+    public @NonNull CppOperator getOperator() {
+        return operation;
+    }
+    
     /**
      * Returns the formula that is nested on the right side of this operation.
      * 
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.non_boolean;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * A non-Boolean {@link Literal} for a number constant. In addition to the text of the literal, this stores its value
+ * as a primitive <code>long</code> or <code>double</code>, so that consumers do not need to parse the text again.
+ * <p>
+ * The text (i.e. {@link #toString()}) is the same as the one of the plain {@link Literal}s that were created for
+ * numbers before, e.g. <code>-0</code> for a negated zero; thus, a {@link NumericLiteral} is equal to a
+ * {@link Literal} with the same text.
+ *
+ * @author Adam
+ */
+public class NumericLiteral extends Literal {
+
+    private static final long serialVersionUID = -2296532740045637713L;
+
+    private final boolean integer;
+
+    /**
+     * The value; for floating point literals, the raw bits of the <code>double</code> value.
+     */
+    private final long value;
+
+    /**
+     * Creates an integer literal.
+     *
+     * @param value The value of the literal.
+     */
+    public NumericLiteral(long value) {
+        this(notNull(Long.toString(value)), true, value);
+    }
+
+    /**
+     * Creates a floating point literal.
+     *
+     * @param value The value of the literal.
+     */
+    public NumericLiteral(double value) {
+        this(notNull(Double.toString(value)), false, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Creates a literal.
+     *
+     * @param text The text of the literal.
+     * @param integer Whether this is an integer literal.
+     * @param value The value; for floating point literals, the raw bits of the <code>double</code> value.
+     */
+    private NumericLiteral(@NonNull String text, boolean integer, long value) {
+        super(text);
+        this.integer = integer;
+        this.value = value;
+    }
+
+    /**
+     * Creates a literal for the given number.
+     *
+     * @param value The number. {@link Double}s and {@link Float}s create a floating point literal, everything else an
+     *      integer literal.
+     *
+     * @return The literal for the number.
+     */
+    public static @NonNull NumericLiteral valueOf(@NonNull Number value) {
+        NumericLiteral result;
+        if (value instanceof Double || value instanceof Float) {
+            result = new NumericLiteral(value.doubleValue());
+        } else {
+            result = new NumericLiteral(value.longValue());
+        }
+        return result;
+    }
+
+    /**
+     * Creates the negation of this literal (unary minus). The text of the result is this text with a leading
+     * <code>-</code>.
+     *
+     * @return The negated literal.
+     */
+    public @NonNull NumericLiteral negate() {
+        long negated = integer ? -value : Double.doubleToRawLongBits(-getDoubleValue());
+        return new NumericLiteral("-" + toString(), integer, negated);
+    }
+
+    /**
+     * Returns whether this is an integer literal. If not, it is a floating point literal.
+     *
+     * @return Whether this is an integer literal.
+     */
+    public boolean isInteger() {
+        return integer;
+    }
+
+    /**
+     * Returns the value of this literal as a <code>long</code>. Floating point values are truncated.
+     *
+     * @return The value.
+     */
+    public long getLongValue() {
+        return integer ? value : (long) Double.longBitsToDouble(value);
+    }
+
+    /**
+     * Returns the value of this literal as a <code>double</code>.
+     *
+     * @return The value.
+     */
+    public double getDoubleValue() {
+        return integer ? value : Double.longBitsToDouble(value);
+    }
+
+    /**
+     * Returns the value of this literal as a boxed number.
+     *
+     * @return The value; a {@link Long} for integer literals, a {@link Double} for floating point literals.
+     */
+    public @NonNull Number getValue() {
+        Number result;
+        if (integer) {
+            result = value;
+        } else {
+            result = Double.longBitsToDouble(value);
+        }
+        return result;
+    }
+
+}
@@ -17,22 +17,53 @@ package net.ssehub.kernel_haven.cpp_utils.non_boolean;
 
 import java.util.Set;
 
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
 import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
 import net.ssehub.kernel_haven.util.logic.Variable;
 
 /**
  * Collects all used variables from a formula, which may contain non-Boolean extensions of the default Formula model.
+ * <p>
+ * Nested formulas are walked with the {@link FormulaWalker} instead of recursively, so deeply nested formulas do not
+ * cause a {@link StackOverflowError}.
  * @author El-Sharkawy
  *
  */
 public class VariableFinder extends net.ssehub.kernel_haven.util.logic.VariableFinder
     implements INonBooleanFormulaVisitor<Set<Variable>> {
 
+    private final FormulaWalker.IListener collector = new FormulaWalker.IListener() {
+
+        @Override
+        public boolean enter(Formula formula) {
+            if (formula instanceof Variable) {
+                visitVariable((Variable) formula);
+            }
+            return true;
+        }
+
+    };
+
+    @Override
+    public Set<Variable> visitNegation(Negation formula) {
+        return collect(formula);
+    }
+
+    @Override
+    public Set<Variable> visitDisjunction(Disjunction formula) {
+        return collect(formula);
+    }
+
+    @Override
+    public Set<Variable> visitConjunction(Conjunction formula) {
+        return collect(formula);
+    }
+
     @Override
     public Set<Variable> visitNonBooleanOperator(NonBooleanOperator operator) {
-        operator.getLeft().accept(this);
-        operator.getRight().accept(this);
-        return getVariables();
+        return collect(operator);
     }
 
     @Override
@@ -43,10 +74,18 @@ public class VariableFinder extends net.ssehub.kernel_haven.util.logic.VariableF
 
     @Override
     public Set<Variable> visitMacro(Macro macro) {
-        Formula argument = macro.getArgument();
-        if (null != argument) {
-            argument.accept(this); 
-        }
+        return collect(macro);
+    }
+
+    /**
+     * Collects the variables of the given formula and all formulas nested in it.
+     * 
+     * @param formula The formula to collect the variables from.
+     * 
+     * @return The variables found so far.
+     */
+    private Set<Variable> collect(Formula formula) {
+        FormulaWalker.walk(formula, collector);
         return getVariables();
     }
 
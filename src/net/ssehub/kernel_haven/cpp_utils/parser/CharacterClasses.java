@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Classifies the characters of CPP expressions for the lexer of the {@link CppParser}. Instead of classifying one
+ * character per call, the lexer asks for the end of a complete run of identifier or whitespace characters; each run
+ * is found in a single tight loop over a lookup table.
+ * <p>
+ * For expressions that are parsed from an ASCII {@link ByteBuffer}, runs are scanned eight bytes at a time: each
+ * word is read as a <code>long</code> (see {@link ByteBuffer#getLong(int)}) and all of its bytes are classified at
+ * once with SIMD-within-a-register arithmetic. The result has the highest bit of each byte set if that byte ends the
+ * run; the number of leading or trailing zeros (depending on the byte order of the buffer) is the position of the
+ * first such byte.
+ *
+ * @author Adam
+ */
+final class CharacterClasses {
+    
+    /**
+     * Character class for characters that are not valid on their own (or that are only valid as part of an operator).
+     */
+    private static final byte OTHER = 0;
+    
+    /**
+     * Character class for characters that may appear in identifiers and literals.
+     */
+    private static final byte IDENTIFIER = 1;
+    
+    /**
+     * Character class for whitespace characters.
+     */
+    private static final byte WHITESPACE = 2;
+    
+    /**
+     * The character classes of all ASCII characters, indexed by the character.
+     */
+    private static final byte @NonNull [] CLASSES = new byte[128];
+    
+    /**
+     * A word with the value 1 in each byte.
+     */
+    private static final long ONES = 0x0101010101010101L;
+    
+    /**
+     * A word with the highest bit set in each byte.
+     */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    
+    /**
+     * A word with all bits but the highest set in each byte.
+     */
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    
+    static {
+        for (char c = 0; c < CLASSES.length; c++) {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '.') {
+                CLASSES[c] = IDENTIFIER;
+            } else if (Character.isWhitespace(c)) {
+                CLASSES[c] = WHITESPACE;
+            } else {
+                CLASSES[c] = OTHER;
+            }
+        }
+    }
+    
+    /**
+     * Don't allow any instances.
+     */
+    private CharacterClasses() {
+    }
+    
+    /**
+     * Finds the end of the run of identifier characters that starts at the given position.
+     * 
+     * @param chars The characters to scan.
+     * @param start The position to start at.
+     * @param end The index after the last character that may be scanned.
+     * 
+     * @return The index of the first character at or after <code>start</code> that is not an identifier character;
+     *      <code>end</code> if all characters are identifier characters. Equal to <code>start</code> if the character
+     *      at <code>start</code> is not an identifier character.
+     */
+    static int identifierEnd(char @NonNull [] chars, int start, int end) {
+        byte[] classes = CLASSES;
+        int pos = start;
+        while (pos < end) {
+            char c = chars[pos];
+            if (c >= classes.length || classes[c] != IDENTIFIER) {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+    
+    /**
+     * Finds the end of the run of whitespace characters that starts at the given position.
+     * 
+     * @param chars The characters to scan.
+     * @param start The position to start at.
+     * @param end The index after the last character that may be scanned.
+     * 
+     * @return The index of the first character at or after <code>start</code> that is not a whitespace character;
+     *      <code>end</code> if all characters are whitespace.
+     */
+    static int whitespaceEnd(char @NonNull [] chars, int start, int end) {
+        byte[] classes = CLASSES;
+        int pos = start;
+        while (pos < end) {
+            char c = chars[pos];
+            if (c < classes.length ? classes[c] != WHITESPACE : !Character.isWhitespace(c)) {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+        
+    /**
+     * Finds the end of the run of identifier characters that starts at the given position of an ASCII byte buffer.
+     * Bytes that are not ASCII are not identifier characters.
+     * 
+     * @param bytes The bytes to scan. The position of the buffer is not modified.
+     * @param start The absolute index to start at.
+     * @param end The absolute index after the last byte that may be scanned.
+     * 
+     * @return The index of the first byte at or after <code>start</code> that is not an identifier character;
+     *      <code>end</code> if all bytes are identifier characters. Equal to <code>start</code> if the byte at
+     *      <code>start</code> is not an identifier character.
+     */
+    static int identifierEnd(@NonNull ByteBuffer bytes, int start, int end) {
+        boolean bigEndian = bytes.order() == ByteOrder.BIG_ENDIAN;
+        int pos = start;
+        int wordEnd = end - Long.BYTES;
+        boolean found = false;
+        while (!found && pos <= wordEnd) {
+            long word = bytes.getLong(pos);
+            long ascii = word & LOW_BITS;
+            long identifier = inRange(ascii | (0x20 * ONES), 'a', 'z') | inRange(ascii, '0', '9')
+                    | inRange(ascii, '_', '_') | inRange(ascii, '.', '.');
+            // non-ASCII bytes end the run, too
+            long stop = (~identifier | word) & HIGH_BITS;
+            if (stop == 0) {
+                pos += Long.BYTES;
+            } else {
+                pos += firstByte(stop, bigEndian);
+                found = true;
+            }
+        }
+        
+        if (!found) {
+            byte[] classes = CLASSES;
+            while (pos < end) {
+                byte c = bytes.get(pos);
+                if (c < 0 || classes[c] != IDENTIFIER) {
+                    break;
+                }
+                pos++;
+            }
+        }
+        return pos;
+    }
+    
+    /**
+     * Finds the end of the run of whitespace characters that starts at the given position of an ASCII byte buffer.
+     * Bytes that are not ASCII are not whitespace.
+     * 
+     * @param bytes The bytes to scan. The position of the buffer is not modified.
+     * @param start The absolute index to start at.
+     * @param end The absolute index after the last byte that may be scanned.
+     * 
+     * @return The index of the first byte at or after <code>start</code> that is not a whitespace character;
+     *      <code>end</code> if all bytes are whitespace.
+     */
+    static int whitespaceEnd(@NonNull ByteBuffer bytes, int start, int end) {
+        boolean bigEndian = bytes.order() == ByteOrder.BIG_ENDIAN;
+        int pos = start;
+        int wordEnd = end - Long.BYTES;
+        boolean found = false;
+        while (!found && pos <= wordEnd) {
+            long word = bytes.getLong(pos);
+            long ascii = word & LOW_BITS;
+            // the ASCII characters for which Character.isWhitespace() is true: \t, \n, \u000B, \f, \r, \u001C to
+            // \u001F and the space
+            long whitespace = inRange(ascii, '\t', '\r') | inRange(ascii, '\u001C', ' ');
+            long stop = (~whitespace | word) & HIGH_BITS;
+            if (stop == 0) {
+                pos += Long.BYTES;
+            } else {
+                pos += firstByte(stop, bigEndian);
+                found = true;
+            }
+        }
+        
+        if (!found) {
+            byte[] classes = CLASSES;
+            while (pos < end) {
+                byte c = bytes.get(pos);
+                if (c < 0 || classes[c] != WHITESPACE) {
+                    break;
+                }
+                pos++;
+            }
+        }
+        return pos;
+    }
+    
+    /**
+     * Checks all bytes of a word at once whether they are in the given range. No byte of the word may have its highest
+     * bit set, so that the additions never carry into the next byte.
+     * 
+     * @param word The bytes to check; each byte must be at most <code>0x7F</code>.
+     * @param low The lowest byte value in the range.
+     * @param high The highest byte value in the range; at least <code>low</code> and at most <code>0x7F</code>.
+     * 
+     * @return A word with the highest bit of each byte set if that byte is in the range; all other bits are
+     *      undefined.
+     */
+    private static long inRange(long word, int low, int high) {
+        // byte + 0x80 - low has its highest bit set iff byte >= low; byte + 0x7F - high has it set iff byte > high
+        return (word + (0x80 - low) * ONES) & ~(word + (0x7F - high) * ONES);
+    }
+    
+    /**
+     * Returns the offset of the first byte in memory order that has its highest bit set.
+     * 
+     * @param stop A word where only the highest bits of the bytes may be set; not 0.
+     * @param bigEndian Whether the word was read in big endian byte order.
+     * 
+     * @return The offset of the first byte with its highest bit set (0 to 7).
+     */
+    private static int firstByte(long stop, boolean bigEndian) {
+        int bits = bigEndian ? Long.numberOfLeadingZeros(stop) : Long.numberOfTrailingZeros(stop);
+        return bits >>> 3;
+    }
+    
+}
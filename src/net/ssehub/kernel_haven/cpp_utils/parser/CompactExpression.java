@@ -0,0 +1,531 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.parser;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.util.Arrays;
+
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.CppExpression;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.CppExpressionWalker;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.FunctionCall;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.NumberLiteral;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.Operator;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.Variable;
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A compact, immutable representation of a parsed CPP expression. Instead of one {@link CppExpression} object per
+ * node, the nodes are stored as a postfix program in a single <code>int</code> array: each node is one
+ * <code>int</code> that contains the kind of the node and its payload (the {@link SymbolTable#GLOBAL} ID of a name,
+ * the ordinal of an operator or a small literal value). Values that do not fit into the payload (large or floating
+ * point literals) are stored in a separate <code>long</code> array. Thus, a node takes 4 bytes instead of the 16 to
+ * 24 bytes of an AST node (plus the boxed value of a literal).
+ * <p>
+ * Compact expressions are created by {@link CppParser#parseCompact(CharSequence, int, int)} or from an AST with
+ * {@link #fromAst(CppExpression)}. The nodes can be read by their index in postfix order (operands before their
+ * operator, e.g. <code>A B &amp;&amp;</code>), similar to a cursor, or passed to an {@link ICppExpressionBuilder}
+ * with {@link #accept(ICppExpressionBuilder)}; the latter also converts the expression back into an AST
+ * ({@link #toAst()}).
+ * <p>
+ * Names are stored as IDs of the {@link SymbolTable#GLOBAL} table, so a compact expression can not be read anymore
+ * after that table was cleared (see {@link SymbolTable#clear()}).
+ *
+ * @author Adam
+ */
+public final class CompactExpression {
+
+    /**
+     * Node kind of a variable. Its name is returned by {@link #getName(int)}.
+     */
+    public static final int VARIABLE = 0;
+
+    /**
+     * Node kind of a number literal. Its value is returned by {@link #getValue(int)}.
+     */
+    public static final int LITERAL = 1;
+
+    /**
+     * Node kind of a function call. Its name is returned by {@link #getName(int)}. If {@link #hasArgument(int)}, its
+     * argument is the node (with its operands) directly before it.
+     */
+    public static final int FUNCTION_CALL = 2;
+
+    /**
+     * Node kind of a unary operator. Its operand is the node (with its operands) directly before it.
+     */
+    public static final int UNARY_OPERATOR = 3;
+
+    /**
+     * Node kind of a binary operator. Its right operand is the node (with its operands) directly before it, the left
+     * operand is in front of that.
+     */
+    public static final int BINARY_OPERATOR = 4;
+
+    /*
+     * Encoding of a node: bits 0-2 are the opcode, bit 3 is the INDIRECT flag, bits 4-31 are the (unsigned) payload.
+     * If the INDIRECT flag is set, the payload is an index into the constants array, which holds the actual payload.
+     */
+
+    private static final int OP_VARIABLE = 0;
+
+    private static final int OP_LITERAL_LONG = 1;
+
+    private static final int OP_LITERAL_DOUBLE = 2;
+
+    private static final int OP_FUNCTION_CALL = 3;
+
+    private static final int OP_FUNCTION_CALL_NO_ARGUMENT = 4;
+
+    private static final int OP_UNARY_OPERATOR = 5;
+
+    private static final int OP_BINARY_OPERATOR = 6;
+
+    private static final int OPCODE_MASK = 0x7;
+
+    private static final int INDIRECT = 0x8;
+
+    private static final int PAYLOAD_SHIFT = 4;
+
+    private static final int MAX_PAYLOAD = (1 << (32 - PAYLOAD_SHIFT)) - 1;
+
+    /**
+     * The public node kinds, indexed by opcode.
+     */
+    private static final int @NonNull [] KINDS = {
+        VARIABLE, LITERAL, LITERAL, FUNCTION_CALL, FUNCTION_CALL, UNARY_OPERATOR, BINARY_OPERATOR
+    };
+
+    private static final long @NonNull [] NO_CONSTANTS = new long[0];
+
+    private static final @NonNull CppOperator @NonNull [] OPERATORS = CppOperator.values();
+
+    /**
+     * Encodes the elements that a {@link CppParser} passes to it. The elements themselves are only markers, since
+     * the parser passes them in postfix order.
+     */
+    static final class Encoder implements ICppExpressionBuilder<@NonNull Object> {
+
+        private int @NonNull [] program;
+
+        private int size;
+
+        private long @NonNull [] constants;
+
+        private int constantCount;
+
+        private final int generation;
+
+        /**
+         * Creates an empty encoder.
+         */
+        Encoder() {
+            this.program = new int[16];
+            this.constants = NO_CONSTANTS;
+            this.generation = SymbolTable.GLOBAL.getGeneration();
+        }
+
+        @Override
+        public @NonNull Object variable(@NonNull String name) {
+            add(OP_VARIABLE, SymbolTable.GLOBAL.getId(name));
+            return this;
+        }
+
+        @Override
+        public @NonNull Object literal(@NonNull Number value) {
+            if (value instanceof Double || value instanceof Float) {
+                addIndirect(OP_LITERAL_DOUBLE, Double.doubleToRawLongBits(value.doubleValue()));
+            } else {
+                add(OP_LITERAL_LONG, value.longValue());
+            }
+            return this;
+        }
+
+        @Override
+        public @NonNull Object functionCall(@NonNull String name, @Nullable Object argument) {
+            add(argument != null ? OP_FUNCTION_CALL : OP_FUNCTION_CALL_NO_ARGUMENT, SymbolTable.GLOBAL.getId(name));
+            return this;
+        }
+
+        @Override
+        public @NonNull Object unaryOperator(@NonNull CppOperator operator, @NonNull Object operand) {
+            add(OP_UNARY_OPERATOR, operator.ordinal());
+            return this;
+        }
+
+        @Override
+        public @NonNull Object binaryOperator(@NonNull CppOperator operator, @NonNull Object leftSide,
+                @NonNull Object rightSide) {
+            add(OP_BINARY_OPERATOR, operator.ordinal());
+            return this;
+        }
+
+        /**
+         * Adds a node. The payload is stored in the constants if it does not fit into the node.
+         *
+         * @param opcode The opcode of the node.
+         * @param payload The payload of the node.
+         */
+        private void add(int opcode, long payload) {
+            if (payload >= 0 && payload <= MAX_PAYLOAD) {
+                addNode(opcode | ((int) payload << PAYLOAD_SHIFT));
+            } else {
+                addIndirect(opcode, payload);
+            }
+        }
+
+        /**
+         * Adds a node with its payload stored in the constants.
+         *
+         * @param opcode The opcode of the node.
+         * @param payload The payload of the node.
+         */
+        private void addIndirect(int opcode, long payload) {
+            if (constantCount == constants.length) {
+                constants = notNull(Arrays.copyOf(constants, Math.max(4, constantCount * 2)));
+            }
+            constants[constantCount] = payload;
+            addNode(opcode | INDIRECT | (constantCount << PAYLOAD_SHIFT));
+            constantCount++;
+        }
+
+        /**
+         * Adds an encoded node to the program.
+         *
+         * @param node The encoded node.
+         */
+        private void addNode(int node) {
+            if (size == program.length) {
+                program = notNull(Arrays.copyOf(program, size * 2));
+            }
+            program[size++] = node;
+        }
+
+        /**
+         * Creates the compact expression from the nodes that were added.
+         *
+         * @return The compact expression.
+         */
+        @NonNull CompactExpression build() {
+            long[] constants = constantCount == 0 ? NO_CONSTANTS : Arrays.copyOf(this.constants, constantCount);
+            return new CompactExpression(notNull(Arrays.copyOf(program, size)), notNull(constants), generation);
+        }
+
+    }
+
+    private final int @NonNull [] program;
+
+    private final long @NonNull [] constants;
+
+    /**
+     * The {@link SymbolTable#getGeneration()} of the symbol IDs in {@link #program}.
+     */
+    private final int generation;
+
+    /**
+     * Creates a compact expression.
+     *
+     * @param program The encoded nodes, in postfix order.
+     * @param constants The payloads that do not fit into the nodes.
+     * @param generation The generation of the symbol IDs in the program.
+     */
+    private CompactExpression(int @NonNull [] program, long @NonNull [] constants, int generation) {
+        this.program = program;
+        this.constants = constants;
+        this.generation = generation;
+    }
+
+    /**
+     * Converts the given AST into a compact expression. The AST is traversed iteratively (with a
+     * {@link CppExpressionWalker}), so deeply nested expressions do not cause a {@link StackOverflowError}.
+     *
+     * @param expression The root of the AST.
+     *
+     * @return The compact expression.
+     *
+     * @throws IllegalArgumentException If the AST contains nodes that can not be encoded (i.e.
+     *      {@link net.ssehub.kernel_haven.cpp_utils.parser.ast.ExpressionList}s).
+     */
+    public static @NonNull CompactExpression fromAst(@NonNull CppExpression expression) {
+        Encoder encoder = new Encoder();
+        try {
+            // post-order is the order of the program
+            CppExpressionWalker.walk(expression, new CppExpressionWalker.IListener() {
+
+                @Override
+                public void leave(@NonNull CppExpression node) {
+                    if (node instanceof Variable) {
+                        encoder.variable(((Variable) node).getName());
+                    } else if (node instanceof NumberLiteral) {
+                        encoder.literal(((NumberLiteral) node).getValue());
+                    } else if (node instanceof FunctionCall) {
+                        FunctionCall call = (FunctionCall) node;
+                        encoder.functionCall(call.getFunctionName(), call.getArgument());
+                    } else if (node instanceof Operator) {
+                        Operator operator = (Operator) node;
+                        if (operator.getRightSide() != null) {
+                            encoder.binaryOperator(operator.getOperator(), encoder, encoder);
+                        } else {
+                            encoder.unaryOperator(operator.getOperator(), encoder);
+                        }
+                    } else {
+                        throw new IllegalArgumentException("Can't encode " + node.getClass().getSimpleName());
+                    }
+                }
+
+            });
+        } catch (ExpressionFormatException e) {
+            // the listener does not throw any
+            throw new AssertionError(e);
+        }
+        return encoder.build();
+    }
+
+    /**
+     * Converts this expression into an AST.
+     *
+     * @return The root of the AST.
+     */
+    public @NonNull CppExpression toAst() {
+        try {
+            return accept(CppParser.AST_BUILDER);
+        } catch (ExpressionFormatException e) {
+            // the AST builder accepts everything
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Passes the nodes of this expression to the given builder, in the same order as the {@link CppParser} would
+     * when parsing the expression. The nodes are processed iteratively with an operand stack.
+     *
+     * @param <T> The type of elements that the builder creates.
+     *
+     * @param builder The builder that creates the result.
+     *
+     * @return The element that the builder created for the complete expression.
+     *
+     * @throws ExpressionFormatException If the builder does not accept an element.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T accept(@NonNull ICppExpressionBuilder<T> builder) throws ExpressionFormatException {
+        Object[] stack = new Object[Math.min(program.length, 16)];
+        int stackSize = 0;
+
+        for (int i = 0; i < program.length; i++) {
+            Object result;
+            switch (program[i] & OPCODE_MASK) {
+            case OP_VARIABLE:
+                result = builder.variable(getName(i));
+                break;
+
+            case OP_LITERAL_LONG:
+            case OP_LITERAL_DOUBLE:
+                result = builder.literal(getValue(i));
+                break;
+
+            case OP_FUNCTION_CALL:
+                result = builder.functionCall(getName(i), (T) stack[--stackSize]);
+                break;
+
+            case OP_FUNCTION_CALL_NO_ARGUMENT:
+                result = builder.functionCall(getName(i), null);
+                break;
+
+            case OP_UNARY_OPERATOR:
+                result = builder.unaryOperator(getOperator(i), (T) stack[--stackSize]);
+                break;
+
+            default:
+                T rightSide = (T) stack[--stackSize];
+                result = builder.binaryOperator(getOperator(i), (T) stack[--stackSize], rightSide);
+                break;
+            }
+
+            if (stackSize == stack.length) {
+                stack = Arrays.copyOf(stack, stackSize * 2);
+            }
+            stack[stackSize++] = result;
+        }
+
+        return (T) stack[0];
+    }
+
+    /**
+     * Returns the number of nodes in this expression.
+     *
+     * @return The number of nodes.
+     */
+    public int size() {
+        return program.length;
+    }
+
+    /**
+     * Returns the kind of the given node.
+     *
+     * @param index The index of the node, in postfix order.
+     *
+     * @return The kind of the node; one of {@link #VARIABLE}, {@link #LITERAL}, {@link #FUNCTION_CALL},
+     *      {@link #UNARY_OPERATOR} and {@link #BINARY_OPERATOR}.
+     */
+    public int getKind(int index) {
+        return KINDS[program[index] & OPCODE_MASK];
+    }
+
+    /**
+     * Returns the {@link SymbolTable#GLOBAL} ID of the name of the given {@link #VARIABLE} or {@link #FUNCTION_CALL}
+     * node.
+     *
+     * @param index The index of the node.
+     *
+     * @return The symbol ID of the name.
+     *
+     * @throws IllegalStateException If the {@link SymbolTable#GLOBAL} table was cleared since this expression was
+     *      created, i.e. the ID is outdated.
+     */
+    public int getSymbol(int index) throws IllegalStateException {
+        if (generation != SymbolTable.GLOBAL.getGeneration()) {
+            throw new IllegalStateException("The symbol table was cleared after this expression was created");
+        }
+        return (int) getPayload(index);
+    }
+
+    /**
+     * Returns the name of the given {@link #VARIABLE} or {@link #FUNCTION_CALL} node.
+     *
+     * @param index The index of the node.
+     *
+     * @return The name.
+     *
+     * @throws IllegalStateException If the {@link SymbolTable#GLOBAL} table was cleared since this expression was
+     *      created.
+     */
+    public @NonNull String getName(int index) throws IllegalStateException {
+        return SymbolTable.GLOBAL.getName(getSymbol(index));
+    }
+
+    /**
+     * Returns whether the given {@link #FUNCTION_CALL} node has an argument.
+     *
+     * @param index The index of the node.
+     *
+     * @return Whether the function is called with an argument.
+     */
+    public boolean hasArgument(int index) {
+        return (program[index] & OPCODE_MASK) == OP_FUNCTION_CALL;
+    }
+
+    /**
+     * Returns the operator of the given {@link #UNARY_OPERATOR} or {@link #BINARY_OPERATOR} node.
+     *
+     * @param index The index of the node.
+     *
+     * @return The operator.
+     */
+    public @NonNull CppOperator getOperator(int index) {
+        return notNull(OPERATORS[(int) getPayload(index)]);
+    }
+
+    /**
+     * Returns whether the given {@link #LITERAL} node is an integer literal. If not, it is a floating point literal.
+     *
+     * @param index The index of the node.
+     *
+     * @return Whether the literal is an integer.
+     */
+    public boolean isIntegerLiteral(int index) {
+        return (program[index] & OPCODE_MASK) == OP_LITERAL_LONG;
+    }
+
+    /**
+     * Returns the value of the given integer {@link #LITERAL} node, without boxing.
+     *
+     * @param index The index of the node.
+     *
+     * @return The value of the literal; floating point values are truncated.
+     */
+    public long getLongValue(int index) {
+        return isIntegerLiteral(index) ? getPayload(index) : (long) Double.longBitsToDouble(getPayload(index));
+    }
+
+    /**
+     * Returns the value of the given {@link #LITERAL} node as a <code>double</code>, without boxing.
+     *
+     * @param index The index of the node.
+     *
+     * @return The value of the literal.
+     */
+    public double getDoubleValue(int index) {
+        return isIntegerLiteral(index) ? getPayload(index) : Double.longBitsToDouble(getPayload(index));
+    }
+
+    /**
+     * Returns the value of the given {@link #LITERAL} node, like {@link NumberLiteral#getValue()}.
+     *
+     * @param index The index of the node.
+     *
+     * @return The value of the literal; a {@link Long} or a {@link Double}.
+     */
+    public @NonNull Number getValue(int index) {
+        Number result;
+        if (isIntegerLiteral(index)) {
+            result = getPayload(index);
+        } else {
+            result = Double.longBitsToDouble(getPayload(index));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the payload of the given node, resolving payloads that are stored in the constants.
+     *
+     * @param index The index of the node.
+     *
+     * @return The payload.
+     */
+    private long getPayload(int index) {
+        int node = program[index];
+        long payload = node >>> PAYLOAD_SHIFT;
+        if ((node & INDIRECT) != 0) {
+            payload = constants[(int) payload];
+        }
+        return payload;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        boolean equal = this == obj;
+        if (!equal && obj instanceof CompactExpression) {
+            CompactExpression other = (CompactExpression) obj;
+            equal = generation == other.generation && Arrays.equals(program, other.program)
+                    && Arrays.equals(constants, other.constants);
+        }
+        return equal;
+    }
+
+    @Override
+    public int hashCode() {
+        return (Arrays.hashCode(program) * 31 + Arrays.hashCode(constants)) * 31 + generation;
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return toAst().toString();
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.parser;
+
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * An {@link ExpressionFormatException} for invalid CPP expressions. Invalid conditions are common (and often replaced
+ * silently, see {@link net.ssehub.kernel_haven.cpp_utils.InvalidConditionHandling}), so this exception can be made
+ * cheap to create:
+ * <ul>
+ *      <li>If it is created without a stack trace, the stack is not walked. This should only be done for exceptions
+ *      that are not passed on to the user; exceptions that are thrown to the user record their stack trace as
+ *      usual.</li>
+ *      <li>The full message, which shows the expression with a marker at the error position, is only built when
+ *      {@link #getMessage()} is called.</li>
+ * </ul>
+ *
+ * @author Adam
+ */
+public class CppExpressionFormatException extends ExpressionFormatException {
+
+    private static final long serialVersionUID = 6218834542720184093L;
+
+    private final @NonNull String reason;
+
+    private final @Nullable String expression;
+
+    private final int position;
+
+    private final boolean stackTrace;
+
+    private @Nullable String message;
+
+    /**
+     * Creates a new exception that is not associated with a position in the expression.
+     *
+     * @param reason The message describing the problem.
+     */
+    public CppExpressionFormatException(@NonNull String reason) {
+        this(reason, null, -1);
+    }
+
+    /**
+     * Creates a new exception.
+     *
+     * @param reason The message describing the problem.
+     * @param expression The expression that couldn't be parsed. <code>null</code> if not known.
+     * @param position The index of the character in the expression where the problem was found. <code>-1</code> if
+     *      not known.
+     */
+    public CppExpressionFormatException(@NonNull String reason, @Nullable String expression, int position) {
+        this(reason, expression, position, true);
+    }
+
+    /**
+     * Creates a new exception that is not associated with a position in the expression.
+     *
+     * @param reason The message describing the problem.
+     * @param stackTrace Whether to record the stack trace. Should only be <code>false</code> if this exception is not
+     *      passed on to the user.
+     */
+    public CppExpressionFormatException(@NonNull String reason, boolean stackTrace) {
+        this(reason, null, -1, stackTrace);
+    }
+
+    /**
+     * Creates a new exception.
+     *
+     * @param reason The message describing the problem.
+     * @param expression The expression that couldn't be parsed. <code>null</code> if not known.
+     * @param position The index of the character in the expression where the problem was found. <code>-1</code> if
+     *      not known.
+     * @param stackTrace Whether to record the stack trace. Should only be <code>false</code> if this exception is not
+     *      passed on to the user.
+     */
+    public CppExpressionFormatException(@NonNull String reason, @Nullable String expression, int position,
+            boolean stackTrace) {
+        super(reason);
+        this.reason = reason;
+        this.expression = expression;
+        this.position = position;
+        this.stackTrace = stackTrace;
+        if (stackTrace) {
+            // the super constructor called fillInStackTrace() before this field was set
+            super.fillInStackTrace();
+        }
+    }
+
+    /**
+     * Returns the message describing the problem, without the expression.
+     *
+     * @return The reason for this exception.
+     */
+    public @NonNull String getReason() {
+        return reason;
+    }
+
+    /**
+     * Returns the expression that couldn't be parsed.
+     *
+     * @return The expression; <code>null</code> if not known.
+     */
+    public @Nullable String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns the index of the character in the expression where the problem was found.
+     *
+     * @return The error position; <code>-1</code> if not known.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the full message. This is the {@link #getReason()}, followed by the expression and a marker at the
+     * error position (if they are known).
+     */
+    @Override
+    public @NonNull String getMessage() {
+        String result = this.message;
+        if (result == null) {
+            result = buildMessage();
+            this.message = result;
+        }
+        return result;
+    }
+
+    /**
+     * Builds the full message.
+     *
+     * @return The full message.
+     */
+    private @NonNull String buildMessage() {
+        String result = reason;
+
+        String expression = this.expression;
+        if (expression != null) {
+            StringBuilder fullMessage = new StringBuilder(reason).append("\nIn formula: ").append(expression);
+            if (position >= 0) {
+                fullMessage.append("\n            ");
+                for (int i = 0; i < position; i++) {
+                    fullMessage.append(' ');
+                }
+                fullMessage.append('^');
+            }
+            result = fullMessage.toString();
+        }
+
+        return result;
+    }
+
+    /**
+     * Fills in the stack trace, unless this exception was created without a stack trace.
+     *
+     * @return This exception.
+     */
+    @Override
+    public synchronized @NonNull Throwable fillInStackTrace() {
+        if (stackTrace) {
+            super.fillInStackTrace();
+        }
+        return this;
+    }
+
+}
@@ -41,16 +41,10 @@ import static net.ssehub.kernel_haven.cpp_utils.parser.CppOperator.INT_SUB;
 import static net.ssehub.kernel_haven.cpp_utils.parser.CppOperator.INT_SUB_UNARY;
 import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
 
-import java.util.ArrayList;
-import java.util.Deque;
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.ByteBuffer;
 
-import net.ssehub.kernel_haven.cpp_utils.NumberUtils;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.CppExpression;
-import net.ssehub.kernel_haven.cpp_utils.parser.ast.ExpressionList;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.FunctionCall;
-import net.ssehub.kernel_haven.cpp_utils.parser.ast.ICppExressionVisitor;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.NumberLiteral;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.Operator;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.Variable;
@@ -63,302 +57,718 @@ import net.ssehub.kernel_haven.util.null_checks.Nullable;
  * <p>
  * This parser works in the following steps:
  * <ol>
- *      <li>Lex the string; this produces {@link CppToken}s (see {@link #lex(String)})</li>
- *      <li>Parse the bracket hierarchy; this produces {@link CppExpression}s with {@link ExpressionList}s for each
- *      bracket hierarchy (see {@link #parse(String)})</li>
- *      <li>Detect {@link FunctionCall}s (variables in front of brackets) (see {@link FunctionCallTranslator})</li>
- *      <li>Resolve the flat {@link ExpressionList}s into operator hierarchies with the correct precedence;
- *      after this, there are no more {@link ExpressionList}s left (see {@link OperatorResolver})</li>
+ *      <li>Lex the string into a {@link TokenBuffer}; the tokens are lexed on demand by a {@link TokenCursor} (see
+ *      {@link #lexToken(char[], int, ParseContext, TokenBuffer)}), so lexing stops at the first syntax error.</li>
+ *      <li>Parse the tokens in a single pass with an operator and an operand stack (shunting-yard); this directly
+ *      builds the operator hierarchy with the correct precedence, including {@link FunctionCall}s (variables in
+ *      front of brackets) (see {@link #parse(CharSequence, int, int, ICppExpressionBuilder, ParseContext)}). The
+ *      elements of the result are created by an {@link ICppExpressionBuilder}; by default, this is the
+ *      {@link CppExpression} AST.</li>
  * </ol>
+ * Both steps are iterative, so deeply nested expressions do not cause a {@link StackOverflowError}.
+ * <p>
+ * Syntax errors are reported as {@link CppExpressionFormatException}s. By default, these record a stack trace; a
+ * parser whose exceptions are usually swallowed by the caller can skip this with {@link #CppParser(boolean)}.
+ * <p>
+ * This class has no mutable state; all scratch buffers are held by a {@link ParseContext}. Thus, a single instance can
+ * be used by several threads at the same time. The methods without a {@link ParseContext} parameter use one context
+ * per thread; the methods with a {@link ParseContext} parameter require that the given context is not used
+ * concurrently by another thread.
  * 
  * @author Adam
  */
 public class CppParser {
     
     /**
-     * A visitor that finds functions calls (variables followed by expression list (brackets)).
+     * Builds the {@link CppExpression} AST. All nodes are frozen (see {@link CppExpression#freeze()}), so parsed ASTs
+     * can be cached and shared between threads.
      */
-    private static class FunctionCallTranslator implements ICppExressionVisitor<@NonNull CppExpression> {
+    private static class AstBuilder implements ICppExpressionBuilder<@NonNull CppExpression> {
         
         @Override
-        public @NonNull CppExpression visitExpressionList(@NonNull ExpressionList expressionList)
-                throws ExpressionFormatException {
-            
-            for (int i = 0; i < expressionList.getExpressionSize(); i++) {
-                CppExpression currentExpr = expressionList.getExpression(i);
-                boolean foundFunction = false;
-                
-                if (currentExpr instanceof Variable && i + 1 < expressionList.getExpressionSize()) {
-                    Variable currentVar = (Variable) currentExpr;
-                    CppExpression nextExpr = expressionList.getExpression(i + 1);
-                    
-                    if (nextExpr instanceof ExpressionList) {
-                        foundFunction = true;
-                        nextExpr = nextExpr.accept(this);
-                        String name = currentVar.getName();
-                        
-                        ExpressionList nextExprList = (ExpressionList) nextExpr;
-                        // unpack argument list if we only have one element
-                        if (nextExprList.getExpressionSize() == 1) {
-                            nextExpr = nextExprList.getExpression(0);
-                            
-                        } else if (nextExprList.getExpressionSize() == 0) {
-                            // function with no arguments
-                            nextExpr = null;
-                        }
-                        
-                        expressionList.setExpression(i, new FunctionCall(name, nextExpr));
-                        expressionList.removeExpression(i + 1);
-                        i++; // increment, since we already handled nextExpr
-                        
-                    } else if (currentVar.getName().equals("defined") && nextExpr instanceof Variable) {
-                        // special case: defined(VAR) without brackets ("defined VAR") is allowed
-                        foundFunction = true;
-                        
-                        expressionList.setExpression(i, new FunctionCall("defined", nextExpr));
-                        expressionList.removeExpression(i + 1);
-                    }
-                }
-                
-                if (!foundFunction) {
-                    expressionList.setExpression(i, currentExpr.accept(this));
-                }
-                
-            }
-            
-            return expressionList;
+        public @NonNull CppExpression variable(@NonNull String name) {
+            return new Variable(name);
         }
-
+        
         @Override
-        public @NonNull CppExpression visitFunctionCall(@NonNull FunctionCall call) throws ExpressionFormatException {
-            throw new ExpressionFormatException("This code cannot be reached");
+        public @NonNull CppExpression literal(@NonNull Number value) {
+            return new NumberLiteral(value);
         }
-
+        
         @Override
-        public @NonNull CppExpression visitVariable(@NonNull Variable variable) throws ExpressionFormatException {
-            return variable;
+        public @NonNull CppExpression functionCall(@NonNull String name, @Nullable CppExpression argument) {
+            return new FunctionCall(name, argument).freeze();
         }
-
+        
         @Override
-        public @NonNull CppExpression visitOperator(@NonNull Operator operator) throws ExpressionFormatException {
-            return operator;
+        public @NonNull CppExpression unaryOperator(@NonNull CppOperator operator, @NonNull CppExpression operand) {
+            return new Operator(operator, operand, null);
         }
-
+        
         @Override
-        public @NonNull CppExpression visitLiteral(@NonNull NumberLiteral literal) throws ExpressionFormatException {
-            return literal;
+        public @NonNull CppExpression binaryOperator(@NonNull CppOperator operator, @NonNull CppExpression leftSide,
+                @NonNull CppExpression rightSide) {
+            return new Operator(operator, leftSide, rightSide);
         }
         
     }
     
     /**
-     * Finds and sets the left and right side for the operators.
+     * Operators that consist of a single character, indexed by that character. + and - are stored as their binary
+     * variant here.
      */
-    private static class OperatorResolver implements ICppExressionVisitor<@NonNull CppExpression> {
-
-        private @NonNull String expression = ""; // this will be set before this visitor is called
+    private static final @Nullable CppOperator @NonNull [] SINGLE_CHAR_OPERATORS = new CppOperator[128];
+    
+    /**
+     * Operators that consist of two characters, indexed by the first character. The nested arrays are indexed by the
+     * second character; <code>null</code> if no operator starts with the first character.
+     */
+    private static final @Nullable CppOperator @Nullable [] @NonNull [] DOUBLE_CHAR_OPERATORS = new CppOperator[128][];
+    
+    static {
+        SINGLE_CHAR_OPERATORS['!'] = BOOL_NOT;
+        SINGLE_CHAR_OPERATORS['+'] = INT_ADD;
+        SINGLE_CHAR_OPERATORS['-'] = INT_SUB;
+        SINGLE_CHAR_OPERATORS['*'] = INT_MUL;
+        SINGLE_CHAR_OPERATORS['/'] = INT_DIV;
+        SINGLE_CHAR_OPERATORS['%'] = INT_MOD;
+        SINGLE_CHAR_OPERATORS['<'] = CMP_LT;
+        SINGLE_CHAR_OPERATORS['>'] = CMP_GT;
+        SINGLE_CHAR_OPERATORS['&'] = BIN_AND;
+        SINGLE_CHAR_OPERATORS['|'] = BIN_OR;
+        SINGLE_CHAR_OPERATORS['^'] = BIN_XOR;
+        SINGLE_CHAR_OPERATORS['~'] = BIN_INV;
         
-        @Override
-        public @NonNull CppExpression visitExpressionList(@NonNull ExpressionList expressionList)
-                throws ExpressionFormatException {
-            
-            CppExpression result;
+        addDoubleCharOperator('&', '&', BOOL_AND);
+        addDoubleCharOperator('|', '|', BOOL_OR);
+        addDoubleCharOperator('+', '+', INT_INC);
+        addDoubleCharOperator('-', '-', INT_DEC);
+        addDoubleCharOperator('=', '=', CMP_EQ);
+        addDoubleCharOperator('!', '=', CMP_NE);
+        addDoubleCharOperator('<', '=', CMP_LE);
+        addDoubleCharOperator('>', '=', CMP_GE);
+        addDoubleCharOperator('>', '>', BIN_SHR);
+        addDoubleCharOperator('<', '<', BIN_SHL);
+    }
+    
+    /**
+     * The name of the defined() function, which may also be used without brackets.
+     */
+    private static final @NonNull String DEFINED = SymbolTable.GLOBAL.intern("defined");
+    
+    /**
+     * The ID of {@link #DEFINED} in the {@link SymbolTable#GLOBAL} symbol table.
+     */
+    private static final int DEFINED_SYMBOL = SymbolTable.GLOBAL.getId(DEFINED);
+    
+    /**
+     * The operators, indexed by their ordinal. Cached, since {@link CppOperator#values()} creates a copy on each call.
+     */
+    private static final @NonNull CppOperator @NonNull [] OPERATORS = CppOperator.values();
+    
+    /**
+     * The builder that creates the {@link CppExpression} AST.
+     */
+    static final @NonNull ICppExpressionBuilder<@NonNull CppExpression> AST_BUILDER = new AstBuilder();
+    
+    private static final @NonNull ThreadLocal<@NonNull ParseContext> CONTEXTS
+            = ThreadLocal.withInitial(ParseContext::new);
+    
+    /**
+     * Whether the exceptions for syntax errors record a stack trace.
+     */
+    private final boolean stackTraces;
+    
+    /**
+     * Creates a new parser. The exceptions for syntax errors record a stack trace.
+     */
+    public CppParser() {
+        this(true);
+    }
+    
+    /**
+     * Creates a new parser.
+     * 
+     * @param stackTraces Whether the exceptions for syntax errors record a stack trace. <code>false</code> makes
+     *      creating them cheaper; this should only be used if the exceptions are not passed on to the user (e.g. if
+     *      invalid expressions are replaced silently).
+     */
+    public CppParser(boolean stackTraces) {
+        this.stackTraces = stackTraces;
+    }
+    
+    /**
+     * Adds an operator to the {@link #DOUBLE_CHAR_OPERATORS} table.
+     * 
+     * @param first The first character of the operator.
+     * @param second The second character of the operator.
+     * @param operator The operator.
+     */
+    private static void addDoubleCharOperator(char first, char second, @NonNull CppOperator operator) {
+        CppOperator[] secondChars = DOUBLE_CHAR_OPERATORS[first];
+        if (secondChars == null) {
+            secondChars = new CppOperator[128];
+            DOUBLE_CHAR_OPERATORS[first] = secondChars;
+        }
+        secondChars[second] = operator;
+    }
+    
+    /**
+     * Partially parses the given CPP expression. The resulting AST only has bracket hierarchies and function calls
+     * resolved.
+     * <p>
+     * The scratch buffers needed for parsing are taken from a {@link ParseContext} that is kept per thread.
+     * 
+     * @param expression The expression to parse.
+     * @return A (partially) parsed AST for the given expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed.
+     */
+    public @NonNull CppExpression parse(@NonNull String expression) throws ExpressionFormatException {
+        return parse(expression, 0, expression.length(), AST_BUILDER, getThreadContext());
+    }
+    
+    /**
+     * Partially parses the given CPP expression. See {@link #parse(CharSequence, int, int)}.
+     * 
+     * @param expression The expression to parse.
+     * @return A (partially) parsed AST for the given expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed.
+     */
+    public @NonNull CppExpression parse(@NonNull CharSequence expression) throws ExpressionFormatException {
+        return parse(expression, 0, expression.length(), AST_BUILDER, getThreadContext());
+    }
+    
+    /**
+     * Partially parses the CPP expression in the given range of a character sequence. The resulting AST only has
+     * bracket hierarchies and function calls resolved.
+     * <p>
+     * The characters are not copied into a string; if the sequence is a {@link java.nio.CharBuffer} with a backing
+     * array, the expression is parsed in place. Thus, a condition can be parsed directly from a slice of a larger
+     * file buffer. A string of the expression is only created for the message of an exception. Error positions are
+     * relative to <code>start</code>.
+     * <p>
+     * The scratch buffers needed for parsing are taken from a {@link ParseContext} that is kept per thread.
+     * 
+     * @param expression The character sequence that contains the expression to parse.
+     * @param start The index of the first character of the expression.
+     * @param end The index after the last character of the expression.
+     * @return A (partially) parsed AST for the given expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed.
+     * @throws IndexOutOfBoundsException If the range is not within the given character sequence.
+     */
+    public @NonNull CppExpression parse(@NonNull CharSequence expression, int start, int end)
+            throws ExpressionFormatException {
+        return parse(expression, start, end, AST_BUILDER, getThreadContext());
+    }
+    
+    /**
+     * Partially parses the given CPP expression into a {@link CompactExpression}. See
+     * {@link #parseCompact(CharSequence, int, int)}.
+     * 
+     * @param expression The expression to parse.
+     * @return The compact encoding of the (partially) parsed expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed.
+     */
+    public @NonNull CompactExpression parseCompact(@NonNull CharSequence expression)
+            throws ExpressionFormatException {
+        return parseCompact(expression, 0, expression.length());
+    }
+    
+    /**
+     * Partially parses the CPP expression in the given range of a character sequence into a
+     * {@link CompactExpression}. This is the same as {@link #parse(CharSequence, int, int)}, but the result is stored
+     * in a few flat arrays instead of one object per node.
+     * 
+     * @param expression The character sequence that contains the expression to parse.
+     * @param start The index of the first character of the expression.
+     * @param end The index after the last character of the expression.
+     * @return The compact encoding of the (partially) parsed expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed.
+     * @throws IndexOutOfBoundsException If the range is not within the given character sequence.
+     */
+    public @NonNull CompactExpression parseCompact(@NonNull CharSequence expression, int start, int end)
+            throws ExpressionFormatException {
+        CompactExpression.Encoder encoder = new CompactExpression.Encoder();
+        parse(expression, start, end, encoder, getThreadContext());
+        return encoder.build();
+    }
+    
+    /**
+     * Partially parses the given CPP expression, using the scratch buffers of the given {@link ParseContext}. The
+     * context must not be used concurrently by another thread.
+     * 
+     * @param expression The expression to parse.
+     * @param context The context that holds the buffers to use.
+     * @return A (partially) parsed AST for the given expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed.
+     */
+    public @NonNull CppExpression parse(@NonNull String expression, @NonNull ParseContext context)
+            throws ExpressionFormatException {
+        return parse(expression, 0, expression.length(), AST_BUILDER, context);
+    }
+    
+    /**
+     * Parses the given CPP expression and passes its elements to the given builder, instead of creating an AST.
+     * <p>
+     * The scratch buffers needed for parsing are taken from a {@link ParseContext} that is kept per thread.
+     * 
+     * @param <T> The type of elements that the builder creates.
+     * 
+     * @param expression The expression to parse.
+     * @param builder The builder that creates the result.
+     * @return The element that the builder created for the complete expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed, or the builder does not accept it.
+     */
+    public <T> T parse(@NonNull String expression, @NonNull ICppExpressionBuilder<T> builder)
+            throws ExpressionFormatException {
+        return parse(expression, 0, expression.length(), builder, getThreadContext());
+    }
+    
+    /**
+     * Parses the CPP expression in the given range of a character sequence and passes its elements to the given
+     * builder, instead of creating an AST. See {@link #parse(CharSequence, int, int)}.
+     * <p>
+     * The scratch buffers needed for parsing are taken from a {@link ParseContext} that is kept per thread.
+     * 
+     * @param <T> The type of elements that the builder creates.
+     * 
+     * @param expression The character sequence that contains the expression to parse.
+     * @param start The index of the first character of the expression.
+     * @param end The index after the last character of the expression.
+     * @param builder The builder that creates the result.
+     * @return The element that the builder created for the complete expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed, or the builder does not accept it.
+     * @throws IndexOutOfBoundsException If the range is not within the given character sequence.
+     */
+    public <T> T parse(@NonNull CharSequence expression, int start, int end, @NonNull ICppExpressionBuilder<T> builder)
+            throws ExpressionFormatException {
+        return parse(expression, start, end, builder, getThreadContext());
+    }
+    
+    /**
+     * Parses the given CPP expression and passes its elements to the given builder, instead of creating an AST. The
+     * scratch buffers of the given {@link ParseContext} are used; the context must not be used concurrently by
+     * another thread.
+     * 
+     * @param <T> The type of elements that the builder creates.
+     * 
+     * @param expression The expression to parse.
+     * @param builder The builder that creates the result.
+     * @param context The context that holds the buffers to use.
+     * @return The element that the builder created for the complete expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed, or the builder does not accept it.
+     */
+    public <T> T parse(@NonNull String expression, @NonNull ICppExpressionBuilder<T> builder,
+            @NonNull ParseContext context) throws ExpressionFormatException {
+        return parse(expression, 0, expression.length(), builder, context);
+    }
+    
+    /**
+     * Parses the CPP expression in the given range of a character sequence and passes its elements to the given
+     * builder, instead of creating an AST. See {@link #parse(CharSequence, int, int)}. The scratch buffers of the
+     * given {@link ParseContext} are used; the context must not be used concurrently by another thread.
+     * 
+     * @param <T> The type of elements that the builder creates.
+     * 
+     * @param expression The character sequence that contains the expression to parse.
+     * @param start The index of the first character of the expression.
+     * @param end The index after the last character of the expression.
+     * @param builder The builder that creates the result.
+     * @param context The context that holds the buffers to use.
+     * @return The element that the builder created for the complete expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed, or the builder does not accept it.
+     * @throws IndexOutOfBoundsException If the range is not within the given character sequence.
+     */
+    public <T> T parse(@NonNull CharSequence expression, int start, int end, @NonNull ICppExpressionBuilder<T> builder,
+            @NonNull ParseContext context) throws ExpressionFormatException {
+        
+        context.setInUse(true);
+        try {
+            return parseExpression(context.setExpression(expression, start, end), builder, context);
+        } finally {
+            context.release();
+        }
+    }
+    
+    /**
+     * Partially parses the CPP expression in the given range of a byte buffer. The resulting AST only has bracket
+     * hierarchies and function calls resolved.
+     * <p>
+     * CPP expressions are pure ASCII, so the bytes are not decoded with a {@link java.nio.charset.Charset}; this
+     * allows parsing conditions directly from a {@link java.nio.MappedByteBuffer} of a complete source file. A byte
+     * that is not ASCII is reported as an invalid character. Error positions are relative to <code>start</code>.
+     * <p>
+     * The scratch buffers needed for parsing are taken from a {@link ParseContext} that is kept per thread.
+     * 
+     * @param expression The byte buffer that contains the expression to parse. Its position and limit are not
+     *      modified.
+     * @param start The absolute index of the first byte of the expression.
+     * @param end The absolute index after the last byte of the expression.
+     * @return A (partially) parsed AST for the given expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed.
+     * @throws IndexOutOfBoundsException If the range is not within the limit of the given byte buffer.
+     */
+    public @NonNull CppExpression parse(@NonNull ByteBuffer expression, int start, int end)
+            throws ExpressionFormatException {
+        return parse(expression, start, end, AST_BUILDER, getThreadContext());
+    }
+    
+    /**
+     * Parses the CPP expression in the given range of a byte buffer and passes its elements to the given builder,
+     * instead of creating an AST. See {@link #parse(ByteBuffer, int, int)}.
+     * <p>
+     * The scratch buffers needed for parsing are taken from a {@link ParseContext} that is kept per thread.
+     * 
+     * @param <T> The type of elements that the builder creates.
+     * 
+     * @param expression The byte buffer that contains the expression to parse. Its position and limit are not
+     *      modified.
+     * @param start The absolute index of the first byte of the expression.
+     * @param end The absolute index after the last byte of the expression.
+     * @param builder The builder that creates the result.
+     * @return The element that the builder created for the complete expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed, or the builder does not accept it.
+     * @throws IndexOutOfBoundsException If the range is not within the limit of the given byte buffer.
+     */
+    public <T> T parse(@NonNull ByteBuffer expression, int start, int end, @NonNull ICppExpressionBuilder<T> builder)
+            throws ExpressionFormatException {
+        return parse(expression, start, end, builder, getThreadContext());
+    }
+    
+    /**
+     * Parses the CPP expression in the given range of a byte buffer and passes its elements to the given builder,
+     * instead of creating an AST. See {@link #parse(ByteBuffer, int, int)}. The scratch buffers of the given
+     * {@link ParseContext} are used; the context must not be used concurrently by another thread.
+     * 
+     * @param <T> The type of elements that the builder creates.
+     * 
+     * @param expression The byte buffer that contains the expression to parse. Its position and limit are not
+     *      modified.
+     * @param start The absolute index of the first byte of the expression.
+     * @param end The absolute index after the last byte of the expression.
+     * @param builder The builder that creates the result.
+     * @param context The context that holds the buffers to use.
+     * @return The element that the builder created for the complete expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed, or the builder does not accept it.
+     * @throws IndexOutOfBoundsException If the range is not within the limit of the given byte buffer.
+     */
+    public <T> T parse(@NonNull ByteBuffer expression, int start, int end, @NonNull ICppExpressionBuilder<T> builder,
+            @NonNull ParseContext context) throws ExpressionFormatException {
+        
+        context.setInUse(true);
+        try {
+            return parseExpression(context.setExpression(expression, start, end), builder, context);
+        } finally {
+            context.release();
+        }
+    }
+    
+    /**
+     * Parses the current expression of the given context. Tokens are lexed on demand while parsing.
+     * 
+     * @param <T> The type of elements that the builder creates.
+     * 
+     * @param expr The characters that contain the current expression of the context.
+     * @param builder The builder that creates the result.
+     * @param context The context that holds the current expression and the buffers to use.
+     * @return The element that the builder created for the complete expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed, or the builder does not accept it.
+     */
+    private <T> T parseExpression(char @NonNull [] expr, @NonNull ICppExpressionBuilder<T> builder,
+            @NonNull ParseContext context) throws ExpressionFormatException {
+        
+        context.clearStacks();
+        return parse(context.startCursor(this, expr), builder, context);
+    }
+    
+    /**
+     * Returns the {@link ParseContext} of the current thread. If it is already in use (i.e. a builder called this
+     * parser again while parsing), a new context is created so that the buffers of the outer call are not
+     * overwritten.
+     * 
+     * @return A context that is not in use.
+     */
+    private static @NonNull ParseContext getThreadContext() {
+        ParseContext context = notNull(CONTEXTS.get());
+        if (context.isInUse()) {
+            context = new ParseContext();
+        }
+        return context;
+    }
+    
+    /**
+     * Parses the given tokens with the shunting-yard algorithm. Operands are built with the given builder and pushed
+     * on the operand stack of the context; binary operators, prefix operators and opening brackets are pushed on the
+     * operator stack until their right side is complete. Binary operators are reduced as soon as an operator with
+     * lower or equal precedence follows, so operators with equal precedence are evaluated left-to-right.
+     * 
+     * @param <T> The type of elements that the builder creates.
+     * 
+     * @param cursor The cursor that provides the tokens of the expression.
+     * @param builder The builder that creates the elements.
+     * @param context The context that holds the current expression and the stacks to use. The stacks must be
+     *      empty.
+     * @return The element for the given expression.
+     * 
+     * @throws ExpressionFormatException If the expression is malformed, or the builder does not accept it.
+     */
+    @SuppressWarnings("unchecked") // the operand stack only contains elements created by the builder
+    private <T> T parse(@NonNull TokenCursor cursor, @NonNull ICppExpressionBuilder<T> builder,
+            @NonNull ParseContext context) throws ExpressionFormatException {
+        
+        TokenBuffer tokens = cursor.getTokens();
+        // whether the next token has to start an operand; if false, the next token has to be an operator
+        boolean expectOperand = true;
+        int openBrackets = 0;
+        
+        for (int tokenIndex = cursor.next(); tokenIndex >= 0; tokenIndex = cursor.next()) {
+            int pos = tokens.getStart(tokenIndex);
             
-            if (expressionList.getExpressionSize() == 0) {
-                throw makeException(expression, "Expected variable");
-                
-            } else if (expressionList.getExpressionSize() == 1) {
-                result = expressionList.getExpression(0).accept(this); 
-                
-            } else {
-                int highestOpPos = -1;
-                int highestOpPrecedence = Integer.MAX_VALUE;
-                Operator highestOpNode = null;
-                
-                for (int i = 0; i < expressionList.getExpressionSize(); i++) {
-                    CppExpression currentExpr = expressionList.getExpression(i);
+            if (expectOperand) {
+                switch (tokens.getKind(tokenIndex)) {
+                case TokenBuffer.IDENTIFIER:
+                    int nextIndex = cursor.peek();
+                    int nextKind = nextIndex >= 0 ? tokens.getKind(nextIndex) : -1;
                     
-                    if (currentExpr instanceof Operator) {
-                        CppOperator op = ((Operator) currentExpr).getOperator();
+                    if (nextKind == TokenBuffer.OPENING_BRACKET) {
+                        // function call; the argument is parsed like a bracket
+                        context.pushOperator(ParseContext.FUNCTION_BRACKET, tokenIndex);
+                        openBrackets++;
+                        cursor.next(); // skip the opening bracket
+                        
+                    } else if (nextKind == TokenBuffer.IDENTIFIER && isDefined(tokens, tokenIndex)) {
+                        // special case: defined(VAR) without brackets ("defined VAR") is allowed
+                        tokenIndex = cursor.next();
+                        operandFinished(builder.functionCall(DEFINED,
+                                builder.variable(getName(tokens, tokenIndex))), builder, context);
+                        expectOperand = false;
                         
-                        // equal, because we want to find the right-most lowest precedence
-                        // this is needed for proper left-to-right evaluation of equal precedence operators
-                        if (op.getPrecedence() <= highestOpPrecedence) {
-                            highestOpPos = i;
-                            highestOpPrecedence = op.getPrecedence();
-                            highestOpNode = (Operator) currentExpr;
-                        }
+                    } else {
+                        operandFinished(builder.variable(getName(tokens, tokenIndex)), builder, context);
+                        expectOperand = false;
                     }
-                }
-                
-                if (highestOpNode == null) {
-                    throw makeException(expression, "Couldn't find operator");
+                    break;
                     
-                } else {
-                    parseParameters(expressionList, highestOpNode, highestOpPos);
-                }
-                
-                
-                result = highestOpNode;
-            }
-            
-            return result;
-        }
-        
-        /**
-         * Parses the arguments (left and right for binary, only one side for unary operators) and adds them to the
-         * given operator.
-         * 
-         * @param expressionList The {@link ExpressionList} containing all nodes of the current nesting depth.
-         * @param operator The operator to parse the parameters for.
-         * @param operatorIndex The index of the operator in <code>expressionList</code>.
-         * 
-         * @throws ExpressionFormatException If finding the parameters fails.
-         */
-        private void parseParameters(@NonNull ExpressionList expressionList, @NonNull Operator operator,
-                int operatorIndex) throws ExpressionFormatException {
-            
-            if (operator.getOperator().isUnary()) {
-                if (operatorIndex != 0
-                        // special case: ++ and -- may be on right side
-                        && !(
-                                (operator.getOperator() == INT_DEC || operator.getOperator() == INT_INC)
-                                && operatorIndex == expressionList.getExpressionSize() - 1
-                            )) {
+                case TokenBuffer.LITERAL_LONG:
+                case TokenBuffer.LITERAL_DOUBLE:
+                    operandFinished(builder.literal(tokens.getLiteralValue(tokenIndex)), builder, context);
+                    expectOperand = false;
+                    break;
+                    
+                case TokenBuffer.OPENING_BRACKET:
+                    context.pushOperator(ParseContext.BRACKET, tokenIndex);
+                    openBrackets++;
+                    break;
+                    
+                case TokenBuffer.CLOSING_BRACKET:
+                    if (context.peekOperatorType() == ParseContext.FUNCTION_BRACKET
+                            && context.peekOperatorValue() == tokenIndex - 2) {
+                        // function with no arguments
+                        String name = getName(tokens, context.peekOperatorValue());
+                        context.popOperator();
+                        openBrackets--;
+                        operandFinished(builder.functionCall(name, null), builder, context);
+                        expectOperand = false;
                         
-                    throw makeException(expression, "Found elements on wrong side of unary operator");
+                    } else if (openBrackets == 0) {
+                        throw makeException(context, "Unbalanced brackets (too many closing)", pos);
                         
-                } else {
-                    expressionList.removeExpression(operatorIndex);
-                    operator.setLeftSide(expressionList.accept(this));
+                    } else {
+                        throw makeException(context, "Expected variable", pos);
+                    }
+                    break;
+                    
+                case TokenBuffer.OPERATOR:
+                    CppOperator op = tokens.getOperator(tokenIndex);
+                    if (op.isBinary()) {
+                        throw makeException(context, "Didn't find elements on both sides of binary operator", pos);
+                    }
+                    if (context.peekOperatorType() == ParseContext.PREFIX_OPERATOR) {
+                        // only one unary operator is allowed in front of an operand (without brackets)
+                        throw makeException(context, "Found elements on wrong side of unary operator", pos);
+                    }
+                    context.pushOperator(ParseContext.PREFIX_OPERATOR, op.ordinal());
+                    break;
+                    
+                default:
+                    throw makeException(context, "Unexpected token kind: " + tokens.getKind(tokenIndex), pos);
                 }
                 
             } else {
-                if (operatorIndex == 0 || operatorIndex == expressionList.getExpressionSize() - 1) {
-                    throw makeException(expression, "Didn't find elements on both sides of binary operator");
+                switch (tokens.getKind(tokenIndex)) {
+                case TokenBuffer.OPERATOR:
+                    CppOperator op = tokens.getOperator(tokenIndex);
+                    if (op == INT_INC || op == INT_DEC) {
+                        // special case: ++ and -- may be on right side; applies to the complete operand on the left
+                        context.pushOperand(builder.unaryOperator(op, (T) context.popOperand()));
+                        
+                    } else if (op.isUnary()) {
+                        throw makeException(context, "Found elements on wrong side of unary operator", pos);
+                        
+                    } else {
+                        reduceBinaryOperators(op.getPrecedence(), builder, context);
+                        context.pushOperator(ParseContext.BINARY_OPERATOR, op.ordinal());
+                        expectOperand = true;
+                    }
+                    break;
                     
-                } else {
-                    ExpressionList leftSide = new ExpressionList();
-                    ExpressionList rightSide = new ExpressionList();
-                    for (int i = 0; i < expressionList.getExpressionSize(); i++) {
-                        if (i < operatorIndex) {
-                            leftSide.addExpression(expressionList.getExpression(i));
-                            
-                        } else if (i > operatorIndex) {
-                            rightSide.addExpression(expressionList.getExpression(i));
-                        }
+                case TokenBuffer.CLOSING_BRACKET:
+                    reduceBinaryOperators(Integer.MIN_VALUE, builder, context);
+                    
+                    int type = context.peekOperatorType();
+                    if (type == ParseContext.BRACKET) {
+                        context.popOperator();
+                        operandFinished((T) context.popOperand(), builder, context);
+                        
+                    } else if (type == ParseContext.FUNCTION_BRACKET) {
+                        String name = getName(tokens, context.peekOperatorValue());
+                        context.popOperator();
+                        operandFinished(builder.functionCall(name, (T) context.popOperand()), builder, context);
+                        
+                    } else {
+                        throw makeException(context, "Unbalanced brackets (too many closing)", pos);
                     }
+                    openBrackets--;
+                    break;
                     
-                    operator.setLeftSide(leftSide.accept(this));
-                    operator.setRightSide(rightSide.accept(this));
-
+                default:
+                    // two operands next to each other
+                    throw makeException(context, "Couldn't find operator", pos);
                 }
             }
         }
-
-        @Override
-        public @NonNull CppExpression visitFunctionCall(@NonNull FunctionCall call) throws ExpressionFormatException {
-            CppExpression arg = call.getArgument();
-            if (arg != null) {
-                arg = arg.accept(this);
-            }
-            call.setArgument(arg);
-            return call;
-        }
-
-        @Override
-        public @NonNull CppExpression visitVariable(@NonNull Variable variable) throws ExpressionFormatException {
-            return variable;
-        }
-
-        @Override
-        public @NonNull CppExpression visitOperator(@NonNull Operator operator) throws ExpressionFormatException {
-            return operator;
+        
+        int numTokens = tokens.size();
+        int end = numTokens > 0 ? tokens.getStart(numTokens - 1) + tokens.getLength(numTokens - 1)
+                : context.getExpressionStart();
+        if (openBrackets > 0) {
+            throw makeException(context, "Unbalanced brackets (missing closing)", end);
         }
-
-        @Override
-        public @NonNull CppExpression visitLiteral(@NonNull NumberLiteral literal) throws ExpressionFormatException {
-            return literal;
+        if (expectOperand) {
+            throw makeException(context, "Expected variable", end);
         }
         
+        reduceBinaryOperators(Integer.MIN_VALUE, builder, context);
+        return (T) context.popOperand();
     }
     
-    private @NonNull FunctionCallTranslator functionCallTranslator = new FunctionCallTranslator();
-    private @NonNull OperatorResolver operatorResolver = new OperatorResolver();
-    
     /**
-     * Partially parses the given CPP expression. The resulting AST only has bracket hierarchies and function calls
-     * resolved. This method is not thread-safe (don't call it from multiple threads).
+     * Called when an operand is complete. Applies a prefix operator on top of the operator stack to the operand and
+     * pushes the result on the operand stack.
      * 
-     * @param expression The expression to parse.
-     * @return A (partially) parsed AST for the given expression.
+     * @param <T> The type of elements that the builder creates.
      * 
-     * @throws ExpressionFormatException If the expression is malformed.
+     * @param operand The complete operand.
+     * @param builder The builder that creates the elements.
+     * @param context The context that holds the stacks.
+     * 
+     * @throws ExpressionFormatException If the builder does not accept the prefix operator.
      */
-    public @NonNull CppExpression parse(@NonNull String expression) throws ExpressionFormatException {
-        @NonNull CppToken @NonNull [] tokens = lex(expression);
+    private <T> void operandFinished(T operand, @NonNull ICppExpressionBuilder<T> builder,
+            @NonNull ParseContext context) throws ExpressionFormatException {
         
-        Deque<ExpressionList> expressionListStack = new LinkedList<>();
-        expressionListStack.push(new ExpressionList());
+        T result = operand;
+        if (context.peekOperatorType() == ParseContext.PREFIX_OPERATOR) {
+            CppOperator op = OPERATORS[context.peekOperatorValue()];
+            context.popOperator();
+            result = builder.unaryOperator(op, operand);
+        }
+        context.pushOperand(result);
+    }
+    
+    /**
+     * Reduces the binary operators on top of the operator stack that have at least the given precedence. Each of
+     * them takes the two top-most operands as its left and right side.
+     * 
+     * @param <T> The type of elements that the builder creates.
+     * 
+     * @param minPrecedence The minimum precedence of operators to reduce.
+     * @param builder The builder that creates the elements.
+     * @param context The context that holds the stacks.
+     * 
+     * @throws ExpressionFormatException If the builder does not accept one of the operators.
+     */
+    @SuppressWarnings("unchecked") // the operand stack only contains elements created by the builder
+    private <T> void reduceBinaryOperators(int minPrecedence, @NonNull ICppExpressionBuilder<T> builder,
+            @NonNull ParseContext context) throws ExpressionFormatException {
         
-        for (int tokenIndex = 0; tokenIndex < tokens.length; tokenIndex++) {
-            
-            CppToken currentToken = tokens[tokenIndex];
-            
-            if (currentToken instanceof Bracket) {
-                Bracket currentBracket = (Bracket) currentToken;
-                
-                if (currentBracket.isOpening()) {
-                    ExpressionList newList = new ExpressionList();
-                    expressionListStack.peek().addExpression(newList);
-                    expressionListStack.push(newList);
-                    
-                } else {
-                    expressionListStack.pop();
-                    if (expressionListStack.size() < 1) {
-                        throw makeException(expression, "Unbalanced brackets (too many closing)",
-                                currentToken.getPos());
-                    }
-                }
-                
-            } else if (currentToken instanceof IdentifierToken) {
-                expressionListStack.peek().addExpression(new Variable(((IdentifierToken) currentToken).getName()));
-                
-            } else if (currentToken instanceof OperatorToken) {
-                expressionListStack.peek().addExpression(new Operator(((OperatorToken) currentToken).getOperator()));
-                
-            } else if (currentToken instanceof LiteralToken) {
-                expressionListStack.peek().addExpression(new NumberLiteral(((LiteralToken) currentToken).getValue()));
-                
-            } else {
-                throw makeException(expression, "Unexpected token: " + currentToken, currentToken.getPos());
+        while (context.peekOperatorType() == ParseContext.BINARY_OPERATOR) {
+            CppOperator op = OPERATORS[context.peekOperatorValue()];
+            if (op.getPrecedence() < minPrecedence) {
+                break;
             }
+            context.popOperator();
             
+            T rightSide = (T) context.popOperand();
+            T leftSide = (T) context.popOperand();
+            context.pushOperand(builder.binaryOperator(op, leftSide, rightSide));
         }
-        
-        if (expressionListStack.size() != 1) {
-            CppToken lastToken = tokens[tokens.length - 1];
-            throw makeException(expression, "Unbalanced brackets (missing closing)",
-                    lastToken.getPos() + lastToken.getLength());
-        }
-        
-        ExpressionList resultList = expressionListStack.pop();
-        CppExpression result = resultList;
-        // unpack surrounding list if we only have one element
-        if (resultList.getExpressionSize() == 1) {
-            result = resultList.getExpression(0);
-        }
-        
-        
-        result = result.accept(functionCallTranslator);
-        operatorResolver.expression = expression;
-        result = result.accept(operatorResolver);
-        
-        return result;
     }
     
     /**
-     * Lex (tokenize) the given expression. Package visibility for test cases.
+     * Checks whether the given identifier token is the <code>defined</code> keyword.
+     * 
+     * @param tokens The tokens of the expression.
+     * @param tokenIndex The index of the identifier token.
+     * 
+     * @return Whether the token is <code>defined</code>.
+     */
+    private static boolean isDefined(@NonNull TokenBuffer tokens, int tokenIndex) {
+        return tokens.getSymbol(tokenIndex) == DEFINED_SYMBOL;
+    }
+    
+    /**
+     * Returns the name of the given identifier token. This is the canonical instance from the
+     * {@link SymbolTable#GLOBAL} symbol table, so no new string is created.
+     * 
+     * @param tokens The tokens of the expression.
+     * @param tokenIndex The index of the identifier token.
+     * 
+     * @return The name of the identifier.
+     */
+    private static @NonNull String getName(@NonNull TokenBuffer tokens, int tokenIndex) {
+        return SymbolTable.GLOBAL.getName(tokens.getSymbol(tokenIndex));
+    }
+    
+    /**
+     * Starts lexing (tokenizing) the CPP expression in the given range of a character sequence, without parsing it.
+     * Tokens are lexed lazily when they are requested from the returned cursor, so invalid characters are only
+     * reported by the {@link TokenCursor#next()} or {@link TokenCursor#peek()} call that reaches them.
+     * <p>
+     * The cursor uses the buffers of the given {@link ParseContext}. It is valid until the context is used for the next
+     * expression (e.g. passed to <code>parse()</code> or to this method again). The characters of the expression must
+     * not be modified while the cursor is used.
+     * 
+     * @param expression The character sequence that contains the expression to lex.
+     * @param start The index of the first character of the expression.
+     * @param end The index after the last character of the expression.
+     * @param context The context that holds the buffers to use.
+     * @return A cursor over the tokens of the expression.
+     * 
+     * @throws IndexOutOfBoundsException If the range is not within the given character sequence.
+     */
+    public @NonNull TokenCursor tokenize(@NonNull CharSequence expression, int start, int end,
+            @NonNull ParseContext context) {
+        return context.startCursor(this, context.setExpression(expression, start, end));
+    }
+    
+    /**
+     * Lex (tokenize) the given expression into {@link CppToken} objects. Package visibility for test cases; the
+     * parser itself pulls the tokens from a {@link TokenCursor} while parsing.
      * 
      * @param expression The expression to turn into tokens.
      * @return The tokens.
@@ -366,131 +776,97 @@ public class CppParser {
      * @throws ExpressionFormatException If invalid characters appear in the expression.
      */
     @NonNull CppToken @NonNull [] lex(@NonNull String expression) throws ExpressionFormatException {
-        List<@NonNull CppToken> tokens = new ArrayList<>(50);
-        int tokenIndex = 0;
+        ParseContext context = new ParseContext();
+        char[] expr = context.setExpression(expression, 0, expression.length());
+        TokenCursor cursor = context.startCursor(this, expr);
+        while (cursor.next() >= 0) {
+            // lex all tokens
+        }
+        return cursor.getTokens().toTokens(expr);
+    }
+    
+    /**
+     * Lexes the next token of the current expression of the given context, and adds it to the given
+     * {@link TokenBuffer}. Whitespace in front of the token is skipped. The positions of the tokens are indices in
+     * <code>expr</code>. Called by the {@link TokenCursor}.
+     * 
+     * @param expr The characters that contain the expression to turn into tokens.
+     * @param start The position in <code>expr</code> to start lexing at.
+     * @param context The context that holds the location of the current expression in <code>expr</code>.
+     * @param tokens The buffer to add the token to.
+     * 
+     * @return The position after the lexed token. If this is the end of the expression, no token may have been
+     *      added (trailing whitespace).
+     * 
+     * @throws ExpressionFormatException If invalid characters appear in the expression.
+     */
+    int lexToken(char @NonNull [] expr, int start, @NonNull ParseContext context, @NonNull TokenBuffer tokens)
+            throws ExpressionFormatException {
         
-        IdentifierToken currentIdentifier = null;
+        int exprLength = context.getExpressionEnd();
+        int exprPos = context.whitespaceEnd(expr, start);
         
-        char[] expr = expression.toCharArray();
-        // iterate over the string; i is incremented based on which token was identified
-        for (int exprPos = 0; exprPos < expr.length;) {
-            
-            CppOperator op = getOperator(expr, exprPos, tokenIndex == 0 ? null : tokens.get(tokenIndex - 1));
-            
-            if (isWhitespace(expr, exprPos)) {
-                identifierFinished(currentIdentifier, tokens, tokenIndex - 1, expression);
-                currentIdentifier = null;
-                
-                exprPos++;
+        if (exprPos < exprLength) {
+            // check identifiers first, since most characters in an expression belong to identifiers; the whole
+            // identifier is consumed at once, the token only references the span inside of expr
+            int identifierEnd = context.identifierEnd(expr, exprPos);
+            if (identifierEnd > exprPos) {
+                identifierFinished(expr, exprPos, identifierEnd, context, tokens);
+                exprPos = identifierEnd;
                 
             } else if (isOpeningBracket(expr, exprPos)) {
-                identifierFinished(currentIdentifier, tokens, tokenIndex - 1, expression);
-                currentIdentifier = null;
-                
-                tokens.add(new Bracket(exprPos, false));
-                tokenIndex++;
+                tokens.addBracket(exprPos, false);
                 exprPos++;
                 
             } else if (isClosingBracket(expr, exprPos)) {
-                identifierFinished(currentIdentifier, tokens, tokenIndex - 1, expression);
-                currentIdentifier = null;
-                
-                tokens.add(new Bracket(exprPos, true));
-                tokenIndex++;
+                tokens.addBracket(exprPos, true);
                 exprPos++;
                 
-            } else if (op != null) {
-                identifierFinished(currentIdentifier, tokens, tokenIndex - 1, expression);
-                currentIdentifier = null;
-                
-                tokens.add(new OperatorToken(exprPos, op));
-                tokenIndex++;
-                exprPos += op.getSymbol().length();
-                
-            } else if (isIdentifierChar(expr, exprPos)) {
-                if (currentIdentifier == null) {
-                    currentIdentifier = new IdentifierToken(exprPos, "");
-                    tokens.add(currentIdentifier);
-                    tokenIndex++;
+            } else {
+                CppOperator op = getOperator(expr, exprPos, exprLength, tokens.getLastKind());
+                if (op == null) {
+                    throw makeException(context,
+                            "Invalid character in expression: " + context.describeCharacter(exprPos), exprPos);
                 }
-                currentIdentifier.setName(currentIdentifier.getName() + expr[exprPos]);
-                exprPos++;
                 
-            } else {
-                throw makeException(expression, "Invalid character in expression: '" + expr[exprPos] + "'", exprPos);
+                tokens.addOperator(exprPos, op);
+                exprPos += op.getSymbol().length();
             }
         }
-
-        identifierFinished(currentIdentifier, tokens, tokenIndex - 1, expression);
         
-        return notNull(tokens.toArray(new @NonNull CppToken[0]));
+        return exprPos;
     }
     
     /**
-     * Called when an identifier is finished. This method detects whether the identifier was a literal.
+     * Called when an identifier is finished. This method detects whether the identifier was a literal (see
+     * {@link LiteralScanner}), and adds the appropriate token.
      *  
-     * @param identifier The identifier that was finished. May be <code>null</code>, in which case this method does
-     *      nothing.
-     * @param tokens The list of tokens to replace the identifier in.
-     * @param tokenIndex The index of the identifier in the token list.
-     * @param expression The currently parsed expression. Used for exception messages.
+     * @param expr The characters of the expression.
+     * @param start The start index of the identifier in <code>expr</code>.
+     * @param end The end index (exclusive) of the identifier in <code>expr</code>.
+     * @param context The context that holds the current expression. Used for exception messages.
+     * @param tokens The buffer to add the identifier or literal token to.
      * 
      * @throws ExpressionFormatException If the identifier is supposed to be a literal, but not parseable as one.
      */
-    private void identifierFinished(@Nullable IdentifierToken identifier, @NonNull List<@NonNull CppToken> tokens,
-            int tokenIndex, @NonNull  String expression) throws ExpressionFormatException {
+    private void identifierFinished(char @NonNull [] expr, int start, int end, @NonNull ParseContext context,
+            @NonNull TokenBuffer tokens) throws ExpressionFormatException {
         
-        if (identifier != null) {
-            if (Character.isDigit(identifier.getName().charAt(0))) {
-                StringBuilder literal = new StringBuilder(identifier.getName().toLowerCase());
-                
-                // remove any trailing 'l's
-                while (literal.charAt(literal.length() - 1) == 'l') {
-                    literal.replace(literal.length() - 1, literal.length(), "");
-                }
-                // remove one trailing 'u'
-                if (literal.charAt(literal.length() - 1) == 'u') {
-                    literal.replace(literal.length() - 1, literal.length(), "");
-                }
-                
-                try {
-                    // parse number
-                    Number numberValue = NumberUtils.convertToNumber(notNull(literal.toString()));
-                    if (numberValue == null) {
-                        throw new NumberFormatException();
-                    }
-                    
-                    // replace IdentifierToken with LiteralToken
-                    tokens.set(tokenIndex,
-                            new LiteralToken(identifier.getPos(), identifier.getLength(), numberValue));
-                    
-                } catch (NumberFormatException e) {
-                    throw makeException(expression, "Cannot parse literal " + identifier.getName(),
-                            identifier.getPos());
-                }
-                
-            } else {
-                int dotIndex = identifier.getName().indexOf('.');
-                if (dotIndex != -1) {
-                    throw makeException(expression, "Literal contains invalid character: '.'",
-                            identifier.getPos() + dotIndex);
+        if (expr[start] >= '0' && expr[start] <= '9') {
+            if (!LiteralScanner.scan(expr, start, end, tokens)) {
+                throw makeException(context, "Cannot parse literal " + new String(expr, start, end - start),
+                        start);
+            }
+            
+        } else {
+            for (int i = start; i < end; i++) {
+                if (expr[i] == '.') {
+                    throw makeException(context, "Literal contains invalid character: '.'", i);
                 }
-                
             }
+            
+            tokens.addIdentifier(start, end - start, SymbolTable.GLOBAL.getId(expr, start, end - start));
         }
-        
-    }
-    
-    /**
-     * Whether the given character is a whitespace.
-     * 
-     * @param expr An array containing characters.
-     * @param exprPos Which character in the array should be checked.
-     * 
-     * @return Whether the given character is a whitespace.
-     */
-    private boolean isWhitespace(char[] expr, int exprPos) {
-        return Character.isWhitespace(expr[exprPos]);
     }
     
     /**
@@ -502,7 +878,7 @@ public class CppParser {
      * @return Whether the given character is an opening bracket.
      */
     private boolean isOpeningBracket(char[] expr, int exprPos) {
-        return safeCheckChar(expr, exprPos, '(');
+        return expr[exprPos] == '(';
     }
     
     /**
@@ -514,79 +890,41 @@ public class CppParser {
      * @return Whether the given character is an closing bracket.
      */
     private boolean isClosingBracket(char[] expr, int exprPos) {
-        return safeCheckChar(expr, exprPos, ')');
+        return expr[exprPos] == ')';
     }
     
     /**
-     * Returns the operator that is found the given position in the given array.
+     * Returns the operator that is found the given position in the given array. This is a lookup in
+     * {@link #DOUBLE_CHAR_OPERATORS} with the next character, falling back to {@link #SINGLE_CHAR_OPERATORS}.
      * 
      * @param expr The expression that the operator is searched in.
      * @param exprPos The position in the expression where the operator is at.
-     * @param previousToken The previous token that is to the left of this potential operator. <code>null</code> if this
-     *      would be the first token for the expression. This is used to determine if + and - are binary or unary.
+     * @param exprLength The number of valid characters in <code>expr</code>.
+     * @param previousTokenKind The kind of the previous token that is to the left of this potential operator.
+     *      <code>-1</code> if this would be the first token for the expression. This is used to determine if + and -
+     *      are binary or unary.
      * 
      * @return The operator at the given position, or <code>null</code> if there is no operator.
      */
-    private CppOperator getOperator(char[] expr, int exprPos, @Nullable CppToken previousToken) {
+    private @Nullable CppOperator getOperator(char[] expr, int exprPos, int exprLength, int previousTokenKind) {
         CppOperator result = null;
         
-        /*
-         * Double char operators
-         */
-        if (safeCheckChar(expr, exprPos, '&') && safeCheckChar(expr, exprPos + 1, '&')) {
-            result = BOOL_AND;
-        } else if (safeCheckChar(expr, exprPos, '|') && safeCheckChar(expr, exprPos + 1, '|')) {
-            result = BOOL_OR;
-            
-        } else if (safeCheckChar(expr, exprPos, '+') && safeCheckChar(expr, exprPos + 1, '+')) {
-            result = INT_INC;
-        } else if (safeCheckChar(expr, exprPos, '-') && safeCheckChar(expr, exprPos + 1, '-')) {
-            result = INT_DEC;
-            
-        } else if (safeCheckChar(expr, exprPos, '=') && safeCheckChar(expr, exprPos + 1, '=')) {
-            result = CMP_EQ;
-        } else if (safeCheckChar(expr, exprPos, '!') && safeCheckChar(expr, exprPos + 1, '=')) {
-            result = CMP_NE;
-        } else if (safeCheckChar(expr, exprPos, '<') && safeCheckChar(expr, exprPos + 1, '=')) {
-            result = CMP_LE;
-        } else if (safeCheckChar(expr, exprPos, '>') && safeCheckChar(expr, exprPos + 1, '=')) {
-            result = CMP_GE;
-            
-        } else if (safeCheckChar(expr, exprPos, '>') && safeCheckChar(expr, exprPos + 1, '>')) {
-            result = BIN_SHR;
-        } else if (safeCheckChar(expr, exprPos, '<') && safeCheckChar(expr, exprPos + 1, '<')) {
-            result = BIN_SHL;
-            
-        /*
-         *  single char operators
-         */
-        } else if (safeCheckChar(expr, exprPos, '!')) {
-            result = BOOL_NOT;
-            
-        } else if (safeCheckChar(expr, exprPos, '+')) {
-            result = isUnary(previousToken) ? INT_ADD_UNARY : INT_ADD;
-        } else if (safeCheckChar(expr, exprPos, '-')) {
-            result = isUnary(previousToken) ? INT_SUB_UNARY : INT_SUB;
-        } else if (safeCheckChar(expr, exprPos, '*')) {
-            result = INT_MUL;
-        } else if (safeCheckChar(expr, exprPos, '/')) {
-            result = INT_DIV;
-        } else if (safeCheckChar(expr, exprPos, '%')) {
-            result = INT_MOD;
-            
-        } else if (safeCheckChar(expr, exprPos, '<')) {
-            result = CMP_LT;
-        } else if (safeCheckChar(expr, exprPos, '>')) {
-            result = CMP_GT;
+        char first = expr[exprPos];
+        if (first < SINGLE_CHAR_OPERATORS.length) {
+            CppOperator[] secondChars = DOUBLE_CHAR_OPERATORS[first];
+            if (secondChars != null && exprPos + 1 < exprLength && expr[exprPos + 1] < secondChars.length) {
+                result = secondChars[expr[exprPos + 1]];
+            }
             
-        } else if (safeCheckChar(expr, exprPos, '&')) {
-            result = BIN_AND;
-        } else if (safeCheckChar(expr, exprPos, '|')) {
-            result = BIN_OR;
-        } else if (safeCheckChar(expr, exprPos, '^')) {
-            result = BIN_XOR;
-        } else if (safeCheckChar(expr, exprPos, '~')) {
-            result = BIN_INV;
+            if (result == null) {
+                result = SINGLE_CHAR_OPERATORS[first];
+                
+                if (result == INT_ADD && isUnary(previousTokenKind)) {
+                    result = INT_ADD_UNARY;
+                } else if (result == INT_SUB && isUnary(previousTokenKind)) {
+                    result = INT_SUB_UNARY;
+                }
+            }
         }
         
         return result;
@@ -597,81 +935,33 @@ public class CppParser {
      * to the left (i.e. the expression starts with it), there is an opening bracket to the left, or there is another
      * operator to the left.
      * 
-     * @param previousToken The token to the left of the operator token.
+     * @param previousTokenKind The kind of the token to the left of the operator token; <code>-1</code> if there is
+     *      none.
      * 
      * @return Whether the operator should be unary.
      */
-    private boolean isUnary(@Nullable CppToken previousToken) {
-        return previousToken == null
-                || previousToken instanceof OperatorToken
-                || (previousToken instanceof Bracket && ((Bracket) previousToken).isOpening());
-    }
-    
-    /**
-     * Whether the given character is a valid identifier character.
-     * 
-     * @param expr An array containing characters.
-     * @param exprPos Which character in the array should be checked.
-     * 
-     * @return Whether the given character is a valid identifier character.
-     */
-    private boolean isIdentifierChar(char[] expr, int exprPos) {
-        // CHECKSTYLE:OFF
-        // checkstyle thinks that this boolean formula is too complex;
-        // but we need it this way because every other option is not as
-        // performant, and this
-        // is a rather performance critical code path.
-        return (expr[exprPos] >= 'a' && expr[exprPos] <= 'z') || (expr[exprPos] >= 'A' && expr[exprPos] <= 'Z')
-                || (expr[exprPos] >= '0' && expr[exprPos] <= '9') || (expr[exprPos] == '_')  || expr[exprPos] == '.';
-        // CHECKSTYLE:ON
-    }
-    
-    /**
-     * Safely checks if the character at the given position in the array is equal to the given character.
-     * 
-     * @param expr The array to check in.
-     * @param exprPos The position to check in the array. May be out of bounds.
-     * @param check The character that should be checked against.
-     * 
-     * @return <code>true</code> if <code>check</code> is at the array in the given position; <code>false</code> if not
-     *      or <code>exprPos</code> is out of bounds.
-     */
-    private static boolean safeCheckChar(char[] expr, int exprPos, char check) {
-        boolean result = false;
-        if (exprPos >= 0 && exprPos < expr.length) {
-            result = expr[exprPos] == check;
-        }
-        return result;
+    private boolean isUnary(int previousTokenKind) {
+        return previousTokenKind == -1
+                || previousTokenKind == TokenBuffer.OPERATOR
+                || previousTokenKind == TokenBuffer.OPENING_BRACKET;
     }
     
     /**
-     * Creates an {@link ExpressionFormatException}.
+     * Creates an {@link ExpressionFormatException} for the current expression of the given context. The full message
+     * is only built if it is requested (see {@link CppExpressionFormatException}).
      * 
-     * @param expression The expression that couldn't be parsed.
+     * @param context The context that holds the expression that couldn't be parsed.
      * @param message The message describing the exception.
-     * @param markers The indices for characters in the expression where markers should be displayed. Must be sorted
-     *      ascending.
+     * @param marker The index of the character in the character array of the expression where a marker should be
+     *      displayed.
      * 
      * @return The exception with the proper error message.
      */
-    private static @NonNull ExpressionFormatException makeException(@NonNull String expression, @NonNull String message,
-            int ... markers) {
+    private @NonNull ExpressionFormatException makeException(@NonNull ParseContext context,
+            @NonNull String message, int marker) {
         
-        StringBuilder fullMessage = new StringBuilder(message).append("\nIn formula: ").append(expression);
-        if (markers.length > 0) {
-            fullMessage.append("\n            ");
-            int markersIndex = 0;
-            for (int i = 0; markersIndex < markers.length; i++) {
-                if (i == markers[markersIndex]) {
-                    fullMessage.append('^');
-                    markersIndex++;
-                    
-                } else {
-                    fullMessage.append(' ');
-                }
-            }
-        }
-        return new ExpressionFormatException(fullMessage.toString());
+        return new CppExpressionFormatException(message, context.getExpressionString(),
+                marker - context.getExpressionStart(), stackTraces);
     }
     
 }
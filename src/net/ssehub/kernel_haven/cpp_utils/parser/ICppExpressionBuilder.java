@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.parser;
+
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Receives the elements of an expression from the {@link CppParser} while it parses, and builds a result from them.
+ * This allows to create the final representation (e.g. a {@link net.ssehub.kernel_haven.util.logic.Formula})
+ * directly, without creating a {@link net.ssehub.kernel_haven.cpp_utils.parser.ast.CppExpression} AST first.
+ * <p>
+ * The methods are called bottom-up: the operands of an operator or function call are always built before the
+ * operator or function call itself. Operands are built from left to right.
+ *
+ * @param <T> The type of the elements that this builder creates.
+ *
+ * @author Adam
+ */
+public interface ICppExpressionBuilder<T> {
+
+    /**
+     * Builds a variable.
+     *
+     * @param name The name of the variable.
+     *
+     * @return The element for the variable.
+     *
+     * @throws ExpressionFormatException If the variable is not allowed.
+     */
+    public T variable(@NonNull String name) throws ExpressionFormatException;
+
+    /**
+     * Builds a number literal.
+     *
+     * @param value The value of the literal.
+     *
+     * @return The element for the literal.
+     *
+     * @throws ExpressionFormatException If the literal is not allowed.
+     */
+    public T literal(@NonNull Number value) throws ExpressionFormatException;
+
+    /**
+     * Builds a function call.
+     *
+     * @param name The name of the called function.
+     * @param argument The argument of the function call. <code>null</code> if the function is called without
+     *      arguments.
+     *
+     * @return The element for the function call.
+     *
+     * @throws ExpressionFormatException If the function call is not allowed.
+     */
+    public T functionCall(@NonNull String name, @Nullable T argument) throws ExpressionFormatException;
+
+    /**
+     * Builds a unary operator. This is also called for the postfix operators ++ and --.
+     *
+     * @param operator The unary operator.
+     * @param operand The operand of the operator.
+     *
+     * @return The element for the operator.
+     *
+     * @throws ExpressionFormatException If the operator is not allowed.
+     */
+    public T unaryOperator(@NonNull CppOperator operator, T operand) throws ExpressionFormatException;
+
+    /**
+     * Builds a binary operator.
+     *
+     * @param operator The binary operator.
+     * @param leftSide The left operand of the operator.
+     * @param rightSide The right operand of the operator.
+     *
+     * @return The element for the operator.
+     *
+     * @throws ExpressionFormatException If the operator is not allowed.
+     */
+    public T binaryOperator(@NonNull CppOperator operator, T leftSide, T rightSide)
+            throws ExpressionFormatException;
+
+}
@@ -15,17 +15,24 @@
  */
 package net.ssehub.kernel_haven.cpp_utils.parser;
 
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
 import net.ssehub.kernel_haven.util.null_checks.Nullable;
 
 /**
- * An identifier token.
+ * An identifier token. The token only stores a span (start position and length) inside the source buffer of the
+ * lexer; the name {@link String} is created lazily the first time it is requested.
  *
  * @author Adam
  */
 final class IdentifierToken extends CppToken {
 
-    private @NonNull String name;
+    private char @Nullable [] source;
+    
+    private int length;
+    
+    private @Nullable String name;
     
     /**
      * Creates a new identifier token.
@@ -36,48 +43,60 @@ final class IdentifierToken extends CppToken {
     public IdentifierToken(int pos, @NonNull String name) {
         super(pos);
         this.name = name;
+        this.length = name.length();
     }
     
     /**
-     * Returns the name of this identifier.
+     * Creates a new identifier token that spans the given characters of the source buffer. The buffer must not be
+     * modified while this token is in use.
      * 
-     * @return The name of this identifier.
+     * @param source The source buffer that the lexer works on.
+     * @param pos The position inside the expression where this tokens starts.
+     * @param length The number of characters of this identifier.
      */
-    public @NonNull String getName() {
-        return name;
+    public IdentifierToken(char @NonNull [] source, int pos, int length) {
+        super(pos);
+        this.source = source;
+        this.length = length;
     }
     
     /**
-     * Overrides the name of this identifier.
+     * Returns the name of this identifier. The name is created on the first call of this method.
      * 
-     * @param name The new name of this identifier.
+     * @return The name of this identifier.
      */
-    public void setName(@NonNull String name) {
-        this.name = name;
+    public @NonNull String getName() {
+        String name = this.name;
+        if (name == null) {
+            name = new String(notNull(source), getPos(), length);
+            this.name = name;
+            this.source = null; // no need to keep the buffer alive anymore
+        }
+        return name;
     }
     
     @Override
     public @NonNull String toString() {
-        return "Identifier('" + name + "' pos=" + getPos() + ")";
+        return "Identifier('" + getName() + "' pos=" + getPos() + ")";
     }
 
     @Override
     public int getLength() {
-        return name.length();
+        return length;
     }
     
     @Override
     public boolean equals(@Nullable Object obj) {
         boolean equal = super.equals(obj);
         if (equal && obj instanceof IdentifierToken) {
-            equal = ((IdentifierToken) obj).name.equals(this.name);
+            equal = ((IdentifierToken) obj).getName().equals(this.getName());
         }
         return equal;
     }
     
     @Override
     public int hashCode() {
-        return super.hashCode() + name.hashCode();
+        return super.hashCode() + getName().hashCode();
     }
 
 }
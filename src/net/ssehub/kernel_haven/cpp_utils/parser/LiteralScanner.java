@@ -0,0 +1,221 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.parser;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Scans C number literals from a range of characters, without creating strings or boxed numbers. Supported are:
+ * <ul>
+ *      <li>decimal (<code>10</code>), hexadecimal (<code>0x0A</code>), octal (<code>012</code>) and binary
+ *      (<code>0b1010</code>) integer literals,</li>
+ *      <li>the integer suffixes <code>U</code>, <code>L</code>, <code>LL</code>, <code>UL</code>, <code>LU</code>,
+ *      <code>ULL</code> and <code>LLU</code> (in any case),</li>
+ *      <li>floating point literals; these are parsed with {@link Double#parseDouble(String)}, since they are rare.
+ *      Floating point values without a fractional part are turned into integer literals.</li>
+ * </ul>
+ * Integer literals have to fit into a (signed) <code>long</code>.
+ *
+ * @author Adam
+ */
+final class LiteralScanner {
+    
+    /**
+     * Don't allow any instances.
+     */
+    private LiteralScanner() {
+    }
+    
+    /**
+     * Scans the number literal in the given range, and adds it to the given token buffer.
+     *
+     * @param chars The characters that contain the literal.
+     * @param start The index of the first character of the literal.
+     * @param end The index after the last character of the literal.
+     * @param tokens The buffer to add the literal token to.
+     *
+     * @return Whether the range is a valid literal. If not, no token is added.
+     */
+    static boolean scan(char @NonNull [] chars, int start, int end, @NonNull TokenBuffer tokens) {
+        int bodyEnd = stripIntegerSuffix(chars, start, end);
+        int length = bodyEnd - start;
+        
+        int digitsStart = start;
+        int radix = 10;
+        if (length > 2 && chars[start] == '0' && (chars[start + 1] == 'x' || chars[start + 1] == 'X')) {
+            digitsStart = start + 2;
+            radix = 16;
+        } else if (length > 2 && chars[start] == '0' && (chars[start + 1] == 'b' || chars[start + 1] == 'B')) {
+            digitsStart = start + 2;
+            radix = 2;
+        } else if (length > 1 && chars[start] == '0') {
+            // C: a leading zero denotes an octal literal
+            digitsStart = start + 1;
+            radix = 8;
+        }
+        
+        boolean valid;
+        if (isIntegerLiteral(chars, digitsStart, bodyEnd, radix)) {
+            long value = parseInteger(chars, digitsStart, bodyEnd, radix);
+            valid = value >= 0;
+            if (valid) {
+                tokens.addLiteral(start, end - start, value);
+            }
+            
+        } else if (radix == 8 && isIntegerLiteral(chars, digitsStart, bodyEnd, 10)) {
+            // octal literal with the digits 8 or 9
+            valid = false;
+            
+        } else {
+            valid = addFloatingPoint(chars, start, bodyEnd, end, tokens);
+        }
+        
+        return valid;
+    }
+    
+    /**
+     * Finds the end of the literal without its integer suffix. Any number of <code>L</code>s and one <code>U</code>
+     * are removed, in both orders (e.g. <code>ULL</code> and <code>LLU</code>).
+     *
+     * @param chars The characters that contain the literal.
+     * @param start The index of the first character of the literal.
+     * @param end The index after the last character of the literal.
+     *
+     * @return The index after the last character of the literal without the suffix.
+     */
+    private static int stripIntegerSuffix(char @NonNull [] chars, int start, int end) {
+        int result = stripL(chars, start, end);
+        if (result > start && (chars[result - 1] == 'u' || chars[result - 1] == 'U')) {
+            result--;
+            if (result == end - 1) {
+                // the U was the last character, so the Ls may be in front of it
+                result = stripL(chars, start, result);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Removes any number of trailing <code>L</code>s.
+     *
+     * @param chars The characters that contain the literal.
+     * @param start The index of the first character of the literal.
+     * @param end The index after the last character of the literal.
+     *
+     * @return The index after the last character that is not an <code>L</code>.
+     */
+    private static int stripL(char @NonNull [] chars, int start, int end) {
+        int result = end;
+        while (result > start && (chars[result - 1] == 'l' || chars[result - 1] == 'L')) {
+            result--;
+        }
+        return result;
+    }
+    
+    /**
+     * Checks whether the given range only consists of digits of the given radix.
+     *
+     * @param chars The characters to check.
+     * @param start The index of the first character to check.
+     * @param end The index after the last character to check.
+     * @param radix The radix of the digits; at most 16.
+     *
+     * @return Whether the range is non-empty and only contains valid digits.
+     */
+    private static boolean isIntegerLiteral(char @NonNull [] chars, int start, int end, int radix) {
+        boolean result = start < end;
+        for (int i = start; i < end && result; i++) {
+            result = digit(chars[i]) < radix;
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the value of the given (hexadecimal) digit.
+     *
+     * @param c The digit character.
+     *
+     * @return The value of the digit; {@link Integer#MAX_VALUE} if the character is not a digit.
+     */
+    private static int digit(char c) {
+        int result;
+        if (c >= '0' && c <= '9') {
+            result = c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            result = c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            result = c - 'A' + 10;
+        } else {
+            result = Integer.MAX_VALUE;
+        }
+        return result;
+    }
+    
+    /**
+     * Computes the value of the given digits.
+     *
+     * @param chars The characters that contain the digits.
+     * @param start The index of the first digit.
+     * @param end The index after the last digit.
+     * @param radix The radix of the digits.
+     *
+     * @return The value; <code>-1</code> if it does not fit into a <code>long</code>.
+     */
+    private static long parseInteger(char @NonNull [] chars, int start, int end, int radix) {
+        long limit = Long.MAX_VALUE / radix;
+        long value = 0;
+        for (int i = start; i < end && value >= 0; i++) {
+            int digit = digit(chars[i]);
+            if (value > limit || value * radix > Long.MAX_VALUE - digit) {
+                value = -1;
+            } else {
+                value = value * radix + digit;
+            }
+        }
+        return value;
+    }
+    
+    /**
+     * Adds the floating point literal to the token buffer. If the value has no fractional part, an integer literal is
+     * added instead.
+     *
+     * @param chars The characters that contain the literal.
+     * @param start The index of the first character of the literal.
+     * @param bodyEnd The index after the last character of the literal, without the integer suffix.
+     * @param end The index after the last character of the literal.
+     * @param tokens The buffer to add the literal token to.
+     *
+     * @return Whether the range is a valid floating point literal. If not, no token is added.
+     */
+    private static boolean addFloatingPoint(char @NonNull [] chars, int start, int bodyEnd, int end,
+            @NonNull TokenBuffer tokens) {
+        
+        boolean valid = true;
+        try {
+            double value = Double.parseDouble(new String(chars, start, bodyEnd - start));
+            if (value == Math.floor(value) && !Double.isInfinite(value)) {
+                tokens.addLiteral(start, end - start, (long) value);
+            } else {
+                tokens.addLiteral(start, end - start, value);
+            }
+            
+        } catch (NumberFormatException e) {
+            valid = false;
+        }
+        return valid;
+    }
+    
+}
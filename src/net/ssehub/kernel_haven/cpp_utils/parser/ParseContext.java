@@ -0,0 +1,463 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.parser;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Scratch buffers for the {@link CppParser}. A context is re-used for many expressions, so that parsing does not need
+ * to allocate new buffers for each expression. The buffers only grow; they are never shrunk.
+ * <p>
+ * A context must not be used by more than one thread at the same time. {@link CppParser#parse(CharSequence)} uses
+ * one context per thread; callers that manage their own threads can create their own context and pass it to
+ * {@link CppParser#parse(CharSequence, int, int, ICppExpressionBuilder, ParseContext)}.
+ *
+ * @author Adam
+ */
+public final class ParseContext {
+    
+    /**
+     * Operator stack entry for a binary operator. The value is the ordinal of the {@link CppOperator}.
+     */
+    static final int BINARY_OPERATOR = 0;
+    
+    /**
+     * Operator stack entry for a prefix unary operator. The value is the ordinal of the {@link CppOperator}.
+     */
+    static final int PREFIX_OPERATOR = 1;
+    
+    /**
+     * Operator stack entry for an opening bracket. The value is the index of the bracket token.
+     */
+    static final int BRACKET = 2;
+    
+    /**
+     * Operator stack entry for the opening bracket of a function call. The value is the index of the token with the
+     * function name.
+     */
+    static final int FUNCTION_BRACKET = 3;
+    
+    /**
+     * The character that non-ASCII bytes are shown as in {@link #getExpressionString()}.
+     */
+    private static final char NON_ASCII = '?';
+    
+    private char @NonNull [] chars;
+    
+    private char @NonNull [] expression;
+    
+    private int expressionStart;
+    
+    private int expressionEnd;
+    
+    private @Nullable CharSequence source;
+    
+    private int sourceStart;
+    
+    /**
+     * Whether the current expression was set by {@link #setExpression(ByteBuffer, int, int)}.
+     */
+    private boolean byteSource;
+    
+    /**
+     * The byte buffer that the current expression was set from by {@link #setExpression(ByteBuffer, int, int)};
+     * <code>null</code> otherwise. The lexer scans this directly, word by word (see {@link CharacterClasses}).
+     */
+    private @Nullable ByteBuffer bytes;
+    
+    /**
+     * The absolute index of the first byte of the current expression in {@link #bytes}.
+     */
+    private int bytesStart;
+    
+    private final @NonNull TokenBuffer tokens;
+    
+    private final @NonNull TokenCursor cursor;
+    
+    private int @NonNull [] operatorTypes;
+    
+    private int @NonNull [] operatorValues;
+    
+    private int operatorStackSize;
+    
+    private @Nullable Object @NonNull [] operands;
+    
+    private int operandStackSize;
+    
+    private boolean inUse;
+    
+    /**
+     * Creates a new, empty context.
+     */
+    public ParseContext() {
+        this.chars = new char[128];
+        this.expression = chars;
+        this.tokens = new TokenBuffer();
+        this.cursor = new TokenCursor(this, tokens);
+        this.operatorTypes = new int[16];
+        this.operatorValues = new int[16];
+        this.operands = new Object[16];
+    }
+    
+    /**
+     * Returns whether a parser currently uses this context.
+     * 
+     * @return Whether this context is in use.
+     */
+    boolean isInUse() {
+        return inUse;
+    }
+    
+    /**
+     * Marks this context as used or no longer used by a parser.
+     * 
+     * @param inUse Whether a parser uses this context.
+     */
+    void setInUse(boolean inUse) {
+        this.inUse = inUse;
+    }
+    
+    /**
+     * Sets the expression that is currently parsed, and returns its characters. If the expression is a
+     * {@link CharBuffer} with an accessible backing array, that array is returned, so that the expression is parsed in
+     * place. Otherwise, the characters are copied into the character buffer of this context.
+     * 
+     * @param source The character sequence that contains the expression.
+     * @param start The index of the first character of the expression in <code>source</code>.
+     * @param end The index after the last character of the expression in <code>source</code>.
+     * 
+     * @return The characters of the expression. The expression is located between {@link #getExpressionStart()}
+     *      and {@link #getExpressionEnd()} in this array.
+     */
+    char @NonNull [] setExpression(@NonNull CharSequence source, int start, int end) {
+        if (start < 0 || end > source.length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + source.length());
+        }
+        
+        this.source = source;
+        this.sourceStart = start;
+        this.byteSource = false;
+        this.bytes = null;
+        int length = end - start;
+        
+        if (source instanceof CharBuffer && ((CharBuffer) source).hasArray()) {
+            CharBuffer buffer = (CharBuffer) source;
+            expression = notNull(buffer.array());
+            expressionStart = buffer.arrayOffset() + buffer.position() + start;
+            
+        } else {
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            if (source instanceof String) {
+                ((String) source).getChars(start, end, chars, 0);
+            } else if (source instanceof StringBuilder) {
+                ((StringBuilder) source).getChars(start, end, chars, 0);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    chars[i] = source.charAt(start + i);
+                }
+            }
+            expression = chars;
+            expressionStart = 0;
+        }
+        expressionEnd = expressionStart + length;
+        
+        return expression;
+    }
+    
+    /**
+     * Sets the expression that is currently parsed to an ASCII range of the given byte buffer, and returns its
+     * characters. The bytes are widened into the character buffer of this context; no {@link java.nio.charset.Charset}
+     * decoding is done. Bytes that are not ASCII keep their value (<code>0x80</code> to <code>0xFF</code>), which the
+     * lexer rejects as an invalid character (see {@link #describeCharacter(int)}).
+     * 
+     * @param source The byte buffer that contains the expression. Its position and limit are not modified.
+     * @param start The absolute index of the first byte of the expression in <code>source</code>.
+     * @param end The absolute index after the last byte of the expression in <code>source</code>.
+     * 
+     * @return The characters of the expression. The expression is located between {@link #getExpressionStart()}
+     *      and {@link #getExpressionEnd()} in this array.
+     */
+    char @NonNull [] setExpression(@NonNull ByteBuffer source, int start, int end) {
+        if (start < 0 || end > source.limit() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", limit " + source.limit());
+        }
+        
+        this.source = null;
+        this.byteSource = true;
+        this.bytes = source;
+        this.bytesStart = start;
+        int length = end - start;
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        
+        if (source.hasArray()) {
+            byte[] bytes = source.array();
+            int offset = source.arrayOffset() + start;
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (bytes[offset + i] & 0xFF);
+            }
+        } else {
+            // direct buffers, e.g. a MappedByteBuffer
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (source.get(start + i) & 0xFF);
+            }
+        }
+        
+        expression = chars;
+        expressionStart = 0;
+        expressionEnd = length;
+        
+        return expression;
+    }
+    
+    /**
+     * Finds the end of the run of identifier characters in the current expression that starts at the given position.
+     * For an expression from a {@link ByteBuffer}, the bytes are scanned word by word.
+     * 
+     * @param expr The characters of the current expression, as returned by
+     *      {@link #setExpression(CharSequence, int, int)} or {@link #setExpression(ByteBuffer, int, int)}.
+     * @param start The position in <code>expr</code> to start at.
+     * 
+     * @return The position in <code>expr</code> after the run; see
+     *      {@link CharacterClasses#identifierEnd(char[], int, int)}.
+     */
+    int identifierEnd(char @NonNull [] expr, int start) {
+        ByteBuffer bytes = this.bytes;
+        int result;
+        if (bytes != null) {
+            int offset = bytesStart - expressionStart;
+            result = CharacterClasses.identifierEnd(bytes, start + offset, expressionEnd + offset) - offset;
+        } else {
+            result = CharacterClasses.identifierEnd(expr, start, expressionEnd);
+        }
+        return result;
+    }
+    
+    /**
+     * Finds the end of the run of whitespace characters in the current expression that starts at the given position.
+     * For an expression from a {@link ByteBuffer}, the bytes are scanned word by word.
+     * 
+     * @param expr The characters of the current expression, as returned by
+     *      {@link #setExpression(CharSequence, int, int)} or {@link #setExpression(ByteBuffer, int, int)}.
+     * @param start The position in <code>expr</code> to start at.
+     * 
+     * @return The position in <code>expr</code> after the run; see
+     *      {@link CharacterClasses#whitespaceEnd(char[], int, int)}.
+     */
+    int whitespaceEnd(char @NonNull [] expr, int start) {
+        ByteBuffer bytes = this.bytes;
+        int result;
+        if (bytes != null) {
+            int offset = bytesStart - expressionStart;
+            result = CharacterClasses.whitespaceEnd(bytes, start + offset, expressionEnd + offset) - offset;
+        } else {
+            result = CharacterClasses.whitespaceEnd(expr, start, expressionEnd);
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the index of the first character of the current expression in the array returned by
+     * {@link #setExpression(CharSequence, int, int)} or {@link #setExpression(ByteBuffer, int, int)}.
+     * 
+     * @return The start index of the expression.
+     */
+    int getExpressionStart() {
+        return expressionStart;
+    }
+    
+    /**
+     * Returns the index after the last character of the current expression in the array returned by
+     * {@link #setExpression(CharSequence, int, int)} or {@link #setExpression(ByteBuffer, int, int)}.
+     * 
+     * @return The end index of the expression.
+     */
+    int getExpressionEnd() {
+        return expressionEnd;
+    }
+    
+    /**
+     * Creates a string of the current expression. This is only needed for exception messages, so it is not done
+     * while parsing. For an expression from a {@link ByteBuffer}, each byte that is not ASCII is shown as
+     * {@link #NON_ASCII}, so that the positions in the string are still the byte offsets of the expression.
+     * 
+     * @return The current expression as a string.
+     */
+    @NonNull String getExpressionString() {
+        CharSequence source = this.source;
+        String result;
+        if (source != null) {
+            result = source.subSequence(sourceStart, sourceStart + expressionEnd - expressionStart).toString();
+            
+        } else if (byteSource) {
+            char[] shown = Arrays.copyOfRange(expression, expressionStart, expressionEnd);
+            for (int i = 0; i < shown.length; i++) {
+                if (shown[i] >= 128) {
+                    shown[i] = NON_ASCII;
+                }
+            }
+            result = new String(shown);
+            
+        } else {
+            result = new String(expression, expressionStart, expressionEnd - expressionStart);
+        }
+        return notNull(result);
+    }
+    
+    /**
+     * Describes a character of the current expression for an exception message. A byte that is not ASCII in an
+     * expression from a {@link ByteBuffer} is shown as its hexadecimal value (e.g. <code>0xC3</code>), since it is not
+     * a character on its own; all other characters are shown in single quotes.
+     * 
+     * @param index The index of the character in the array returned by {@link #setExpression(CharSequence, int, int)}
+     *      or {@link #setExpression(ByteBuffer, int, int)}.
+     * 
+     * @return The description of the character.
+     */
+    @NonNull String describeCharacter(int index) {
+        char c = expression[index];
+        String result;
+        if (byteSource && c >= 128) {
+            result = String.format("0x%02X", (int) c);
+        } else {
+            result = "'" + c + "'";
+        }
+        return notNull(result);
+    }
+    
+    /**
+     * Marks this context as no longer used by a parser. This clears the stacks and drops the references to the
+     * current expression, so that this (long living) context does not keep the last result or (possibly large) buffers
+     * of the caller alive.
+     */
+    void release() {
+        clearStacks();
+        cursor.release();
+        source = null;
+        bytes = null;
+        expression = chars;
+        inUse = false;
+    }
+    
+    /**
+     * Returns the token cursor of this context, started at the beginning of the current expression. The token buffer
+     * of the cursor is cleared.
+     * 
+     * @param lexer The parser that lexes the single tokens.
+     * @param expr The characters that contain the current expression (see
+     *      {@link #setExpression(CharSequence, int, int)}).
+     * 
+     * @return The token cursor for the current expression.
+     */
+    @NonNull TokenCursor startCursor(@NonNull CppParser lexer, char @NonNull [] expr) {
+        cursor.reset(lexer, expr);
+        return cursor;
+    }
+    
+    /**
+     * Clears the operator and operand stacks. This also drops the references to the operands, so that the context does
+     * not keep the elements of the last result alive.
+     */
+    void clearStacks() {
+        operatorStackSize = 0;
+        Arrays.fill(operands, 0, operandStackSize, null);
+        operandStackSize = 0;
+    }
+    
+    /**
+     * Pushes an entry on the operator stack.
+     * 
+     * @param type The type of the entry; one of the constants in this class.
+     * @param value The value of the entry; the meaning depends on the type.
+     */
+    void pushOperator(int type, int value) {
+        if (operatorStackSize == operatorTypes.length) {
+            operatorTypes = notNull(Arrays.copyOf(operatorTypes, operatorStackSize * 2));
+            operatorValues = notNull(Arrays.copyOf(operatorValues, operatorStackSize * 2));
+        }
+        operatorTypes[operatorStackSize] = type;
+        operatorValues[operatorStackSize] = value;
+        operatorStackSize++;
+    }
+    
+    /**
+     * Returns the type of the top entry of the operator stack.
+     * 
+     * @return The type of the top entry, or <code>-1</code> if the operator stack is empty.
+     */
+    int peekOperatorType() {
+        return operatorStackSize > 0 ? operatorTypes[operatorStackSize - 1] : -1;
+    }
+    
+    /**
+     * Returns the value of the top entry of the operator stack. The operator stack must not be empty.
+     * 
+     * @return The value of the top entry.
+     */
+    int peekOperatorValue() {
+        return operatorValues[operatorStackSize - 1];
+    }
+    
+    /**
+     * Removes the top entry of the operator stack. The operator stack must not be empty.
+     */
+    void popOperator() {
+        operatorStackSize--;
+    }
+    
+    /**
+     * Returns the number of entries on the operator stack.
+     * 
+     * @return The size of the operator stack.
+     */
+    int getOperatorStackSize() {
+        return operatorStackSize;
+    }
+    
+    /**
+     * Pushes an operand on the operand stack. Operands are the elements created by an {@link ICppExpressionBuilder}.
+     * 
+     * @param operand The operand to push.
+     */
+    void pushOperand(@Nullable Object operand) {
+        if (operandStackSize == operands.length) {
+            operands = notNull(Arrays.copyOf(operands, operandStackSize * 2));
+        }
+        operands[operandStackSize++] = operand;
+    }
+    
+    /**
+     * Removes and returns the top operand of the operand stack. The operand stack must not be empty.
+     * 
+     * @return The top operand.
+     */
+    @Nullable Object popOperand() {
+        Object result = operands[--operandStackSize];
+        operands[operandStackSize] = null;
+        return result;
+    }
+    
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.parser;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.util.Arrays;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A thread-safe table that interns identifier names. Each distinct name gets a dense <code>int</code> ID (starting at
+ * 0) and one canonical {@link String} instance. The lexer of the {@link CppParser} interns all identifiers here, so
+ * all variables with the same name share one string, and downstream code can index variables by their ID.
+ * <p>
+ * Lookups of names that are already in the table do not lock, and lookups of character spans do not create a
+ * string. Only adding a new name is synchronized.
+ * <p>
+ * Single names are never removed from the table. The {@link #GLOBAL} table is used by the parsers of this plugin;
+ * while the number of distinct identifiers in one code base (e.g. <code>CONFIG_*</code> variables) is limited, a
+ * long-running process that analyzes many code bases should call {@link #clear()} between them, so that the table
+ * does not keep growing. Each clear starts a new generation of IDs (see {@link #getGeneration()}); IDs of an older
+ * generation must not be used anymore.
+ *
+ * @author Adam
+ */
+public final class SymbolTable {
+
+    /**
+     * The table that is used by the {@link CppParser} and the condition parsers.
+     */
+    public static final @NonNull SymbolTable GLOBAL = new SymbolTable("defined");
+
+    private static final int INITIAL_TABLE_SIZE = 1024;
+
+    private static final int INITIAL_NAMES_SIZE = 512;
+
+    /**
+     * An entry of the hash table. Immutable, so that it can be read without locking.
+     */
+    private static final class Symbol {
+
+        private final @NonNull String name;
+
+        private final int hash;
+
+        private final int id;
+
+        /**
+         * Creates a new symbol.
+         *
+         * @param name The canonical name.
+         * @param hash The hash of the name (same as {@link String#hashCode()}).
+         * @param id The ID of the symbol.
+         */
+        Symbol(@NonNull String name, int hash, int id) {
+            this.name = name;
+            this.hash = hash;
+            this.id = id;
+        }
+
+    }
+
+    /**
+     * The hash table with open addressing (linear probing). Its length is always a power of two. Only replaced (or
+     * modified) while holding the lock; the volatile write after each modification publishes the new entry.
+     */
+    private volatile @Nullable Symbol @NonNull [] table;
+
+    /**
+     * The names indexed by their ID. Only modified while holding the lock.
+     */
+    private volatile @Nullable String @NonNull [] names;
+
+    private int size;
+
+    /**
+     * The number of names that are kept by {@link #clear()}. These names have the lowest IDs.
+     */
+    private final int permanentSize;
+
+    /**
+     * The number of times that this table was cleared. Only modified while holding the lock.
+     */
+    private volatile int generation;
+
+    /**
+     * Creates a new, empty symbol table. Usually, the {@link #GLOBAL} table should be used instead.
+     */
+    public SymbolTable() {
+        this(new @NonNull String[0]);
+    }
+
+    /**
+     * Creates a new symbol table that contains the given names. These names are kept by {@link #clear()}, with the
+     * same IDs and canonical instances; thus, their IDs may be stored in constants.
+     *
+     * @param permanentNames The names that are never removed from this table. They get the IDs 0, 1, etc. (unless
+     *      a name is given twice).
+     */
+    public SymbolTable(@NonNull String @NonNull ... permanentNames) {
+        this.table = new Symbol[INITIAL_TABLE_SIZE];
+        this.names = new String[INITIAL_NAMES_SIZE];
+        for (String name : permanentNames) {
+            lookup(name);
+        }
+        this.permanentSize = size;
+    }
+
+    /**
+     * Returns the ID of the name in the given span of characters. The name is added to this table, if it is not
+     * already present; a string is only created in that case.
+     *
+     * @param chars The characters that contain the name.
+     * @param start The index of the first character of the name.
+     * @param length The number of characters of the name.
+     *
+     * @return The ID of the name.
+     */
+    public int getId(char @NonNull [] chars, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        Symbol symbol = find(chars, start, length, hash);
+        if (symbol == null) {
+            symbol = add(new String(chars, start, length), hash);
+        }
+        return symbol.id;
+    }
+
+    /**
+     * Returns the ID of the given name. The name is added to this table, if it is not already present.
+     *
+     * @param name The name.
+     *
+     * @return The ID of the name.
+     */
+    public int getId(@NonNull String name) {
+        return lookup(name).id;
+    }
+
+    /**
+     * Returns the canonical instance of the given name. The name is added to this table, if it is not already
+     * present; in that case, the given string becomes the canonical instance.
+     *
+     * @param name The name.
+     *
+     * @return The canonical string that is equal to the given name.
+     */
+    public @NonNull String intern(@NonNull String name) {
+        return lookup(name).name;
+    }
+
+    /**
+     * Returns the canonical name for the given ID.
+     *
+     * @param id The ID of the name, as returned by one of the <code>getId()</code> methods of this table.
+     *
+     * @return The canonical name.
+     *
+     * @throws IllegalArgumentException If the ID is not known to this table.
+     */
+    public @NonNull String getName(int id) {
+        String result = getNameUnsynchronized(id);
+        if (result == null) {
+            // the ID may have been read from an entry that was not published to this thread, yet
+            synchronized (this) {
+                result = getNameUnsynchronized(id);
+            }
+        }
+        if (result == null) {
+            throw new IllegalArgumentException("Unknown symbol ID: " + id);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the name for the given ID, without locking.
+     *
+     * @param id The ID of the name.
+     *
+     * @return The name; <code>null</code> if the ID is not (yet visibly) in this table.
+     */
+    private @Nullable String getNameUnsynchronized(int id) {
+        @Nullable String[] names = this.names;
+        return id >= 0 && id < names.length ? names[id] : null;
+    }
+
+    /**
+     * Returns the number of names in this table. This is also the smallest ID that is not used yet.
+     *
+     * @return The number of names.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the generation of the IDs in this table. It starts at 0 and is incremented by each {@link #clear()}.
+     * Code that stores IDs can remember the generation, to detect that its IDs are outdated.
+     *
+     * @return The current generation.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Removes all names from this table, except the names that were given to the constructor. This starts a new
+     * generation (see {@link #getGeneration()}): names added afterwards re-use the IDs of the removed names, so IDs of
+     * the old generation must not be used anymore. For the {@link #GLOBAL} table, this means that
+     * {@link CompactExpression}s (and thus {@link net.ssehub.kernel_haven.cpp_utils.ParsedCondition}s) created
+     * before can not be read anymore; the caches of derived variables of the condition parsers are cleared
+     * automatically.
+     * <p>
+     * This must not be called while other threads use this table (e.g. while conditions are parsed).
+     */
+    public synchronized void clear() {
+        @Nullable String[] oldNames = this.names;
+        this.table = new Symbol[INITIAL_TABLE_SIZE];
+        this.names = new String[INITIAL_NAMES_SIZE];
+        this.size = 0;
+        for (int i = 0; i < permanentSize; i++) {
+            lookup(notNull(oldNames[i]));
+        }
+        generation++;
+    }
+
+    /**
+     * Finds or adds the symbol for the given name.
+     *
+     * @param name The name.
+     *
+     * @return The symbol of the name.
+     */
+    private @NonNull Symbol lookup(@NonNull String name) {
+        int hash = name.hashCode();
+        Symbol result = find(this.table, name, hash);
+        if (result == null) {
+            result = add(name, hash);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the symbol for the given name in the given table, without locking.
+     *
+     * @param table The hash table to search in.
+     * @param name The name.
+     * @param hash The hash of the name.
+     *
+     * @return The symbol; <code>null</code> if the name is not (yet visibly) in the table.
+     */
+    private static @Nullable Symbol find(@Nullable Symbol @NonNull [] table, @NonNull String name, int hash) {
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        Symbol symbol = table[slot];
+        while (symbol != null && (symbol.hash != hash || !symbol.name.equals(name))) {
+            slot = (slot + 1) & mask;
+            symbol = table[slot];
+        }
+        return symbol;
+    }
+
+    /**
+     * Finds the symbol for the name in the given span of characters, without locking.
+     *
+     * @param chars The characters that contain the name.
+     * @param start The index of the first character of the name.
+     * @param length The number of characters of the name.
+     * @param hash The hash of the name.
+     *
+     * @return The symbol; <code>null</code> if the name is not (yet visibly) in this table.
+     */
+    private @Nullable Symbol find(char @NonNull [] chars, int start, int length, int hash) {
+        @Nullable Symbol[] table = this.table;
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        Symbol symbol = table[slot];
+        while (symbol != null && (symbol.hash != hash || !contentEquals(symbol.name, chars, start, length))) {
+            slot = (slot + 1) & mask;
+            symbol = table[slot];
+        }
+        return symbol;
+    }
+
+    /**
+     * Adds the given name to this table, if no other thread added it in the meantime.
+     *
+     * @param name The name to add.
+     * @param hash The hash of the name.
+     *
+     * @return The symbol of the name.
+     */
+    private synchronized @NonNull Symbol add(@NonNull String name, int hash) {
+        @Nullable Symbol[] table = this.table;
+        Symbol result = find(table, name, hash);
+        if (result == null) {
+            if ((size + 1) * 4 > table.length * 3) {
+                table = resize(table);
+            }
+
+            @Nullable String[] names = this.names;
+            if (size == names.length) {
+                names = notNull(Arrays.copyOf(names, size * 2));
+            }
+            names[size] = name;
+            this.names = names;
+
+            result = new Symbol(name, hash, size);
+            int mask = table.length - 1;
+            int slot = spread(hash) & mask;
+            while (table[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = result;
+            size++;
+            // the volatile write publishes the new entry (and the name) to threads that read the table afterwards
+            this.table = table;
+        }
+        return result;
+    }
+
+    /**
+     * Creates a table with twice the size, containing all entries of the given table.
+     *
+     * @param table The old table.
+     *
+     * @return The new table.
+     */
+    private static @Nullable Symbol @NonNull [] resize(@Nullable Symbol @NonNull [] table) {
+        @Nullable Symbol[] result = new Symbol[table.length * 2];
+        int mask = result.length - 1;
+        for (Symbol symbol : table) {
+            if (symbol != null) {
+                int slot = spread(symbol.hash) & mask;
+                while (result[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                result[slot] = symbol;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Spreads the higher bits of the hash to the lower ones, since the table index only uses the lower bits.
+     *
+     * @param hash The hash.
+     *
+     * @return The spread hash.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Checks whether the given string has the same characters as the given span.
+     *
+     * @param name The string to compare.
+     * @param chars The characters that contain the span.
+     * @param start The index of the first character of the span.
+     * @param length The number of characters of the span.
+     *
+     * @return Whether the characters are equal.
+     */
+    private static boolean contentEquals(@NonNull String name, char @NonNull [] chars, int start, int length) {
+        boolean result = name.length() == length;
+        for (int i = 0; result && i < length; i++) {
+            result = name.charAt(i) == chars[start + i];
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.parser;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.util.Arrays;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * A growable buffer of tokens, stored as parallel primitive arrays (one entry per token in each array). This is used
+ * by the lexer of the {@link CppParser} instead of one {@link CppToken} object per token. The buffer can be
+ * {@link #clear() cleared} and re-used for the next expression, so that lexing does not allocate anything once the
+ * arrays are large enough.
+ * <p>
+ * Outside of this package, a buffer is only read: it is returned by {@link TokenCursor#getTokens()}, and its tokens
+ * are addressed by the indices that the cursor returns. Only the lexer adds tokens.
+ *
+ * @author Adam
+ */
+public final class TokenBuffer {
+    
+    /**
+     * Token kind of an opening bracket.
+     */
+    public static final int OPENING_BRACKET = 0;
+    
+    /**
+     * Token kind of a closing bracket.
+     */
+    public static final int CLOSING_BRACKET = 1;
+    
+    /**
+     * Token kind of an identifier. The name is the span described by start and length in the source buffer. The value
+     * stores the ID of the name in the {@link SymbolTable#GLOBAL} symbol table (see {@link #getSymbol(int)}).
+     */
+    public static final int IDENTIFIER = 2;
+    
+    /**
+     * Token kind of an operator. The value stores the ordinal of the {@link CppOperator}.
+     */
+    public static final int OPERATOR = 3;
+    
+    /**
+     * Token kind of an integer literal. The value stores the literal value.
+     */
+    public static final int LITERAL_LONG = 4;
+    
+    /**
+     * Token kind of a floating point literal. The value stores the raw bits of the double value.
+     */
+    public static final int LITERAL_DOUBLE = 5;
+    
+    private static final @NonNull CppOperator @NonNull [] OPERATORS = CppOperator.values();
+    
+    private int @NonNull [] kinds;
+    
+    private int @NonNull [] starts;
+    
+    private int @NonNull [] lengths;
+    
+    private long @NonNull [] values;
+    
+    private int size;
+    
+    /**
+     * Creates a new, empty token buffer.
+     */
+    TokenBuffer() {
+        kinds = new int[32];
+        starts = new int[32];
+        lengths = new int[32];
+        values = new long[32];
+    }
+    
+    /**
+     * Removes all tokens from this buffer. The allocated arrays are kept for the next expression.
+     */
+    void clear() {
+        size = 0;
+    }
+    
+    /**
+     * Returns the number of tokens in this buffer.
+     * 
+     * @return The number of tokens.
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the kind of the given token.
+     * 
+     * @param index The index of the token.
+     * 
+     * @return The kind of the token; one of the constants in this class.
+     */
+    public int getKind(int index) {
+        return kinds[index];
+    }
+    
+    /**
+     * Returns the position where the given token starts, as an index in the character array that the expression is
+     * lexed from. {@link TokenCursor#getPosition(int)} returns the position relative to the start of the expression.
+     * 
+     * @param index The index of the token.
+     * 
+     * @return The start position of the token.
+     */
+    int getStart(int index) {
+        return starts[index];
+    }
+    
+    /**
+     * Returns the length of the given token in the expression.
+     * 
+     * @param index The index of the token.
+     * 
+     * @return The length of the token.
+     */
+    public int getLength(int index) {
+        return lengths[index];
+    }
+    
+    /**
+     * Returns the symbol ID of the given {@link #IDENTIFIER} token.
+     * 
+     * @param index The index of the token.
+     * 
+     * @return The ID of the name of the identifier in the {@link SymbolTable#GLOBAL} symbol table.
+     */
+    public int getSymbol(int index) {
+        return (int) values[index];
+    }
+    
+    /**
+     * Returns the operator of the given {@link #OPERATOR} token.
+     * 
+     * @param index The index of the token.
+     * 
+     * @return The operator of the token.
+     */
+    public @NonNull CppOperator getOperator(int index) {
+        return notNull(OPERATORS[(int) values[index]]);
+    }
+    
+    /**
+     * Returns the value of the given {@link #LITERAL_LONG} token.
+     * 
+     * @param index The index of the token.
+     * 
+     * @return The value of the literal.
+     */
+    public long getLongValue(int index) {
+        return values[index];
+    }
+    
+    /**
+     * Returns the value of the given {@link #LITERAL_DOUBLE} token.
+     * 
+     * @param index The index of the token.
+     * 
+     * @return The value of the literal.
+     */
+    public double getDoubleValue(int index) {
+        return Double.longBitsToDouble(values[index]);
+    }
+    
+    /**
+     * Returns the value of the given {@link #LITERAL_LONG} or {@link #LITERAL_DOUBLE} token as a boxed number.
+     * 
+     * @param index The index of the token.
+     * 
+     * @return The value of the literal; either a {@link Long} or a {@link Double}.
+     */
+    public @NonNull Number getLiteralValue(int index) {
+        Number result;
+        if (kinds[index] == LITERAL_LONG) {
+            result = getLongValue(index);
+        } else {
+            result = getDoubleValue(index);
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the kind of the last token in this buffer.
+     * 
+     * @return The kind of the last token, or <code>-1</code> if this buffer is empty.
+     */
+    public int getLastKind() {
+        return size > 0 ? kinds[size - 1] : -1;
+    }
+    
+    /**
+     * Adds a bracket token.
+     * 
+     * @param pos The position of the bracket in the expression.
+     * @param closing Whether this is a closing (<code>true</code>) or opening (<code>false</code>) bracket.
+     */
+    void addBracket(int pos, boolean closing) {
+        add(closing ? CLOSING_BRACKET : OPENING_BRACKET, pos, 1, 0);
+    }
+    
+    /**
+     * Adds an identifier token.
+     * 
+     * @param start The position in the expression where the identifier starts.
+     * @param length The length of the identifier.
+     * @param symbol The ID of the name of the identifier in the {@link SymbolTable#GLOBAL} symbol table.
+     */
+    void addIdentifier(int start, int length, int symbol) {
+        add(IDENTIFIER, start, length, symbol);
+    }
+    
+    /**
+     * Adds an operator token.
+     * 
+     * @param pos The position of the operator in the expression.
+     * @param operator The operator.
+     */
+    void addOperator(int pos, @NonNull CppOperator operator) {
+        add(OPERATOR, pos, operator.getSymbol().length(), operator.ordinal());
+    }
+    
+    /**
+     * Adds an integer literal token.
+     * 
+     * @param start The position in the expression where the literal starts.
+     * @param length The length of the literal in the expression.
+     * @param value The value of the literal.
+     */
+    void addLiteral(int start, int length, long value) {
+        add(LITERAL_LONG, start, length, value);
+    }
+    
+    /**
+     * Adds a floating point literal token.
+     * 
+     * @param start The position in the expression where the literal starts.
+     * @param length The length of the literal in the expression.
+     * @param value The value of the literal.
+     */
+    void addLiteral(int start, int length, double value) {
+        add(LITERAL_DOUBLE, start, length, Double.doubleToRawLongBits(value));
+    }
+    
+    /**
+     * Adds a token, growing the arrays if necessary.
+     * 
+     * @param kind The kind of the token.
+     * @param start The start position of the token.
+     * @param length The length of the token.
+     * @param value The value of the token.
+     */
+    private void add(int kind, int start, int length, long value) {
+        if (size == kinds.length) {
+            int newCapacity = size * 2;
+            kinds = notNull(Arrays.copyOf(kinds, newCapacity));
+            starts = notNull(Arrays.copyOf(starts, newCapacity));
+            lengths = notNull(Arrays.copyOf(lengths, newCapacity));
+            values = notNull(Arrays.copyOf(values, newCapacity));
+        }
+        
+        kinds[size] = kind;
+        starts[size] = start;
+        lengths[size] = length;
+        values[size] = value;
+        size++;
+    }
+    
+    /**
+     * Converts the tokens in this buffer into {@link CppToken} objects.
+     * 
+     * @param source The characters of the expression that the tokens were created from.
+     * 
+     * @return The tokens as objects.
+     */
+    @NonNull CppToken @NonNull [] toTokens(char @NonNull [] source) {
+        @NonNull CppToken[] result = new @NonNull CppToken[size];
+        for (int i = 0; i < size; i++) {
+            switch (kinds[i]) {
+            case OPENING_BRACKET:
+                result[i] = new Bracket(starts[i], false);
+                break;
+            case CLOSING_BRACKET:
+                result[i] = new Bracket(starts[i], true);
+                break;
+            case IDENTIFIER:
+                result[i] = new IdentifierToken(source, starts[i], lengths[i]);
+                break;
+            case OPERATOR:
+                result[i] = new OperatorToken(starts[i], getOperator(i));
+                break;
+            default:
+                result[i] = new LiteralToken(starts[i], lengths[i], getLiteralValue(i));
+                break;
+            }
+        }
+        return result;
+    }
+    
+}
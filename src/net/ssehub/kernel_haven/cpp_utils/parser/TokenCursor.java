@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.parser;
+
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A pull-style cursor over the tokens of an expression. Tokens are only lexed when they are requested with
+ * {@link #peek()} or {@link #next()}, so the parser can stop at the first syntax error without lexing the rest of the
+ * expression.
+ * <p>
+ * The lexed tokens are appended to a {@link TokenBuffer}; {@link #next()} and {@link #peek()} return the index of a
+ * token in this buffer. Tokens that were already returned stay in the buffer, so the parser can still look at them
+ * (e.g. at the name of a function when its closing bracket is found).
+ * <p>
+ * A cursor is owned by a {@link ParseContext} and re-used for each expression. Besides the parser, other code can
+ * lex an expression with {@link CppParser#tokenize(CharSequence, int, int, ParseContext)}. The returned cursor (and
+ * the token indices it returned) is only valid until the context is used for the next expression; like the context,
+ * it must not be used by more than one thread at the same time.
+ *
+ * @author Adam
+ */
+public final class TokenCursor {
+    
+    private static final char @NonNull [] NO_CHARS = new char[0];
+    
+    private final @NonNull ParseContext context;
+    
+    private final @NonNull TokenBuffer tokens;
+    
+    private @Nullable CppParser lexer;
+    
+    private char @NonNull [] expr;
+    
+    private int exprPos;
+    
+    private int nextToken;
+    
+    /**
+     * Creates a new cursor.
+     * 
+     * @param context The context that owns this cursor.
+     * @param tokens The buffer to add the lexed tokens to.
+     */
+    TokenCursor(@NonNull ParseContext context, @NonNull TokenBuffer tokens) {
+        this.context = context;
+        this.tokens = tokens;
+        this.expr = NO_CHARS;
+    }
+    
+    /**
+     * Starts iterating over the current expression of the context. This clears the token buffer.
+     * 
+     * @param lexer The parser that lexes the single tokens.
+     * @param expr The characters that contain the current expression of the context.
+     */
+    void reset(@NonNull CppParser lexer, char @NonNull [] expr) {
+        this.lexer = lexer;
+        this.expr = expr;
+        this.exprPos = context.getExpressionStart();
+        this.nextToken = 0;
+        tokens.clear();
+    }
+    
+    /**
+     * Drops the references to the current expression and lexer.
+     */
+    void release() {
+        this.lexer = null;
+        this.expr = NO_CHARS;
+    }
+    
+    /**
+     * Returns the next token, without consuming it. The token is lexed if this was not done before.
+     * 
+     * @return The index of the next token in the {@link TokenBuffer}; <code>-1</code> if there are no more tokens.
+     * 
+     * @throws ExpressionFormatException If the next token contains invalid characters. The tokens before it can still
+     *      be read from the {@link TokenBuffer}.
+     */
+    public int peek() throws ExpressionFormatException {
+        int exprEnd = context.getExpressionEnd();
+        while (nextToken == tokens.size() && exprPos < exprEnd) {
+            exprPos = notNullLexer().lexToken(expr, exprPos, context, tokens);
+        }
+        return nextToken < tokens.size() ? nextToken : -1;
+    }
+    
+    /**
+     * Returns and consumes the next token. The token is lexed if this was not done before.
+     * 
+     * @return The index of the next token in the {@link TokenBuffer}; <code>-1</code> if there are no more tokens.
+     * 
+     * @throws ExpressionFormatException If the next token contains invalid characters. The tokens before it can still
+     *      be read from the {@link TokenBuffer}.
+     */
+    public int next() throws ExpressionFormatException {
+        int result = peek();
+        if (result >= 0) {
+            nextToken++;
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the buffer that contains the tokens that were lexed so far.
+     * 
+     * @return The token buffer.
+     */
+    public @NonNull TokenBuffer getTokens() {
+        return tokens;
+    }
+    
+    /**
+     * Returns the position where the given token starts, relative to the start of the expression.
+     * 
+     * @param index The index of the token in the {@link TokenBuffer}.
+     * 
+     * @return The start position of the token in the expression.
+     */
+    public int getPosition(int index) {
+        return tokens.getStart(index) - context.getExpressionStart();
+    }
+    
+    /**
+     * Returns the lexer of the current expression.
+     * 
+     * @return The lexer.
+     */
+    private @NonNull CppParser notNullLexer() {
+        CppParser lexer = this.lexer;
+        if (lexer == null) {
+            throw new IllegalStateException("Cursor is not started");
+        }
+        return lexer;
+    }
+    
+}
@@ -15,15 +15,325 @@
  */
 package net.ssehub.kernel_haven.cpp_utils.parser.ast;
 
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
 
 /**
  * Abstract superclass for CPP expression AST.
+ * <p>
+ * A node is either mutable or frozen. A frozen node (and all nodes below it) can not be modified anymore; its
+ * structural hash is computed once when it is frozen. Thus, frozen trees can be put into (global) caches and read by
+ * several threads at the same time, as long as they are passed to the other threads in a thread-safe way (e.g.
+ * through a concurrent map). The {@link net.ssehub.kernel_haven.cpp_utils.parser.CppParser} only creates frozen
+ * trees. {@link #equals(Object)} and {@link #hashCode()} compare the structure of the trees.
+ * <p>
+ * The hash of a frozen node is safely published by the frozen flag: the flag is volatile and set after the hash, so a
+ * thread that sees a node as frozen also sees its hash. A thread that does not see the node as frozen yet computes the
+ * same hash on its own.
  *
  * @author Adam
  */
 public abstract class CppExpression {
+    
+    /**
+     * Computes the structural hash of a tree bottom-up, while it is walked by a {@link CppExpressionWalker}. Frozen
+     * subtrees are not walked; their stored hash is used.
+     */
+    private static final class TreeHasher implements CppExpressionWalker.IListener {
+        
+        /**
+         * The hashes of the children of the nodes that are currently walked; the rightmost child is on top. When the
+         * walk is finished, this only contains the hash of the root.
+         */
+        private int @NonNull [] hashes = new int[16];
+        
+        private int size;
+        
+        private final @NonNull List<@NonNull CppExpression> children = new ArrayList<>();
+        
+        @Override
+        public boolean enter(@NonNull CppExpression node) {
+            boolean frozen = node.frozen;
+            if (frozen) {
+                push(node.hash);
+            }
+            return !frozen;
+        }
+        
+        @Override
+        public void leave(@NonNull CppExpression node) {
+            children.clear();
+            node.addChildren(children);
+            int hash = node.hashShallow();
+            int first = size - children.size();
+            for (int i = first; i < size; i++) {
+                hash = 31 * hash + hashes[i];
+            }
+            size = first;
+            push(hash);
+        }
+        
+        /**
+         * Pushes the hash of a node.
+         * 
+         * @param hash The hash to push.
+         */
+        private void push(int hash) {
+            if (size == hashes.length) {
+                hashes = notNull(Arrays.copyOf(hashes, size * 2));
+            }
+            hashes[size++] = hash;
+        }
+        
+    }
+    
+    /**
+     * Whether this node is frozen. Volatile and written after {@link #hash}, so that it publishes the hash.
+     */
+    private volatile boolean frozen;
+    
+    /**
+     * The structural hash of this node. Only valid if {@link #frozen} is <code>true</code>.
+     */
+    private int hash;
+    
+    /**
+     * Freezes this node and all nodes below it, so that they can not be modified anymore. The structural hashes of
+     * the nodes are computed once here. The tree is traversed iteratively, so deeply nested expressions do not cause a
+     * {@link StackOverflowError}. Nodes that are already frozen are not visited again. If all children of this node
+     * are already frozen (e.g. when a tree is built bottom-up), only this node is hashed, without any allocations.
+     * 
+     * @return This node.
+     */
+    public final @NonNull CppExpression freeze() {
+        if (!frozen && !freezeShallow()) {
+            // nodes in pre-order; reversed, all children come before their parents
+            List<@NonNull CppExpression> nodes = new ArrayList<>();
+            List<@NonNull CppExpression> stack = new ArrayList<>();
+            stack.add(this);
+            while (!stack.isEmpty()) {
+                CppExpression node = notNull(stack.remove(stack.size() - 1));
+                if (!node.frozen) {
+                    nodes.add(node);
+                    node.addChildren(stack);
+                }
+            }
+            
+            List<@NonNull CppExpression> children = new ArrayList<>();
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                CppExpression node = notNull(nodes.get(i));
+                children.clear();
+                node.addChildren(children);
+                int hash = node.hashShallow();
+                for (CppExpression child : children) {
+                    // the child is already frozen
+                    hash = 31 * hash + child.hash;
+                }
+                node.hash = hash;
+                // written last, so that the hash is published
+                node.frozen = true;
+            }
+        }
+        return this;
+    }
+    
+    /**
+     * Freezes only this node, if all of its children are already frozen.
+     * 
+     * @return Whether this node was frozen; <code>false</code> if a child is not frozen yet.
+     */
+    private boolean freezeShallow() {
+        boolean childrenFrozen = true;
+        int hash = hashShallow();
+        int childCount = getChildCount();
+        for (int i = 0; childrenFrozen && i < childCount; i++) {
+            CppExpression child = getChild(i);
+            childrenFrozen = child.frozen;
+            hash = 31 * hash + child.hash;
+        }
+        if (childrenFrozen) {
+            this.hash = hash;
+            // written last, so that the hash is published
+            this.frozen = true;
+        }
+        return childrenFrozen;
+    }
+    
+    /**
+     * Freezes a new node from the constructor of a subclass. Unlike {@link #freeze()}, this does not call any
+     * overridable methods on this node, since the subclass is not fully constructed yet. The given children are
+     * frozen, too.
+     * 
+     * @param shallowHash The hash of the attributes of this node; must be the same value that {@link #hashShallow()}
+     *      returns.
+     * @param firstChild The first child of this node; <code>null</code> if it has no children.
+     * @param secondChild The second child of this node; <code>null</code> if it has less than two children.
+     */
+    final void freezeNew(int shallowHash, @Nullable CppExpression firstChild, @Nullable CppExpression secondChild) {
+        int hash = shallowHash;
+        if (firstChild != null) {
+            hash = 31 * hash + firstChild.freeze().hash;
+        }
+        if (secondChild != null) {
+            hash = 31 * hash + secondChild.freeze().hash;
+        }
+        this.hash = hash;
+        // written last, so that the hash is published
+        this.frozen = true;
+    }
+    
+    /**
+     * Returns whether this node is frozen, i.e. can not be modified anymore.
+     * 
+     * @return Whether this node is frozen.
+     * 
+     * @see #freeze()
+     */
+    public final boolean isFrozen() {
+        return frozen;
+    }
+    
+    /**
+     * Checks that this node may be modified. Called by all methods that modify a node.
+     * 
+     * @throws IllegalStateException If this node is frozen.
+     */
+    protected final void checkNotFrozen() throws IllegalStateException {
+        if (frozen) {
+            throw new IllegalStateException("Can't modify a frozen " + getClass().getSimpleName());
+        }
+    }
+    
+    /**
+     * Returns the number of direct children of this node. Nodes without children return 0 (the default).
+     * 
+     * @return The number of children of this node.
+     */
+    protected int getChildCount() {
+        return 0;
+    }
+    
+    /**
+     * Returns the direct child of this node at the given index.
+     * 
+     * @param index The index of the child; between 0 and {@link #getChildCount()} (exclusive).
+     * 
+     * @return The child at the given index.
+     * 
+     * @throws IndexOutOfBoundsException If the index is out of range.
+     */
+    protected @NonNull CppExpression getChild(int index) throws IndexOutOfBoundsException {
+        throw new IndexOutOfBoundsException("No child at index " + index);
+    }
+    
+    /**
+     * Adds the direct children of this node to the given list.
+     * 
+     * @param children The list to add the children to.
+     */
+    final void addChildren(@NonNull List<@NonNull CppExpression> children) {
+        int childCount = getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            children.add(getChild(i));
+        }
+    }
+    
+    /**
+     * Computes the hash of the attributes of this node (excluding its children). The structural hash of the node
+     * combines this with the hashes of its children.
+     * 
+     * @return The hash of the attributes of this node.
+     */
+    protected abstract int hashShallow();
+    
+    /**
+     * Checks whether the attributes of this node (excluding its children) are equal to the given node. The children
+     * are compared by {@link #equals(Object)}.
+     * 
+     * @param other The other node; has the same class as this node.
+     * 
+     * @return Whether the attributes of this node are equal to the other node.
+     */
+    protected abstract boolean equalsShallow(@NonNull CppExpression other);
+    
+    /**
+     * Returns the structural hash of this tree. For a frozen node, this is the hash computed by {@link #freeze()}.
+     * For a mutable node, the hash is computed on each call; the tree is traversed iteratively, so deeply nested
+     * expressions do not cause a {@link StackOverflowError}.
+     */
+    @Override
+    public final int hashCode() {
+        int result;
+        if (frozen) {
+            result = hash;
+        } else {
+            result = computeTreeHash();
+        }
+        return result;
+    }
+    
+    /**
+     * Computes the structural hash of this (mutable) tree bottom-up. Frozen subtrees use their stored hash.
+     * 
+     * @return The hash of this tree.
+     */
+    private int computeTreeHash() {
+        TreeHasher hasher = new TreeHasher();
+        try {
+            CppExpressionWalker.walk(this, hasher);
+        } catch (ExpressionFormatException e) {
+            // the hasher does not throw any
+            throw new AssertionError(e);
+        }
+        return hasher.hashes[0];
+    }
+    
+    /**
+     * Compares the structure of the two trees. The trees are compared iteratively, so deeply nested expressions do not
+     * cause a {@link StackOverflowError}. Frozen subtrees with different hashes are rejected without visiting them.
+     */
+    @Override
+    public final boolean equals(@Nullable Object obj) {
+        boolean equal = obj instanceof CppExpression;
+        
+        List<@NonNull CppExpression> stack = new ArrayList<>();
+        List<@NonNull CppExpression> children = new ArrayList<>();
+        if (equal) {
+            stack.add(this);
+            stack.add((CppExpression) obj);
+        }
+        while (equal && !stack.isEmpty()) {
+            CppExpression right = notNull(stack.remove(stack.size() - 1));
+            CppExpression left = notNull(stack.remove(stack.size() - 1));
+            
+            if (left != right) {
+                equal = left.getClass() == right.getClass()
+                        && (!left.frozen || !right.frozen || left.hash == right.hash)
+                        && left.equalsShallow(right);
+                
+                if (equal) {
+                    children.clear();
+                    left.addChildren(children);
+                    int leftChildren = children.size();
+                    right.addChildren(children);
+                    equal = children.size() == 2 * leftChildren;
+                    for (int i = 0; equal && i < leftChildren; i++) {
+                        stack.add(notNull(children.get(i)));
+                        stack.add(notNull(children.get(leftChildren + i)));
+                    }
+                }
+            }
+        }
+        
+        return equal;
+    }
 
     @Override
     public @NonNull String toString() {
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.parser.ast;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Walks over a {@link CppExpression} AST with an explicit stack, instead of recursing like an
+ * {@link ICppExressionVisitor}. Thus, the depth of the AST is not limited by the size of the thread stack.
+ * <p>
+ * Each node is passed to {@link IListener#enter(CppExpression)} before its children (pre-order) and to
+ * {@link IListener#leave(CppExpression)} after its children (post-order). Children are walked from left to right.
+ * Bottom-up computations (e.g. translations) can keep the results of the children on their own stack in
+ * {@link IListener#leave(CppExpression)}: the results of the children are the topmost elements, with the rightmost
+ * child on top.
+ *
+ * @author Adam
+ */
+public final class CppExpressionWalker {
+    
+    /**
+     * The callbacks of a walk.
+     */
+    public interface IListener {
+        
+        /**
+         * Called for a node before its children are walked.
+         * 
+         * @param node The node.
+         * 
+         * @return Whether to walk the children of the node. If <code>false</code>, neither the children are walked nor
+         *      {@link #leave(CppExpression)} is called for the node.
+         * 
+         * @throws ExpressionFormatException If the node can not be handled. This aborts the walk.
+         */
+        public default boolean enter(@NonNull CppExpression node) throws ExpressionFormatException {
+            return true;
+        }
+        
+        /**
+         * Called for a node after its children were walked.
+         * 
+         * @param node The node.
+         * 
+         * @throws ExpressionFormatException If the node can not be handled. This aborts the walk.
+         */
+        public default void leave(@NonNull CppExpression node) throws ExpressionFormatException {
+        }
+        
+    }
+    
+    /**
+     * Don't allow any instances.
+     */
+    private CppExpressionWalker() {
+    }
+    
+    /**
+     * Walks over the given AST.
+     * 
+     * @param root The root of the AST.
+     * @param listener The callbacks for the nodes.
+     * 
+     * @throws ExpressionFormatException If the listener throws an {@link ExpressionFormatException}.
+     */
+    public static void walk(@NonNull CppExpression root, @NonNull IListener listener)
+            throws ExpressionFormatException {
+        
+        CppExpression[] nodes = new CppExpression[16];
+        // whether the node at the same index was already entered, i.e. needs to be left when it is popped
+        boolean[] entered = new boolean[16];
+        int size = 0;
+        List<@NonNull CppExpression> children = new ArrayList<>();
+        
+        nodes[size++] = root;
+        while (size > 0) {
+            size--;
+            CppExpression node = notNull(nodes[size]);
+            nodes[size] = null;
+            
+            if (entered[size]) {
+                listener.leave(node);
+                
+            } else if (listener.enter(node)) {
+                children.clear();
+                node.addChildren(children);
+                if (size + 1 + children.size() > nodes.length) {
+                    int newLength = Math.max(nodes.length * 2, size + 1 + children.size());
+                    nodes = Arrays.copyOf(nodes, newLength);
+                    entered = Arrays.copyOf(entered, newLength);
+                }
+                
+                nodes[size] = node;
+                entered[size++] = true;
+                // reverse order, so that the leftmost child is on top
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    nodes[size] = children.get(i);
+                    entered[size++] = false;
+                }
+            }
+        }
+    }
+    
+}
@@ -25,12 +25,15 @@ import net.ssehub.kernel_haven.util.null_checks.NonNull;
 
 /**
  * A temporary element in the AST while it is parsed. Contains a flat list of {@link CppExpression}s.
+ * <p>
+ * The {@link net.ssehub.kernel_haven.cpp_utils.parser.CppParser} builds the final AST directly and no longer creates
+ * these; this class is only kept for compatibility.
  *
  * @author Adam
  */
 public class ExpressionList extends CppExpression {
 
-    private @NonNull List<@NonNull CppExpression> expressions;
+    private final @NonNull List<@NonNull CppExpression> expressions;
     
     /**
      * Creates a new {@link ExpressionList} with no nested expressions.
@@ -64,8 +67,11 @@ public class ExpressionList extends CppExpression {
      * 
      * @param index The index to replace the expression at.
      * @param expression The new expression for that index.
+     * 
+     * @throws IllegalStateException If this node is frozen.
      */
-    public void setExpression(int index, @NonNull CppExpression expression) {
+    public void setExpression(int index, @NonNull CppExpression expression) throws IllegalStateException {
+        checkNotFrozen();
         this.expressions.set(index, expression);
     }
     
@@ -73,8 +79,11 @@ public class ExpressionList extends CppExpression {
      * Removes the expression at the given index. The following expressions shift done by one.
      * 
      * @param index The index to remove.
+     * 
+     * @throws IllegalStateException If this node is frozen.
      */
-    public void removeExpression(int index) {
+    public void removeExpression(int index) throws IllegalStateException {
+        checkNotFrozen();
         this.expressions.remove(index);
     }
     
@@ -82,8 +91,11 @@ public class ExpressionList extends CppExpression {
      * Adds a nested expression to the end of the list.
      * 
      * @param expression The expression to add.
+     * 
+     * @throws IllegalStateException If this node is frozen.
      */
-    public void addExpression(@NonNull CppExpression expression) {
+    public void addExpression(@NonNull CppExpression expression) throws IllegalStateException {
+        checkNotFrozen();
         expressions.add(expression);
     }
     
@@ -92,6 +104,26 @@ public class ExpressionList extends CppExpression {
         return visitor.visitExpressionList(this);
     }
 
+    @Override
+    protected int getChildCount() {
+        return expressions.size();
+    }
+    
+    @Override
+    protected @NonNull CppExpression getChild(int index) throws IndexOutOfBoundsException {
+        return notNull(expressions.get(index));
+    }
+    
+    @Override
+    protected int hashShallow() {
+        return expressions.size();
+    }
+    
+    @Override
+    protected boolean equalsShallow(@NonNull CppExpression other) {
+        return expressions.size() == ((ExpressionList) other).expressions.size();
+    }
+    
     @Override
     protected @NonNull String toString(@NonNull String indentation) {
         StringBuilder result = new StringBuilder(indentation).append("ExpressionList");
@@ -28,7 +28,7 @@ import net.ssehub.kernel_haven.util.null_checks.Nullable;
  */
 public class FunctionCall extends CppExpression {
 
-    private @NonNull String functionName;
+    private final @NonNull String functionName;
     
     private @Nullable CppExpression argument;
     
@@ -65,8 +65,11 @@ public class FunctionCall extends CppExpression {
      * Overrides the argument (parameter) for the function.
      * 
      * @param argument The new argument.
+     * 
+     * @throws IllegalStateException If this node is frozen.
      */
-    public void setArgument(@Nullable CppExpression argument) {
+    public void setArgument(@Nullable CppExpression argument) throws IllegalStateException {
+        checkNotFrozen();
         this.argument = argument;
     }
     
@@ -75,6 +78,30 @@ public class FunctionCall extends CppExpression {
         return visitor.visitFunctionCall(this);
     }
 
+    @Override
+    protected int getChildCount() {
+        return argument != null ? 1 : 0;
+    }
+    
+    @Override
+    protected @NonNull CppExpression getChild(int index) throws IndexOutOfBoundsException {
+        CppExpression argument = this.argument;
+        if (index != 0 || argument == null) {
+            throw new IndexOutOfBoundsException("No child at index " + index);
+        }
+        return argument;
+    }
+    
+    @Override
+    protected int hashShallow() {
+        return functionName.hashCode();
+    }
+    
+    @Override
+    protected boolean equalsShallow(@NonNull CppExpression other) {
+        return functionName.equals(((FunctionCall) other).functionName);
+    }
+    
     @Override
     protected @NonNull String toString(@NonNull String indentation) {
         StringBuilder result = new StringBuilder(indentation).append("Function ").append(functionName);
@@ -25,15 +25,16 @@ import net.ssehub.kernel_haven.util.null_checks.NonNull;
  */
 public class NumberLiteral extends CppExpression {
 
-    private @NonNull Number value;
+    private final @NonNull Number value;
     
     /**
-     * Creates a new literal number.
+     * Creates a new literal number. Literals can not be modified, so the result is already frozen.
      * 
      * @param value The literal value.
      */
     public NumberLiteral(@NonNull Number value) {
         this.value = value;
+        freezeNew(value.hashCode(), null, null);
     }
     
     /**
@@ -51,6 +52,16 @@ public class NumberLiteral extends CppExpression {
         return visitor.visitLiteral(this);
     }
     
+    @Override
+    protected int hashShallow() {
+        return value.hashCode();
+    }
+    
+    @Override
+    protected boolean equalsShallow(@NonNull CppExpression other) {
+        return value.equals(((NumberLiteral) other).value);
+    }
+    
     @Override
     protected @NonNull String toString(@NonNull String indentation) {
         return indentation + "Literal " + value;
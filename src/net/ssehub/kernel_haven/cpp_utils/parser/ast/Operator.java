@@ -46,6 +46,21 @@ public class Operator extends CppExpression {
         this.operator = operator;
     }
     
+    /**
+     * Creates a new, frozen operator. The sides are frozen, too.
+     * 
+     * @param operator The operator.
+     * @param leftSide The left side of the operator. This is the only "side" for unary operators.
+     * @param rightSide The right side of the operator; <code>null</code> for unary operators.
+     */
+    public Operator(@NonNull CppOperator operator, @NonNull CppExpression leftSide,
+            @Nullable CppExpression rightSide) {
+        this.operator = operator;
+        this.leftSide = leftSide;
+        this.rightSide = rightSide;
+        freezeNew(operator.ordinal(), leftSide, rightSide);
+    }
+    
     /**
      * Returns the operator that this node represents.
      * 
@@ -59,8 +74,11 @@ public class Operator extends CppExpression {
      * Changes the opeartor.
      * 
      * @param operator The new operator.
+     * 
+     * @throws IllegalStateException If this node is frozen.
      */
-    public void setOperator(@NonNull CppOperator operator) {
+    public void setOperator(@NonNull CppOperator operator) throws IllegalStateException {
+        checkNotFrozen();
         this.operator = operator;
     }
     
@@ -77,8 +95,11 @@ public class Operator extends CppExpression {
      * Sets the left side of the operator. This is the only "side" for unary operators.
      * 
      * @param leftSide The left side of the operator.
+     * 
+     * @throws IllegalStateException If this node is frozen.
      */
-    public void setLeftSide(@NonNull CppExpression leftSide) {
+    public void setLeftSide(@NonNull CppExpression leftSide) throws IllegalStateException {
+        checkNotFrozen();
         this.leftSide = leftSide;
     }
     
@@ -95,8 +116,11 @@ public class Operator extends CppExpression {
      * Sets the right side of this operator. This should be <code>null</code> for unary operators.
      * 
      * @param rightSide the right side of this operator
+     * 
+     * @throws IllegalStateException If this node is frozen.
      */
-    public void setRightSide(@Nullable CppExpression rightSide) {
+    public void setRightSide(@Nullable CppExpression rightSide) throws IllegalStateException {
+        checkNotFrozen();
         this.rightSide = rightSide;
     }
     
@@ -105,6 +129,39 @@ public class Operator extends CppExpression {
         return visitor.visitOperator(this);
     }
 
+    @Override
+    protected int getChildCount() {
+        // leftSide may be null during AST construction
+        return (maybeNull(leftSide) != null ? 1 : 0) + (rightSide != null ? 1 : 0);
+    }
+    
+    @Override
+    protected @NonNull CppExpression getChild(int index) throws IndexOutOfBoundsException {
+        CppExpression result;
+        if (index == 0 && maybeNull(leftSide) != null) {
+            result = leftSide;
+        } else if (index == getChildCount() - 1 && rightSide != null) {
+            result = rightSide;
+        } else {
+            throw new IndexOutOfBoundsException("No child at index " + index);
+        }
+        return notNull(result);
+    }
+    
+    @Override
+    protected int hashShallow() {
+        return operator.ordinal();
+    }
+    
+    @Override
+    protected boolean equalsShallow(@NonNull CppExpression other) {
+        Operator otherOperator = (Operator) other;
+        // the children are compared in order, so check which side is missing
+        return operator == otherOperator.operator
+                && (maybeNull(leftSide) == null) == (maybeNull(otherOperator.leftSide) == null)
+                && (rightSide == null) == (otherOperator.rightSide == null);
+    }
+    
     @Override
     protected @NonNull String toString(@NonNull String indentation) {
         StringBuilder result = new StringBuilder(indentation).append("Operator ").append(operator.getSymbol());
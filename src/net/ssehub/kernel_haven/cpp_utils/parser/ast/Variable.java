@@ -25,15 +25,16 @@ import net.ssehub.kernel_haven.util.null_checks.NonNull;
  */
 public class Variable extends CppExpression {
 
-    private @NonNull String name;
+    private final @NonNull String name;
     
     /**
-     * Creates a new variable.
+     * Creates a new variable. Variables can not be modified, so the result is already frozen.
      * 
      * @param name The name of the variable.
      */
     public Variable(@NonNull String name) {
         this.name = name;
+        freezeNew(name.hashCode(), null, null);
     }
     
     /**
@@ -50,6 +51,16 @@ public class Variable extends CppExpression {
         return visitor.visitVariable(this);
     }
     
+    @Override
+    protected int hashShallow() {
+        return name.hashCode();
+    }
+    
+    @Override
+    protected boolean equalsShallow(@NonNull CppExpression other) {
+        return name.equals(((Variable) other).name);
+    }
+    
     @Override
     protected @NonNull String toString(@NonNull String indentation) {
         return indentation + "Variable " + name;
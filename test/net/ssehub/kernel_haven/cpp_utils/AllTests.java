@@ -32,6 +32,9 @@ import net.ssehub.kernel_haven.cpp_utils.parser.AllParserTests;
     AllParserTests.class,
     AllNonBooleanTests.class,
     
+    ConditionCacheTest.class,
+    FormulaFactoryTest.class,
+    ParsedConditionTest.class,
     CppConditionParserTest.class,
     NumberUtilsTest.class,
     })
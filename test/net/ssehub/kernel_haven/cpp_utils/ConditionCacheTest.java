@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link ConditionCache}.
+ *
+ * @author Adam
+ */
+public class ConditionCacheTest {
+
+    /**
+     * Tests that cached formulas are returned and that unknown conditions are counted as misses.
+     */
+    @Test
+    public void testGet() {
+        ConditionCache cache = new ConditionCache(10);
+        
+        assertThat(cache.get("defined(A)"), nullValue());
+        cache.put("defined(A)", new ParseResult(new Variable("A")));
+        assertThat(cache.get("defined(A)").getFormula(), is(new Variable("A")));
+        
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(1L));
+    }
+    
+    /**
+     * Tests that the cache does not grow over its maximum size.
+     */
+    @Test
+    public void testMaximumSize() {
+        ConditionCache cache = new ConditionCache(5);
+        
+        for (int i = 0; i < 100; i++) {
+            cache.put("defined(A" + i + ")", new ParseResult(new Variable("A" + i)));
+        }
+        
+        assertThat(cache.size(), is(5));
+    }
+    
+    /**
+     * Tests that a cache with a huge maximum size only allocates memory for the entries that it actually holds.
+     */
+    @Test
+    public void testHugeMaximumSize() {
+        ConditionCache cache = new ConditionCache(Integer.MAX_VALUE);
+        
+        for (int i = 0; i < 1000; i++) {
+            cache.put("defined(A" + i + ")", new ParseResult(new Variable("A" + i)));
+        }
+        
+        assertThat(cache.size(), is(1000));
+        assertThat(cache.get("defined(A999)").getFormula(), is(new Variable("A999")));
+    }
+    
+    /**
+     * Tests that frequently used entries are kept when the cache is full.
+     */
+    @Test
+    public void testFrequentEntriesAreKept() {
+        ConditionCache cache = new ConditionCache(5);
+        cache.put("defined(A)", new ParseResult(new Variable("A")));
+        for (int i = 0; i < 100; i++) {
+            cache.get("defined(A)");
+        }
+        
+        for (int i = 0; i < 4; i++) {
+            cache.put("defined(B" + i + ")", new ParseResult(new Variable("B" + i)));
+            cache.get("defined(A)");
+        }
+        cache.put("defined(C)", new ParseResult(new Variable("C")));
+        
+        assertThat(cache.get("defined(A)").getFormula(), is(new Variable("A")));
+    }
+    
+    /**
+     * Tests that in a cache that is much larger than the eviction sample, frequently used entries survive many
+     * insertions, while the entries that are not used anymore are evicted.
+     */
+    @Test
+    public void testHotEntriesSurviveInLargeCache() {
+        ConditionCache cache = new ConditionCache(100);
+        for (int i = 0; i < 100; i++) {
+            cache.put("defined(A" + i + ")", new ParseResult(new Variable("A" + i)));
+        }
+        
+        // the first 5 entries are hot, all others are never read again
+        for (int i = 0; i < 1000; i++) {
+            for (int j = 0; j < 5 * 10; j++) {
+                cache.get("defined(A" + (j % 5) + ")");
+            }
+            cache.put("defined(B" + i + ")", new ParseResult(new Variable("B" + i)));
+        }
+        
+        for (int i = 0; i < 5; i++) {
+            assertThat(cache.get("defined(A" + i + ")").getFormula(), is(new Variable("A" + i)));
+        }
+        int remainingCold = 0;
+        for (int i = 5; i < 100; i++) {
+            if (cache.get("defined(A" + i + ")") != null) {
+                remainingCold++;
+            }
+        }
+        assertThat(remainingCold < 10, is(true));
+        assertThat(cache.size(), is(100));
+    }
+    
+}
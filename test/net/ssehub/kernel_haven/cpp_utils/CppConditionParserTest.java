@@ -20,14 +20,33 @@ import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
 import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
 import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import org.junit.Test;
 
+import net.ssehub.kernel_haven.cpp_utils.parser.CppExpressionFormatException;
+import net.ssehub.kernel_haven.cpp_utils.parser.SymbolTable;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.FunctionCall;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.Operator;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
 import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
 import net.ssehub.kernel_haven.util.logic.True;
 import net.ssehub.kernel_haven.util.logic.Variable;
 import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
 
 /**
  * Tests the {@link CppConditionParser}.
@@ -450,5 +469,516 @@ public class CppConditionParserTest {
         assertThat(parser.parse("0.0 != A"), is(new Variable("A_ne_0")));
         assertThat(parser.parse("2.214 <= A"), is(new Variable("A_ge_2_214")));
     }
+    
+    /**
+     * Tests that a sub-class that overrides the visitor methods is still called for each element of the expression,
+     * i.e. that the direct translation is not used for it.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testSubClassVisitorIsUsed() throws ExpressionFormatException {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION) {
+            
+            @Override
+            public @NonNull Formula visitVariable(
+                    net.ssehub.kernel_haven.cpp_utils.parser.ast.@NonNull Variable variable) {
+                return new Variable(variable.getName() + "_visited");
+            }
+            
+        };
+        
+        assertThat(parser.parse("A && defined(B)"), is(and("A_visited", "B")));
+    }
+    
+    /**
+     * Tests that the direct translation reports the same exception as the translation of the AST, if an unsupported
+     * element appears in front of a syntax error.
+     */
+    @Test
+    public void testDirectTranslationException() {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION);
+        
+        try {
+            parser.parse("A && (B");
+            fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            assertThat(e.getMessage().startsWith("Unbalanced brackets (missing closing)"), is(true));
+        }
+    }
+    
+    /**
+     * Tests that the cache returns the same formula for a condition that is parsed again, and counts hits and misses.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testCache() throws ExpressionFormatException {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION, 10);
+        
+        Formula first = parser.parse("defined(A) && defined(B)");
+        Formula second = parser.parse("defined(A) && defined(B)");
+        
+        assertThat(first, is(and("A", "B")));
+        assertThat(second == first, is(true));
+        assertThat(parser.getCacheHits(), is(1L));
+        assertThat(parser.getCacheMisses(), is(1L));
+    }
+    
+    /**
+     * Tests parsing a condition from a range of a {@link CharBuffer}; the result is cached under the condition
+     * string.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testParseCharSequenceRange() throws ExpressionFormatException {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION, 10);
+        CharBuffer file = CharBuffer.wrap("#if defined(A) && defined(B)\n".toCharArray());
+        
+        Formula first = parser.parse(file, 4, 28);
+        Formula second = parser.parse("defined(A) && defined(B)");
+        
+        assertThat(first, is(and("A", "B")));
+        assertThat(second == first, is(true));
+        assertThat(parser.getCacheHits(), is(1L));
+        
+        assertThat(parser.parse(new StringBuilder("defined(C)")), is(new Variable("C")));
+    }
+    
+    /**
+     * Tests that conditions that cannot be parsed are not cached.
+     */
+    @Test
+    public void testCacheWithException() {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION, 10);
+        
+        for (int i = 0; i < 2; i++) {
+            try {
+                parser.parse("A &&");
+                fail("Expected ExpressionFormatException");
+            } catch (ExpressionFormatException e) {
+                // expected
+            }
+        }
+        
+        assertThat(parser.getCacheHits(), is(0L));
+        assertThat(parser.getCacheMisses(), is(2L));
+    }
+    
+    /**
+     * Tests that a single parser instance (with a cache) can be used by several threads at the same time.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testSharedBetweenThreads() throws Exception {
+        CppConditionParser parser = new CppConditionParser(true, true, EXCEPTION, 50);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                results.add(executor.submit(() -> {
+                    boolean correct = true;
+                    for (int i = 0; i < 1000; i++) {
+                        int n = i % 100;
+                        Formula result = parser.parse("defined(A" + n + ") && (IS_ENABLED(B) || C > " + n + ")");
+                        correct &= result.equals(and("A" + n, or(or("B", "B_MODULE"), "C_gt_" + n)));
+                    }
+                    return correct;
+                }));
+            }
+            
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), is(true));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    /**
+     * Tests that {@link CppConditionParser#parseAll(java.util.Collection)} returns the results in input order, also
+     * for duplicates and for enough expressions to be parsed in parallel.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testParseAll() throws ExpressionFormatException {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION);
+        
+        List<String> expressions = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            expressions.add("defined(A" + (i % 70) + ")");
+        }
+        
+        List<Formula> result = parser.parseAll(expressions);
+        
+        assertThat(result.size(), is(200));
+        for (int i = 0; i < 200; i++) {
+            assertThat(result.get(i), is(new Variable("A" + (i % 70))));
+        }
+    }
+    
+    /**
+     * Tests that {@link CppConditionParser#parseAll(java.util.stream.Stream)} handles each invalid expression on its
+     * own.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testParseAllWithInvalidConditionHandling() throws ExpressionFormatException {
+        CppConditionParser parser = new CppConditionParser(false, false, InvalidConditionHandling.ERROR_VARIABLE);
+        
+        List<Formula> result = parser.parseAll(Stream.of("defined(A)", "A &&", "defined(B)", "A &&"));
+        
+        assertThat(result, is(Arrays.asList(new Variable("A"), CppConditionParser.ERROR_VARIBLE, new Variable("B"),
+                CppConditionParser.ERROR_VARIBLE)));
+    }
+    
+    /**
+     * Tests that {@link CppConditionParser#parseAll(java.util.Collection)} throws the exception of the first invalid
+     * expression.
+     */
+    @Test
+    public void testParseAllException() {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION);
+        
+        try {
+            parser.parseAll(Arrays.asList("defined(A)", "A B", "(A"));
+            fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            assertThat(e.getMessage().startsWith("Couldn't find operator"), is(true));
+        }
+    }
+    
+    /**
+     * Tests {@link CppConditionParser#tryParse(String)} with a valid condition.
+     */
+    @Test
+    public void testTryParseSuccess() {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION);
+        
+        ParseResult result = parser.tryParse("defined(A) || defined(B)");
+        
+        assertThat(result.isSuccess(), is(true));
+        assertThat(result.getFormula(), is(or("A", "B")));
+        assertThat(result.getErrorPosition(), is(-1));
+        assertThat(result.getErrorMessage(), nullValue());
+    }
+    
+    /**
+     * Tests {@link CppConditionParser#tryParse(String)} with an invalid condition.
+     */
+    @Test
+    public void testTryParseFailure() {
+        CppConditionParser parser = new CppConditionParser(false, false, InvalidConditionHandling.TRUE);
+        
+        ParseResult result = parser.tryParse("defined(A) B");
+        
+        assertThat(result.isSuccess(), is(false));
+        assertThat(result.getFormula(), is(True.INSTANCE));
+        assertThat(result.getErrorPosition(), is(11));
+        assertThat(result.getErrorMessage(), is("Couldn't find operator\n"
+                + "In formula: defined(A) B\n"
+                + "                       ^"));
+    }
+    
+    /**
+     * Tests that {@link CppConditionParser#tryParse(String)} has no replacement formula for invalid conditions with
+     * {@link InvalidConditionHandling#EXCEPTION}.
+     */
+    @Test
+    public void testTryParseFailureWithException() {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION);
+        
+        ParseResult result = parser.tryParse("defined(A) && B");
+        
+        assertThat(result.isSuccess(), is(false));
+        assertThat(result.getFormula(), nullValue());
+        assertThat(result.getErrorPosition(), is(-1));
+        assertThat(result.getErrorMessage(), is("Found variable outside of defined() call: Variable B"));
+    }
+    
+    /**
+     * Tests that exceptions that are thrown to the user record their stack trace, while exceptions for conditions
+     * that are replaced silently do not.
+     */
+    @Test
+    public void testExceptionStackTraces() {
+        CppConditionParser throwing = new CppConditionParser(false, false, EXCEPTION);
+        for (String condition : Arrays.asList("defined(A) B", "defined(A) && B")) {
+            try {
+                throwing.parse(condition);
+                fail("Expected ExpressionFormatException");
+            } catch (ExpressionFormatException e) {
+                assertThat(e.getStackTrace().length > 0, is(true));
+            }
+        }
+        
+        CppConditionParser replacing = new CppConditionParser(false, false, InvalidConditionHandling.TRUE);
+        for (String condition : Arrays.asList("defined(A) B", "defined(A) && B")) {
+            ParseResult result = replacing.tryParse(condition);
+            assertThat(result.getException().getStackTrace().length, is(0));
+        }
+    }
+
+    /**
+     * Tests that derived variables (Linux macros and fuzzy parsing) are shared between parsers and conditions.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testDerivedVariablesAreShared() throws ExpressionFormatException {
+        CppConditionParser parser1 = new CppConditionParser(true, true, EXCEPTION);
+        CppConditionParser parser2 = new CppConditionParser(true, true, EXCEPTION);
+        
+        Disjunction enabled1 = (Disjunction) parser1.parse("IS_ENABLED(SHARED_A)");
+        Disjunction enabled2 = (Disjunction) parser2.parse("IS_ENABLED(SHARED_A) ");
+        assertThat(enabled1.getLeft() == enabled2.getLeft(), is(true));
+        assertThat(enabled1.getRight() == enabled2.getRight(), is(true));
+        assertThat(parser2.parse("IS_MODULE(SHARED_A)") == enabled1.getRight(), is(true));
+        assertThat(parser2.parse("defined(SHARED_A)") == enabled1.getLeft(), is(true));
+        
+        assertThat(parser1.parse("SHARED_A == 2") == parser2.parse("2 == SHARED_A"), is(true));
+        assertThat(parser1.parse("SHARED_A < 2") == parser2.parse("2 > SHARED_A"), is(true));
+        assertThat(parser1.parse("SHARED_A == SHARED_B") == parser2.parse("SHARED_A == SHARED_B "), is(true));
+        assertThat(parser1.parse("SHARED_A") == parser2.parse("SHARED_A "), is(true));
+        
+        // different constants (and constant types) yield different variables
+        assertThat(parser1.parse("SHARED_A == 2.5"), is(new Variable("SHARED_A_eq_2_5")));
+        assertThat(parser1.parse("SHARED_A == 25"), is(new Variable("SHARED_A_eq_25")));
+        assertThat(parser1.parse("SHARED_A"), is(new Variable("SHARED_A_ne_0")));
+    }
+    
+    /**
+     * Tests that derivations that result in the same variable name share one variable instance.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testDerivedVariablesWithSameName() throws ExpressionFormatException {
+        CppConditionParser parser = new CppConditionParser(true, true, EXCEPTION);
+        
+        Disjunction module = (Disjunction) parser.parse("defined(SAME_A_MODULE) || IS_MODULE(SAME_A)");
+        assertThat(module.getLeft(), is(new Variable("SAME_A_MODULE")));
+        assertThat(module.getLeft() == module.getRight(), is(true));
+        
+        Disjunction notZero = (Disjunction) parser.parse("SAME_X || SAME_X != 0");
+        assertThat(notZero.getLeft(), is(new Variable("SAME_X_ne_0")));
+        assertThat(notZero.getLeft() == notZero.getRight(), is(true));
+    }
+    
+    /**
+     * Tests that the cache of derived variables is cleared with the {@link SymbolTable#GLOBAL} symbol table, so that
+     * re-used symbol IDs do not return the variables of the old names.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testDerivedVariablesAfterClear() throws ExpressionFormatException {
+        CppConditionParser parser = new CppConditionParser(true, true, EXCEPTION);
+        
+        SymbolTable.GLOBAL.clear();
+        assertThat(parser.parse("CLEARED_A == 1"), is(new Variable("CLEARED_A_eq_1")));
+        assertThat(parser.parse("IS_MODULE(CLEARED_A)"), is(new Variable("CLEARED_A_MODULE")));
+        
+        // the new names get the same IDs as the old ones
+        SymbolTable.GLOBAL.clear();
+        assertThat(parser.parse("CLEARED_B == 1"), is(new Variable("CLEARED_B_eq_1")));
+        assertThat(parser.parse("IS_MODULE(CLEARED_B)"), is(new Variable("CLEARED_B_MODULE")));
+    }
+    
+    /**
+     * Tests that simple conditions are translated by the fast path, and that other conditions are left to the general
+     * parser.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testFastPath() throws ExpressionFormatException {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION);
+        
+        assertThat(parser.parse("defined(A)"), is(new Variable("A")));
+        assertThat(parser.parse(" !defined B "), is(not("B")));
+        assertThat(parser.parse("defined(A) && !defined(B) && defined C"), is(and(and("A", not("B")), "C")));
+        assertThat(parser.parse("defined ( A )||defined\tB"), is(or("A", "B")));
+        assertThat(parser.getFastPathCount(), is(4L));
+        
+        assertThat(parser.parse("defined(A) || defined(B) && defined(C)"), is(or("A", and("B", "C"))));
+        assertThat(parser.parse("(defined(A))"), is(new Variable("A")));
+        assertThat(parser.parse("!(defined(A))"), is(not("A")));
+        assertThat(parser.getFastPathCount(), is(4L));
+        
+        try {
+            parser.parse("defined(A) &&");
+            fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            // expected
+        }
+        assertThat(parser.getFastPathCount(), is(4L));
+    }
+    
+    /**
+     * Tests that results of the fast path are cached like the results of the general parser.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testFastPathWithCache() throws ExpressionFormatException {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION, 10);
+        
+        Formula first = parser.parse("defined(A) && defined(B)");
+        Formula second = parser.parse("defined(A) && defined(B)");
+        
+        assertThat(second == first, is(true));
+        assertThat(parser.getFastPathCount(), is(1L));
+        assertThat(parser.getCacheHits(), is(1L));
+    }
+    
+    /**
+     * Tests that direct translation creates the same exceptions as visiting the AST, which only translates the operands
+     * that are needed.
+     */
+    @Test
+    public void testDirectTranslationExceptions() {
+        CppConditionParser direct = new CppConditionParser(false, false, EXCEPTION);
+        // sub-classes use the AST
+        CppConditionParser ast = new CppConditionParser(false, false, EXCEPTION) {
+        };
+        
+        String[] expressions = {
+            "A + 1 > 2 && defined(",
+            "defined(A) && B",
+            "A && defined(B + 1)",
+            "-(A + B)",
+            "defined(A) + 1 || !C",
+        };
+        
+        for (String expression : expressions) {
+            String expected = null;
+            try {
+                ast.parse(expression);
+                fail("Expected ExpressionFormatException");
+            } catch (ExpressionFormatException e) {
+                expected = e.getMessage();
+            }
+            try {
+                direct.parse(expression);
+                fail("Expected ExpressionFormatException");
+            } catch (ExpressionFormatException e) {
+                assertThat(expression, e.getMessage(), is(expected));
+            }
+        }
+    }
+    
+    /**
+     * Tests that deeply nested conditions are parsed and translated without a {@link StackOverflowError}, also if the
+     * translation fails.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testDeeplyNested() throws ExpressionFormatException {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION);
+        StringBuilder prefix = new StringBuilder();
+        StringBuilder suffix = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            prefix.append("!(");
+            suffix.append(')');
+        }
+        
+        Formula formula = parser.parse(prefix + "defined(A)" + suffix);
+        for (int i = 0; i < 50000; i++) {
+            formula = ((Negation) formula).getFormula();
+        }
+        assertThat(formula, is(new Variable("A")));
+        
+        try {
+            parser.parse(prefix + "A + 1" + suffix);
+            fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            assertThat(((CppExpressionFormatException) e).getReason(), is("Unsupported operator: + (binary)"));
+        }
+    }
+    
+    /**
+     * Tests that sub-classes that override the <code>visit*()</code> methods (and thus translate the AST) translate
+     * deeply nested conditions without a {@link StackOverflowError}, also if the translation fails.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testDeeplyNestedWithVisitingSubclass() throws ExpressionFormatException {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION) {
+            
+            @Override
+            public @NonNull Formula visitOperator(@NonNull Operator operator) throws ExpressionFormatException {
+                return super.visitOperator(operator);
+            }
+            
+        };
+        StringBuilder prefix = new StringBuilder();
+        StringBuilder suffix = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            prefix.append("!(");
+            suffix.append(')');
+        }
+        
+        Formula formula = parser.parse(prefix + "defined(A)" + suffix);
+        for (int i = 0; i < 50000; i++) {
+            formula = ((Negation) formula).getFormula();
+        }
+        assertThat(formula, is(new Variable("A")));
+        
+        formula = ParsedCondition.parse(prefix + "defined(B)" + suffix).translate(parser);
+        for (int i = 0; i < 50000; i++) {
+            formula = ((Negation) formula).getFormula();
+        }
+        assertThat(formula, is(new Variable("B")));
+        
+        try {
+            parser.parse(prefix + "A + 1" + suffix);
+            fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            assertThat(((CppExpressionFormatException) e).getReason(), is("Unsupported operator: + (binary)"));
+        }
+    }
+        
+    /**
+     * Tests that a visiting sub-class may parse another condition while it visits a node, and that the translations
+     * of one AST are not used for the next one.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testNestedTranslationWithVisitingSubclass() throws ExpressionFormatException {
+        CppConditionParser parser = new CppConditionParser(false, false, EXCEPTION) {
+            
+            @Override
+            public @NonNull Formula visitFunctionCall(@NonNull FunctionCall call) throws ExpressionFormatException {
+                Formula result;
+                if (call.getFunctionName().equals("EXPAND")) {
+                    result = parse("defined(X) && !(defined(Y) || defined(Z))");
+                } else {
+                    result = super.visitFunctionCall(call);
+                }
+                return result;
+            }
+            
+        };
+        
+        assertThat(parser.parse("!(EXPAND() || defined(A))"), is(not(or(and("X", not(or("Y", "Z"))), "A"))));
+        assertThat(parser.parse("!(defined(B) || defined(A))"), is(not(or("B", "A"))));
+        
+        try {
+            parser.parse("!(defined(B) || A + 1)");
+            fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            assertThat(((CppExpressionFormatException) e).getReason(), is("Unsupported operator: + (binary)"));
+        }
+        assertThat(parser.parse("!(EXPAND() || defined(A))"), is(not(or(and("X", not(or("Y", "Z"))), "A"))));
+    }
 
 }
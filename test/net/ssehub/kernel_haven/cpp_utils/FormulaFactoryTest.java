@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils;
+
+import static net.ssehub.kernel_haven.cpp_utils.InvalidConditionHandling.EXCEPTION;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cpp_utils.non_boolean.CppNonBooleanConditionParser;
+import net.ssehub.kernel_haven.cpp_utils.non_boolean.Literal;
+import net.ssehub.kernel_haven.cpp_utils.non_boolean.NonBooleanOperator;
+import net.ssehub.kernel_haven.cpp_utils.parser.CppOperator;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+
+/**
+ * Tests the {@link FormulaFactory}.
+ *
+ * @author Adam
+ */
+public class FormulaFactoryTest {
+
+    /**
+     * Tests that a hash-consing factory returns the same instance for structurally identical formulas.
+     */
+    @Test
+    public void testHashConsing() {
+        FormulaFactory factory = new FormulaFactory(true);
+        Variable a = CppConditionParser.createVariable("A");
+        Variable b = CppConditionParser.createVariable("B");
+
+        Formula first = factory.and(a, factory.not(b));
+        Formula second = factory.and(a, factory.not(b));
+        assertThat(first == second, is(true));
+        assertThat(first, is(and("A", not("B"))));
+
+        assertThat(factory.or(a, factory.not(b)) == first, is(false));
+        assertThat(factory.and(factory.not(b), a) == first, is(false));
+        assertThat(factory.size(), is(4));
+    }
+
+    /**
+     * Tests that the non-Boolean formulas are hash-consed, and that operations with different operators are not
+     * shared.
+     */
+    @Test
+    public void testNonBooleanHashConsing() {
+        FormulaFactory factory = new FormulaFactory(true);
+        Variable a = CppConditionParser.createVariable("A");
+
+        Formula one = factory.literal("1");
+        assertThat(factory.literal("1") == one, is(true));
+        assertThat(factory.macro("FOO", one) == factory.macro("FOO", one), is(true));
+        assertThat(factory.macro("FOO", null) == factory.macro("FOO", null), is(true));
+        assertThat(factory.macro("FOO", null) == factory.macro("BAR", null), is(false));
+
+        Formula equal = factory.operator(a, CppOperator.CMP_EQ, one);
+        assertThat(factory.operator(a, CppOperator.CMP_EQ, one) == equal, is(true));
+        assertThat(factory.operator(a, CppOperator.CMP_NE, one) == equal, is(false));
+    }
+
+    /**
+     * Tests that the default factory creates new instances.
+     */
+    @Test
+    public void testDefault() {
+        Variable a = CppConditionParser.createVariable("A");
+
+        assertThat(FormulaFactory.DEFAULT.isHashConsing(), is(false));
+        assertThat(FormulaFactory.DEFAULT.not(a) == FormulaFactory.DEFAULT.not(a), is(false));
+        assertThat(FormulaFactory.DEFAULT.not(a), is(FormulaFactory.DEFAULT.not(a)));
+        assertThat(FormulaFactory.DEFAULT.size(), is(0));
+    }
+
+    /**
+     * Tests that {@link FormulaFactory#intern(Formula)} returns the canonical instance of formulas that were not
+     * created by the factory.
+     */
+    @Test
+    public void testIntern() {
+        FormulaFactory factory = new FormulaFactory(true);
+
+        Formula first = factory.intern(or(and("A", "B"), not("C")));
+        Formula second = factory.intern(or(and("A", "B"), not("C")));
+        assertThat(first == second, is(true));
+        assertThat(first, is(or(and("A", "B"), not("C"))));
+
+        Formula operation = factory.intern(new NonBooleanOperator(new Variable("A"), CppOperator.CMP_LT,
+                new Literal("2")));
+        assertThat(((NonBooleanOperator) operation).getLeft() == CppConditionParser.createVariable("A"), is(true));
+        assertThat(factory.operator(CppConditionParser.createVariable("A"), CppOperator.CMP_LT, factory.literal("2"))
+                == operation, is(true));
+    }
+
+    /**
+     * Tests that {@link FormulaFactory#intern(Formula)} handles deeply nested formulas without a
+     * {@link StackOverflowError}.
+     */
+    @Test
+    public void testInternDeeplyNested() {
+        FormulaFactory factory = new FormulaFactory(true);
+        Formula first = new Variable("A");
+        Formula second = new Variable("A");
+        for (int i = 0; i < 100000; i++) {
+            first = new Negation(new Conjunction(first, new Variable("B")));
+            second = new Negation(new Conjunction(second, new Variable("B")));
+        }
+
+        assertThat(factory.intern(first) == factory.intern(second), is(true));
+    }
+
+    /**
+     * Tests that parsers that use the same hash-consing factory share their formulas.
+     *
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testParsersShareFormulas() throws ExpressionFormatException {
+        FormulaFactory factory = new FormulaFactory(true);
+        CppConditionParser parser1 = new CppConditionParser(true, false, EXCEPTION, 0, factory);
+        CppConditionParser parser2 = new CppConditionParser(true, false, EXCEPTION, 0, factory);
+
+        Formula first = parser1.parse("defined(A) && !IS_ENABLED(B)");
+        Formula second = parser2.parse("defined A && !(IS_ENABLED(B))");
+        assertThat(first == second, is(true));
+
+        CppConditionParser nonBoolean = new CppNonBooleanConditionParser(false, EXCEPTION, 0, factory);
+        assertThat(nonBoolean.parse("A + 1 > B") == nonBoolean.parse("(A + 1) > B"), is(true));
+        assertThat(nonBoolean.parse("A + 1 > B") == nonBoolean.parse("A + 1 < B"), is(false));
+    }
+
+    /**
+     * Tests that formulas that are equal but spelled differently are the same instance with
+     * {@link FormulaFactory#SHARED}.
+     * This includes the {@link CppConditionParser#ERROR_VARIBLE}.
+     *
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testDifferentSpellingsAreShared() throws ExpressionFormatException {
+        CppConditionParser parser = new CppConditionParser(true, false, EXCEPTION, 0, FormulaFactory.SHARED);
+
+        Formula first = parser.parse("defined(SPELLED_A_MODULE) || defined(SPELLED_B)");
+        Formula second = parser.parse("IS_MODULE(SPELLED_A) || defined(SPELLED_B)");
+        assertThat(first, is(second));
+        assertThat(first == second, is(true));
+
+        assertThat(parser.parse("defined(PARSING_ERROR)") == CppConditionParser.ERROR_VARIBLE, is(true));
+        assertThat(FormulaFactory.SHARED.intern(new Variable("PARSING_ERROR")) == CppConditionParser.ERROR_VARIBLE,
+                is(true));
+    }
+
+}
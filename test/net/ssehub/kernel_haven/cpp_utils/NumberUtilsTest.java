@@ -102,4 +102,22 @@ public class NumberUtilsTest {
         }
     }
     
+    /**
+     * Tests that ranges of character sequences are converted correctly.
+     */
+    @Test
+    public void testRanges() {
+        assertThat(NumberUtils.convertToNumber("(10)", 1, 3), is(10L));
+        assertThat(NumberUtils.convertToNumber("a + 0xFF", 4, 8), is(255L));
+        assertThat(NumberUtils.convertToNumber("x-12.5x", 1, 6), is(-12.5));
+        assertThat(NumberUtils.convertToNumber(new StringBuilder("-9223372036854775808"), 0, 20),
+                is(Long.MIN_VALUE));
+        assertThat(NumberUtils.convertToNumber("abc", 0, 3), is((Number) null));
+        assertThat(NumberUtils.convertToNumber("10", 1, 1), is((Number) null));
+        
+        assertThat(NumberUtils.isInteger("a524b", 1, 4, 10), is(true));
+        assertThat(NumberUtils.isInteger("a524b", 0, 4, 10), is(false));
+        assertThat(NumberUtils.isInteger("a-b", 1, 2, 10), is(false));
+    }
+    
 }
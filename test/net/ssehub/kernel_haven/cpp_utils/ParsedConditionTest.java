@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils;
+
+import static net.ssehub.kernel_haven.cpp_utils.InvalidConditionHandling.EXCEPTION;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cpp_utils.non_boolean.CppNonBooleanConditionParser;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+
+/**
+ * Tests the {@link ParsedCondition}.
+ *
+ * @author Adam
+ */
+public class ParsedConditionTest {
+
+    /**
+     * Tests that the translations are the same as parsing the text of the condition, for all flavors.
+     */
+    @Test
+    public void testSameAsParsing() {
+        CppConditionParser[] parsers = {
+            new CppConditionParser(false, false, EXCEPTION),
+            new CppConditionParser(false, true, EXCEPTION),
+            new CppConditionParser(true, false, EXCEPTION),
+            new CppConditionParser(true, true, InvalidConditionHandling.TRUE),
+            new CppNonBooleanConditionParser(false, EXCEPTION),
+            new CppNonBooleanConditionParser(true, InvalidConditionHandling.ERROR_VARIABLE),
+            // sub-classes translate via the AST
+            new CppConditionParser(true, true, EXCEPTION) {
+            },
+        };
+        String[] conditions = {
+            "defined(A) && !defined B",
+            "IS_ENABLED(CONFIG_A) || A > 2 && B",
+            "A + 1 == -B",
+            "defined(A) &&",
+            "F(A) || 0x10",
+            "-(A + B)",
+        };
+
+        for (String condition : conditions) {
+            ParsedCondition parsed = ParsedCondition.parse(condition);
+            for (CppConditionParser parser : parsers) {
+                ParseResult expected = parser.tryParse(condition);
+                ParseResult actual = parsed.tryTranslate(parser);
+
+                assertThat(condition, actual.getFormula(), is(expected.getFormula()));
+                assertThat(condition, actual.getErrorMessage(), is(expected.getErrorMessage()));
+            }
+        }
+    }
+
+    /**
+     * Tests that the translations are memoized per flavor.
+     *
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testMemoized() throws ExpressionFormatException {
+        ParsedCondition parsed = ParsedCondition.parse("IS_ENABLED(A) || B == 1");
+        assertThat(parsed.getTranslationCount(), is(0));
+
+        CppConditionParser linux = new CppConditionParser(true, true, EXCEPTION);
+        Formula first = parsed.translate(linux);
+        assertThat(parsed.translate(linux) == first, is(true));
+        // same configuration, same flavor
+        assertThat(parsed.translate(new CppConditionParser(true, true, EXCEPTION)) == first, is(true));
+        assertThat(parsed.getTranslationCount(), is(1));
+
+        Formula nonBoolean = parsed.translate(new CppNonBooleanConditionParser(true, EXCEPTION));
+        assertThat(nonBoolean == first, is(false));
+        assertThat(parsed.getTranslationCount(), is(2));
+
+        try {
+            parsed.translate(new CppConditionParser(false, false, EXCEPTION));
+            fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            // expected
+        }
+        assertThat(parsed.getTranslationCount(), is(3));
+        assertThat(parsed.tryTranslate(new CppConditionParser(false, false, EXCEPTION)).isSuccess(), is(false));
+        assertThat(parsed.getTranslationCount(), is(3));
+
+        // sub-classes only share with the same instance
+        CppConditionParser subClass = new CppConditionParser(true, true, EXCEPTION) {
+        };
+        assertThat(parsed.translate(subClass), is(first));
+        assertThat(parsed.translate(subClass), is(first));
+        assertThat(parsed.getTranslationCount(), is(4));
+    }
+
+    /**
+     * Tests a condition with a syntax error.
+     *
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testSyntaxError() throws ExpressionFormatException {
+        ParsedCondition parsed = ParsedCondition.parse("defined(A) ||");
+        assertThat(parsed.isSyntaxValid(), is(false));
+
+        assertThat(parsed.translate(new CppConditionParser(false, false, InvalidConditionHandling.TRUE)),
+                is(True.INSTANCE));
+        try {
+            parsed.getAst();
+            fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests parsing a range of a character sequence, and the AST of the condition.
+     *
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testRange() throws ExpressionFormatException {
+        ParsedCondition parsed = ParsedCondition.parse("#if defined(A) || defined(B)\n", 4, 28);
+        assertThat(parsed.isSyntaxValid(), is(true));
+        assertThat(parsed.getAst() == parsed.getAst(), is(true));
+        assertThat(parsed.getAst().isFrozen(), is(true));
+        assertThat(parsed.translate(new CppConditionParser(false, false, EXCEPTION)),
+                is(or(new Variable("A"), new Variable("B"))));
+    }
+
+}
@@ -7,11 +7,16 @@ import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.util.Arrays;
+import java.util.HashSet;
+
 import org.junit.Test;
 
 import net.ssehub.kernel_haven.cpp_utils.CppConditionParser;
 import net.ssehub.kernel_haven.cpp_utils.InvalidConditionHandling;
 import net.ssehub.kernel_haven.cpp_utils.parser.CppOperator;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
 import net.ssehub.kernel_haven.util.logic.True;
 import net.ssehub.kernel_haven.util.logic.Variable;
 import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
@@ -204,13 +209,13 @@ public class CppNonBooleanConditionParserTest {
         assertThat(parser.parse("2 != A"),
             is(new NonBooleanOperator(new Literal("2"), CppOperator.CMP_NE, new Variable("A"))));
         assertThat(parser.parse("2 <= A"),
-            is(new NonBooleanOperator(new Literal("2"), CppOperator.CMP_GE, new Variable("A"))));
+            is(new NonBooleanOperator(new Literal("2"), CppOperator.CMP_LE, new Variable("A"))));
         assertThat(parser.parse("2 < A"),
-            is(new NonBooleanOperator(new Literal("2"), CppOperator.CMP_GT, new Variable("A"))));
-        assertThat(parser.parse("2 > A"),
             is(new NonBooleanOperator(new Literal("2"), CppOperator.CMP_LT, new Variable("A"))));
+        assertThat(parser.parse("2 > A"),
+            is(new NonBooleanOperator(new Literal("2"), CppOperator.CMP_GT, new Variable("A"))));
         assertThat(parser.parse("2 >= A"),
-            is(new NonBooleanOperator(new Literal("2"), CppOperator.CMP_LE, new Variable("A"))));
+            is(new NonBooleanOperator(new Literal("2"), CppOperator.CMP_GE, new Variable("A"))));
         assertThat(parser.parse("1 ^ A"),
             is(new NonBooleanOperator(new Literal("1"), CppOperator.BIN_XOR, new Variable("A"))));
     }
@@ -233,9 +238,9 @@ public class CppNonBooleanConditionParserTest {
         assertThat(parser.parse("A > B"),
             is(new NonBooleanOperator(new Variable("A"), CppOperator.CMP_GT, new Variable("B"))));
         assertThat(parser.parse("A < B"),
-            is(new NonBooleanOperator(new Variable("A"), CppOperator.CMP_LE, new Variable("B"))));
-        assertThat(parser.parse("A <= B"),
             is(new NonBooleanOperator(new Variable("A"), CppOperator.CMP_LT, new Variable("B"))));
+        assertThat(parser.parse("A <= B"),
+            is(new NonBooleanOperator(new Variable("A"), CppOperator.CMP_LE, new Variable("B"))));
         assertThat(parser.parse("A ^ B"),
             is(new NonBooleanOperator(new Variable("A"), CppOperator.BIN_XOR, new Variable("B"))));
     }
@@ -406,5 +411,89 @@ public class CppNonBooleanConditionParserTest {
         assertThat(parser.parse("2.214 <= A"),
             is(new NonBooleanOperator(new Literal("2.214"), CppOperator.CMP_LE, new Variable("A"))));
     }
+    
+    /**
+     * Tests that non-Boolean operations with different operators are not equal.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testOperatorEquality() throws ExpressionFormatException {
+        CppConditionParser parser = new CppNonBooleanConditionParser(false, EXCEPTION);
+        
+        Formula equal = parser.parse("A == B");
+        Formula notEqual = parser.parse("A != B");
+        assertThat(equal.equals(notEqual), is(false));
+        assertThat(equal.hashCode() == notEqual.hashCode(), is(false));
+        
+        Formula less = parser.parse("A < B");
+        Formula lessSwitched = parser.parse("B < A");
+        assertThat(less.equals(lessSwitched), is(false));
+        assertThat(less.hashCode() == lessSwitched.hashCode(), is(false));
+        
+        assertThat(parser.parse("A == B"), is(equal));
+        assertThat(parser.parse("A == B").hashCode(), is(equal.hashCode()));
+    }
+    
+    /**
+     * Tests the equality of macros.
+     */
+    @Test
+    public void testMacroEquality() {
+        assertThat(new Macro("A", null), is(new Macro("A", null)));
+        assertThat(new Macro("A", null).hashCode(), is(new Macro("A", null).hashCode()));
+        assertThat(new Macro("A", new Variable("B")), is(new Macro("A", new Variable("B"))));
+        
+        assertThat(new Macro("A", null).equals(new Macro("B", null)), is(false));
+        assertThat(new Macro("A", new Variable("B")).equals(new Macro("A", null)), is(false));
+        assertThat(new Macro("A", null).equals(new Macro("A", new Variable("B"))), is(false));
+        assertThat(new Macro("A", new Variable("B")).equals(new Macro("A", new Variable("C"))), is(false));
+    }
+    
+    /**
+     * Tests that number literals are parsed into {@link NumericLiteral}s that keep the value and the text.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testNumericLiterals() throws ExpressionFormatException {
+        CppConditionParser parser = new CppNonBooleanConditionParser(false, EXCEPTION);
+        
+        NumericLiteral hex = (NumericLiteral) parser.parse("0x10");
+        assertThat(hex.isInteger(), is(true));
+        assertThat(hex.getLongValue(), is(16L));
+        assertThat(hex.toString(), is("16"));
+        assertThat(hex, is(new Literal("16")));
+        
+        NumericLiteral negativeZero = (NumericLiteral) parser.parse("-0");
+        assertThat(negativeZero.getLongValue(), is(0L));
+        assertThat(negativeZero.toString(), is("-0"));
+        
+        NumericLiteral negativeFloat = (NumericLiteral) parser.parse("-2.5");
+        assertThat(negativeFloat.isInteger(), is(false));
+        assertThat(negativeFloat.getDoubleValue(), is(-2.5));
+        assertThat(negativeFloat.getValue(), is((Number) (-2.5)));
+        assertThat(negativeFloat.toString(), is("-2.5"));
+        
+        NonBooleanOperator comparison = (NonBooleanOperator) parser.parse("A < 3");
+        assertThat(((NumericLiteral) comparison.getRight()).getValue(), is((Number) 3L));
+    }
+
+    /**
+     * Tests that the {@link VariableFinder} finds the variables of deeply nested formulas without a
+     * {@link StackOverflowError}.
+     */
+    @Test
+    public void testVariableFinderDeeplyNested() {
+        Formula formula = new Variable("A");
+        for (int i = 0; i < 100000; i++) {
+            formula = new NonBooleanOperator(new Negation(formula), CppOperator.INT_ADD, new Macro("F",
+                    i == 500 ? new Variable("B") : new Literal("1")));
+        }
+        
+        VariableFinder finder = new VariableFinder();
+        formula.accept(finder);
+        assertThat(finder.getVariables(), is(new HashSet<>(Arrays.asList(new Variable("A"), new Variable("B")))));
+    }
 
 }
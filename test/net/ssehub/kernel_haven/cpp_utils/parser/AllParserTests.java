@@ -26,9 +26,11 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
+    CompactExpressionTest.class,
     CppLexerTest.class,
     CppParserTest.class,
     CppParserScenarioTests.class,
+    SymbolTableTest.class,
     })
 public class AllParserTests {
 
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.parser;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.CppExpression;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.ExpressionList;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.FunctionCall;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.Operator;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.Variable;
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+
+/**
+ * Tests the {@link CompactExpression}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class CompactExpressionTest {
+    
+    /**
+     * Tests that the compact encoding of parsed expressions converts back into the same AST as normal parsing.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testRoundTrip() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        String[] expressions = {
+            "A",
+            "defined(A) && !defined B",
+            "(A + 1) * -B > 3 || IS_ENABLED(CONFIG_C)",
+            "~A << 2 == (B >> 1) % 4",
+            "F() && G(H(1))",
+            "0x7FFFFFFFFFFFFFFF > 1.5",
+        };
+        
+        for (String expression : expressions) {
+            CppExpression ast = parser.parse(expression);
+            CompactExpression compact = parser.parseCompact(expression);
+            
+            assertThat(expression, compact.toAst().toString(), is(ast.toString()));
+            assertThat(expression, compact.toString(), is(ast.toString()));
+            assertThat(expression, CompactExpression.fromAst(ast), is(compact));
+            assertThat(expression, CompactExpression.fromAst(ast).hashCode(), is(compact.hashCode()));
+        }
+    }
+    
+    /**
+     * Tests reading the nodes of a compact expression by their index.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testNodes() throws ExpressionFormatException {
+        CompactExpression compact = new CppParser().parseCompact("!defined(A) && B > 300000000 || F() == 2.5");
+        
+        assertThat(compact.size(), is(11));
+        
+        assertThat(compact.getKind(0), is(CompactExpression.VARIABLE));
+        assertThat(compact.getName(0), is("A"));
+        assertThat(compact.getSymbol(0), is(SymbolTable.GLOBAL.getId("A")));
+        assertThat(compact.getKind(1), is(CompactExpression.FUNCTION_CALL));
+        assertThat(compact.getName(1), is("defined"));
+        assertThat(compact.hasArgument(1), is(true));
+        assertThat(compact.getKind(2), is(CompactExpression.UNARY_OPERATOR));
+        assertThat(compact.getOperator(2), is(CppOperator.BOOL_NOT));
+        
+        assertThat(compact.getName(3), is("B"));
+        // does not fit into the node itself
+        assertThat(compact.getKind(4), is(CompactExpression.LITERAL));
+        assertThat(compact.isIntegerLiteral(4), is(true));
+        assertThat(compact.getLongValue(4), is(300000000L));
+        assertThat(compact.getValue(4), is((Number) 300000000L));
+        assertThat(compact.getKind(5), is(CompactExpression.BINARY_OPERATOR));
+        assertThat(compact.getOperator(5), is(CppOperator.CMP_GT));
+        assertThat(compact.getOperator(6), is(CppOperator.BOOL_AND));
+        
+        assertThat(compact.getKind(7), is(CompactExpression.FUNCTION_CALL));
+        assertThat(compact.hasArgument(7), is(false));
+        assertThat(compact.isIntegerLiteral(8), is(false));
+        assertThat(compact.getDoubleValue(8), is(2.5));
+        assertThat(compact.getLongValue(8), is(2L));
+        assertThat(compact.getOperator(9), is(CppOperator.CMP_EQ));
+        assertThat(compact.getOperator(10), is(CppOperator.BOOL_OR));
+    }
+    
+    /**
+     * Tests that {@link CompactExpression#accept(ICppExpressionBuilder)} passes the nodes to a builder in the same way
+     * as the parser.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testAccept() throws ExpressionFormatException {
+        ICppExpressionBuilder<String> builder = new ICppExpressionBuilder<String>() {
+            
+            @Override
+            public String variable(String name) {
+                return name;
+            }
+            
+            @Override
+            public String literal(Number value) {
+                return value.toString();
+            }
+            
+            @Override
+            public String functionCall(String name, String argument) {
+                return name + "[" + (argument != null ? argument : "") + "]";
+            }
+            
+            @Override
+            public String unaryOperator(CppOperator operator, String operand) {
+                return "(" + operator.getSymbol() + operand + ")";
+            }
+            
+            @Override
+            public String binaryOperator(CppOperator operator, String leftSide, String rightSide) {
+                return "(" + leftSide + operator.getSymbol() + rightSide + ")";
+            }
+        };
+        
+        CppParser parser = new CppParser();
+        String expression = "!defined(A) || B - 1 < -C * 2 && F()";
+        assertThat(parser.parseCompact(expression).accept(builder), is(parser.parse(expression, builder)));
+    }
+    
+    /**
+     * Tests that deeply nested expressions can be converted without a {@link StackOverflowError}.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testDeepNesting() throws ExpressionFormatException {
+        CppExpression ast = new Variable("A");
+        for (int i = 0; i < 100000; i++) {
+            Operator not = new Operator(CppOperator.BOOL_NOT);
+            not.setLeftSide(ast);
+            ast = not;
+        }
+        
+        CompactExpression compact = CompactExpression.fromAst(ast);
+        assertThat(compact.size(), is(100001));
+        assertThat(compact.toAst() instanceof Operator, is(true));
+        assertThat(compact.accept(new CountingBuilder()), is(100001));
+    }
+    
+    /**
+     * Tests that an AST with an {@link ExpressionList} can not be converted.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testExpressionList() {
+        ExpressionList list = new ExpressionList();
+        list.addExpression(new Variable("A"));
+        CompactExpression.fromAst(new FunctionCall("F", list));
+    }
+    
+    /**
+     * A builder that counts the nodes.
+     */
+    private static class CountingBuilder implements ICppExpressionBuilder<Integer> {
+    
+        @Override
+        public Integer variable(String name) {
+            return 1;
+        }
+    
+        @Override
+        public Integer literal(Number value) {
+            return 1;
+        }
+    
+        @Override
+        public Integer functionCall(String name, Integer argument) {
+            return argument != null ? argument + 1 : 1;
+        }
+    
+        @Override
+        public Integer unaryOperator(CppOperator operator, Integer operand) {
+            return operand + 1;
+        }
+    
+        @Override
+        public Integer binaryOperator(CppOperator operator, Integer leftSide, Integer rightSide) {
+            return leftSide + rightSide + 1;
+        }
+        
+    }
+    
+}
@@ -17,6 +17,11 @@ package net.ssehub.kernel_haven.cpp_utils.parser;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
 
 import org.junit.Test;
 
@@ -202,6 +207,61 @@ public class CppLexerTest {
         assertThat(parser.lex("543ULL"), is(new CppToken[] {new LiteralToken(0, 6, 543L)}));
     }
     
+    /**
+     * Tests that the suffixes "LU" and "LLU" (in any case) are detected, too.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testLiteralWithTrailingUnsignedSuffix() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        
+        assertThat(parser.lex("10LU"), is(new CppToken[] {new LiteralToken(0, 4, 10L)}));
+        assertThat(parser.lex("10llu"), is(new CppToken[] {new LiteralToken(0, 5, 10L)}));
+        assertThat(parser.lex("0x1FULL"), is(new CppToken[] {new LiteralToken(0, 7, 31L)}));
+        assertThat(parser.lex("7u"), is(new CppToken[] {new LiteralToken(0, 2, 7L)}));
+    }
+    
+    /**
+     * Tests that octal and binary literals are detected.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testOctalAndBinaryLiterals() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        
+        assertThat(parser.lex("010"), is(new CppToken[] {new LiteralToken(0, 3, 8L)}));
+        assertThat(parser.lex("0"), is(new CppToken[] {new LiteralToken(0, 1, 0L)}));
+        assertThat(parser.lex("0777UL"), is(new CppToken[] {new LiteralToken(0, 6, 511L)}));
+        assertThat(parser.lex("0b101"), is(new CppToken[] {new LiteralToken(0, 5, 5L)}));
+        assertThat(parser.lex("0B11u"), is(new CppToken[] {new LiteralToken(0, 5, 3L)}));
+    }
+    
+    /**
+     * Tests that an octal literal with the digit 8 correctly throws an exception.
+     * 
+     * @throws ExpressionFormatException wanted.
+     */
+    @Test(expected = ExpressionFormatException.class)
+    public void testInvalidOctalLiteral() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        
+        parser.lex("08");
+    }
+    
+    /**
+     * Tests that a literal that does not fit into a long correctly throws an exception.
+     * 
+     * @throws ExpressionFormatException wanted.
+     */
+    @Test(expected = ExpressionFormatException.class)
+    public void testTooLargeLiteral() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        
+        parser.lex("0x8000000000000000");
+    }
+    
     /**
      * Tests that a literal with decimals is correctly detected. 
      * 
@@ -212,6 +272,8 @@ public class CppLexerTest {
         CppParser parser = new CppParser();
         
         assertThat(parser.lex("14.4"), is(new CppToken[] {new LiteralToken(0, 4, 14.4)}));
+        assertThat(parser.lex("1.5f"), is(new CppToken[] {new LiteralToken(0, 4, 1.5)}));
+        assertThat(parser.lex("1e3"), is(new CppToken[] {new LiteralToken(0, 3, 1000L)}));
     }
     
     /**
@@ -263,4 +325,170 @@ public class CppLexerTest {
         parser.lex("A.B");
     }
     
+    /**
+     * Tests that expressions with more tokens than the initial capacity of the token buffer are lexed correctly.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testManyTokens() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        
+        StringBuilder expression = new StringBuilder("A0");
+        for (int i = 1; i < 50; i++) {
+            expression.append("||A").append(i);
+        }
+        
+        CppToken[] tokens = parser.lex(expression.toString());
+        assertThat(tokens.length, is(99));
+        assertThat(tokens[0], is(new IdentifierToken(0, "A0")));
+        assertThat(tokens[97], is(new OperatorToken(expression.length() - 5, CppOperator.BOOL_OR)));
+        assertThat(tokens[98], is(new IdentifierToken(expression.length() - 3, "A49")));
+    }
+    
+    /**
+     * Tests that runs of whitespace (including non-ASCII whitespace) and long identifiers are lexed correctly.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testWhitespaceAndIdentifierRuns() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        
+        assertThat(parser.lex(" \t\u2003CONFIG_A_VERY_LONG_NAME_1\u2003 \t&&\nB_2 "), is(new CppToken[] {
+            new IdentifierToken(3, "CONFIG_A_VERY_LONG_NAME_1"), new OperatorToken(31, CppOperator.BOOL_AND),
+            new IdentifierToken(34, "B_2")}));
+    }
+    
+    /**
+     * Tests that scanning runs word by word in a {@link ByteBuffer} finds the same run ends as scanning the characters
+     * one by one, for all start and end positions, both byte orders, and heap and direct buffers.
+     */
+    @Test
+    public void testByteBufferRuns() {
+        StringBuilder text = new StringBuilder(" \t\u000B\u001C A_Very.Long_Identifier_09az_AZ@[`{/:");
+        text.append("\u0080\u00FF A\u00C1B ");
+        text.append("\r\n\f\u001F \u00A0   x\u0000\u007F ABCDEFGHIJKLMNOPQRSTUVWXYZ \u0008\u0021\u001B");
+        char[] chars = text.toString().toCharArray();
+        byte[] data = new byte[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            data[i] = (byte) chars[i];
+        }
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data);
+        
+        for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.wrap(data), direct}) {
+            for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+                buffer.order(order);
+                for (int start = 0; start < chars.length; start++) {
+                    for (int end = start; end <= chars.length; end++) {
+                        assertThat(CharacterClasses.identifierEnd(buffer, start, end),
+                                is(CharacterClasses.identifierEnd(chars, start, end)));
+                        assertThat(CharacterClasses.whitespaceEnd(buffer, start, end),
+                                is(CharacterClasses.whitespaceEnd(chars, start, end)));
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Tests that the {@link TokenCursor} lexes tokens on demand.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testTokenCursor() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        ParseContext context = new ParseContext();
+        char[] expr = context.setExpression(" A && $", 0, 7);
+        TokenCursor cursor = context.startCursor(parser, expr);
+        TokenBuffer tokens = cursor.getTokens();
+        
+        assertThat(tokens.size(), is(0));
+        assertThat(cursor.peek(), is(0));
+        assertThat(tokens.size(), is(1));
+        assertThat(cursor.next(), is(0));
+        assertThat(tokens.getKind(0), is(TokenBuffer.IDENTIFIER));
+        
+        assertThat(cursor.next(), is(1));
+        assertThat(tokens.getOperator(1), is(CppOperator.BOOL_AND));
+        assertThat(tokens.size(), is(2));
+        
+        try {
+            cursor.next();
+            fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            // expected: the invalid character is only found when the third token is requested
+        }
+    }
+    
+    /**
+     * Tests that the {@link TokenCursor} returns -1 at the end of the expression, also with trailing whitespace.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testTokenCursorEnd() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        ParseContext context = new ParseContext();
+        char[] expr = context.setExpression("A  ", 0, 3);
+        TokenCursor cursor = context.startCursor(parser, expr);
+        
+        assertThat(cursor.next(), is(0));
+        assertThat(cursor.peek(), is(-1));
+        assertThat(cursor.next(), is(-1));
+    }
+        
+    /**
+     * Tests lexing a range of an expression with the public {@link TokenCursor}. Positions are relative to the start
+     * of the range, and invalid characters are only reported when the cursor reaches them.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testTokenize() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        ParseContext context = new ParseContext();
+        CharBuffer source = CharBuffer.wrap("#if defined(A) && B > 0x10 || C $".toCharArray());
+        source.position(4);
+        
+        TokenCursor cursor = parser.tokenize(source, 0, 22, context);
+        TokenBuffer tokens = cursor.getTokens();
+        
+        int token = cursor.next();
+        assertThat(tokens.getKind(token), is(TokenBuffer.IDENTIFIER));
+        assertThat(SymbolTable.GLOBAL.getName(tokens.getSymbol(token)), is("defined"));
+        assertThat(cursor.getPosition(token), is(0));
+        assertThat(tokens.getLength(token), is(7));
+        
+        assertThat(tokens.getKind(cursor.next()), is(TokenBuffer.OPENING_BRACKET));
+        assertThat(cursor.peek(), is(2));
+        assertThat(cursor.next(), is(2));
+        assertThat(tokens.getKind(cursor.next()), is(TokenBuffer.CLOSING_BRACKET));
+        
+        token = cursor.next();
+        assertThat(tokens.getOperator(token), is(CppOperator.BOOL_AND));
+        assertThat(cursor.getPosition(token), is(11));
+        
+        cursor.next();
+        cursor.next();
+        token = cursor.next();
+        assertThat(tokens.getKind(token), is(TokenBuffer.LITERAL_LONG));
+        assertThat(tokens.getLiteralValue(token), is((Number) 16L));
+        assertThat(cursor.getPosition(token), is(18));
+        assertThat(cursor.next(), is(-1));
+        
+        cursor = parser.tokenize(source, 0, source.remaining(), context);
+        for (int i = 0; i < 10; i++) {
+            assertThat(cursor.next(), is(i));
+        }
+        try {
+            cursor.next();
+            fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            assertThat(cursor.getTokens().size(), is(10));
+        }
+    }
+
 }
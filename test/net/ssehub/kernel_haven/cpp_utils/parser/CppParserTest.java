@@ -19,10 +19,16 @@ import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.Test;
 
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.CppExpression;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.CppExpressionWalker;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.FunctionCall;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.NumberLiteral;
 import net.ssehub.kernel_haven.cpp_utils.parser.ast.Operator;
@@ -513,6 +519,345 @@ public class CppParserTest {
         assertLiteral(op2[0], 3.7);
     }
     
+    /**
+     * Tests that a {@link ParseContext} can be re-used for several expressions, including a shorter expression after a
+     * longer one.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testReuseParseContext() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        ParseContext context = new ParseContext();
+        
+        CppExpression result = parser.parse("A_LONG_VARIABLE_NAME * (B + C)", context);
+        CppExpression[] op1 = assertOperator(result, CppOperator.INT_MUL);
+        assertVariable(op1[0], "A_LONG_VARIABLE_NAME");
+        
+        result = parser.parse("D + E", context);
+        CppExpression[] op2 = assertOperator(result, CppOperator.INT_ADD);
+        assertVariable(op2[0], "D");
+        assertVariable(op2[1], "E");
+    }
+    
+    /**
+     * Tests that an operator without any operands correctly throws an exception.
+     *
+     * @throws ExpressionFormatException wanted.
+     */
+    @Test(expected = ExpressionFormatException.class)
+    public void testOperatorWithoutOperands() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        
+        parser.parse("A && ==");
+    }
+    
+    /**
+     * Tests that deeply nested brackets are parsed without a {@link StackOverflowError}.
+     *
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testDeeplyNestedBrackets() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        
+        int depth = 100000;
+        StringBuilder expression = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            expression.append('(');
+        }
+        expression.append('A');
+        for (int i = 0; i < depth; i++) {
+            expression.append(')');
+        }
+        
+        CppExpression result = parser.parse(expression.toString());
+        assertVariable(result, "A");
+    }
+    
+    /**
+     * Tests that a long chain of binary operators is resolved left-to-right.
+     *
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testLongOperatorChain() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        
+        CppExpression result = parser.parse("A - B - C * D");
+        CppExpression[] sub2 = assertOperator(result, CppOperator.INT_SUB);
+        CppExpression[] mul = assertOperator(sub2[1], CppOperator.INT_MUL);
+        assertVariable(mul[0], "C");
+        assertVariable(mul[1], "D");
+        CppExpression[] sub1 = assertOperator(sub2[0], CppOperator.INT_SUB);
+        assertVariable(sub1[0], "A");
+        assertVariable(sub1[1], "B");
+    }
+
+    /**
+     * Tests parsing expressions from ranges of different {@link CharSequence}s.
+     *
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testParseCharSequenceRange() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        
+        // heap buffer with a backing array; parsed in place
+        CharBuffer file = CharBuffer.wrap("#if A + 1\n#endif".toCharArray());
+        file.position(1);
+        CppExpression result = parser.parse(file.slice(), 3, 8);
+        CppExpression[] add = assertOperator(result, CppOperator.INT_ADD);
+        assertVariable(add[0], "A");
+        assertLiteral(add[1], 1L);
+        
+        // read-only buffer without accessible array
+        assertVariable(parser.parse(CharBuffer.wrap("(B)"), 1, 2), "B");
+        
+        // StringBuilder
+        assertVariable(parser.parse(new StringBuilder("C")), "C");
+    }
+    
+    /**
+     * Tests that the error position and message of an expression in a range of a {@link CharSequence} are relative to
+     * the start of the range.
+     */
+    @Test
+    public void testParseCharSequenceRangeException() {
+        CppParser parser = new CppParser();
+        
+        try {
+            parser.parse(CharBuffer.wrap("#if A B\n".toCharArray()), 4, 7);
+            fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            CppExpressionFormatException exc = (CppExpressionFormatException) e;
+            assertThat(exc.getExpression(), is("A B"));
+            assertThat(exc.getPosition(), is(2));
+        }
+    }
+    
+    /**
+     * Tests parsing expressions from ranges of heap and direct {@link ByteBuffer}s.
+     *
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testParseByteBufferRange() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        byte[] file = "#if defined(A) || B > 0x10\n#endif\n".getBytes(StandardCharsets.US_ASCII);
+        
+        ByteBuffer heap = ByteBuffer.wrap(file);
+        ByteBuffer direct = ByteBuffer.allocateDirect(file.length);
+        direct.put(file);
+        direct.flip();
+        
+        for (ByteBuffer buffer : new ByteBuffer[] {heap, direct}) {
+            CppExpression result = parser.parse(buffer, 4, 26);
+            CppExpression[] or = assertOperator(result, CppOperator.BOOL_OR);
+            assertThat(((FunctionCall) or[0]).getFunctionName(), is("defined"));
+            CppExpression[] gt = assertOperator(or[1], CppOperator.CMP_GT);
+            assertVariable(gt[0], "B");
+            assertLiteral(gt[1], 16L);
+            
+            assertThat(buffer.position(), is(0));
+        }
+    }
+    
+    /**
+     * Tests that non-ASCII bytes in a {@link ByteBuffer} are reported as invalid characters with their byte value.
+     */
+    @Test
+    public void testParseByteBufferNonAscii() {
+        CppParser parser = new CppParser();
+        ByteBuffer buffer = ByteBuffer.wrap("#if A && \u00c4\n".getBytes(StandardCharsets.UTF_8));
+        
+        try {
+            parser.parse(buffer, 4, buffer.limit() - 1);
+            fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            CppExpressionFormatException exc = (CppExpressionFormatException) e;
+            assertThat(exc.getReason(), is("Invalid character in expression: 0xC3"));
+            assertThat(exc.getPosition(), is(5));
+            assertThat(exc.getExpression(), is("A && ??"));
+        }
+    }
+    
+    /**
+     * Tests that parsing stops at the first syntax error, without lexing the rest of the expression.
+     */
+    @Test
+    public void testStopsAtFirstSyntaxError() {
+        CppParser parser = new CppParser();
+        
+        try {
+            parser.parse("A B $ 1abc");
+            fail("Expected ExpressionFormatException");
+        } catch (ExpressionFormatException e) {
+            CppExpressionFormatException exc = (CppExpressionFormatException) e;
+            assertThat(exc.getReason(), is("Couldn't find operator"));
+            assertThat(exc.getPosition(), is(2));
+        }
+    }
+    
+    /**
+     * Tests that the parser creates frozen ASTs that are compared by their structure.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testFrozenAst() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        
+        CppExpression first = parser.parse("defined(A) && B + 1 > 2");
+        CppExpression second = parser.parse("(defined A) && ((B + 1) > 2)");
+        assertThat(first.isFrozen(), is(true));
+        assertThat(first == second, is(false));
+        assertThat(first, is(second));
+        assertThat(first.hashCode(), is(second.hashCode()));
+        
+        assertThat(first.equals(parser.parse("defined(A) && B + 1 > 3")), is(false));
+        assertThat(first.equals(parser.parse("defined(A) || B + 1 > 2")), is(false));
+        assertThat(first.equals(parser.parse("defined(B) && B + 1 > 2")), is(false));
+        assertThat(parser.parse("-A").equals(parser.parse("A")), is(false));
+        assertThat(parser.parse("F()").equals(parser.parse("F(A)")), is(false));
+        assertThat(parser.parse("1").equals(parser.parse("1.5")), is(false));
+        
+        Operator and = (Operator) first;
+        try {
+            and.setRightSide(new Variable("C"));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            ((FunctionCall) and.getLeftSide()).setArgument(null);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+    
+    /**
+     * Tests freezing a manually created AST.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testFreeze() throws ExpressionFormatException {
+        Operator not = new Operator(CppOperator.BOOL_NOT);
+        FunctionCall defined = new FunctionCall("defined", null);
+        not.setLeftSide(defined);
+        defined.setArgument(new Variable("A"));
+        
+        assertThat(not.isFrozen(), is(false));
+        assertThat(not, is(new CppParser().parse("!defined(A)")));
+        int hash = not.hashCode();
+        
+        assertThat(not.freeze(), is((CppExpression) not));
+        assertThat(not.isFrozen(), is(true));
+        assertThat(defined.isFrozen(), is(true));
+        assertThat(not.hashCode(), is(hash));
+        
+        // deep trees are hashed, frozen and compared iteratively
+        CppExpression deep = new Variable("A");
+        CppExpression otherDeep = new Variable("A");
+        for (int i = 0; i < 100000; i++) {
+            Operator operator = new Operator(CppOperator.BOOL_NOT);
+            operator.setLeftSide(deep);
+            deep = operator;
+            otherDeep = new Operator(CppOperator.BOOL_NOT, otherDeep, null);
+        }
+        int deepHash = deep.hashCode();
+        deep.freeze();
+        assertThat(deep.hashCode(), is(deepHash));
+        assertThat(deep.equals(otherDeep), is(true));
+        assertThat(deep.hashCode(), is(otherDeep.hashCode()));
+    }
+    
+    /**
+     * Tests that the constructors of frozen nodes do not call overridable methods of subclasses that are not fully
+     * constructed yet, and that freezing a node with frozen children computes the same hash.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testFreezeSubclassAndFrozenChildren() throws ExpressionFormatException {
+        class PrefixedVariable extends Variable {
+            
+            private final @NonNull String prefix;
+            
+            PrefixedVariable(@NonNull String prefix, @NonNull String name) {
+                super(name);
+                this.prefix = prefix;
+            }
+            
+            @Override
+            protected int hashShallow() {
+                return prefix.length() + super.hashShallow();
+            }
+            
+        }
+        
+        PrefixedVariable variable = new PrefixedVariable("", "A");
+        assertThat(variable.isFrozen(), is(true));
+        assertThat(variable.hashCode(), is(new Variable("A").hashCode()));
+        
+        FunctionCall defined = new FunctionCall("defined", new Variable("A"));
+        Operator not = new Operator(CppOperator.BOOL_NOT);
+        not.setLeftSide(defined);
+        int hash = not.hashCode();
+        
+        defined.freeze();
+        assertThat(not.isFrozen(), is(false));
+        not.freeze();
+        assertThat(not.isFrozen(), is(true));
+        assertThat(not.hashCode(), is(hash));
+        assertThat(not.hashCode(), is(new CppParser().parse("!defined(A)").hashCode()));
+    }
+    
+    /**
+     * Tests the order in which the {@link CppExpressionWalker} passes the nodes to its listener.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testWalker() throws ExpressionFormatException {
+        CppExpression ast = new CppParser().parse("A && !F(B + 1) || G()");
+        StringBuilder order = new StringBuilder();
+        
+        CppExpressionWalker.walk(ast, new CppExpressionWalker.IListener() {
+            
+            @Override
+            public boolean enter(CppExpression node) {
+                order.append('<').append(getName(node));
+                // skip the argument of F()
+                return !(node instanceof FunctionCall && ((FunctionCall) node).getFunctionName().equals("F"));
+            }
+            
+            @Override
+            public void leave(CppExpression node) {
+                order.append('>').append(getName(node));
+            }
+            
+            private String getName(CppExpression node) {
+                String result;
+                if (node instanceof Variable) {
+                    result = ((Variable) node).getName();
+                } else if (node instanceof NumberLiteral) {
+                    result = ((NumberLiteral) node).getValue().toString();
+                } else if (node instanceof FunctionCall) {
+                    result = ((FunctionCall) node).getFunctionName();
+                } else {
+                    result = ((Operator) node).getOperator().getSymbol();
+                }
+                return result;
+            }
+            
+        });
+        
+        assertThat(order.toString(), is("<||<&&<A>A<!<F>!>&&<G>G>||"));
+    }
+    
     /**
      * Asserts that the given expression is a {@link Variable}.
      * 
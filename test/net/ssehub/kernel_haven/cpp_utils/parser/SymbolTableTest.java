@@ -0,0 +1,206 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.cpp_utils.parser;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.CppExpression;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.Operator;
+import net.ssehub.kernel_haven.cpp_utils.parser.ast.Variable;
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+
+/**
+ * Tests the {@link SymbolTable}.
+ *
+ * @author Adam
+ */
+@SuppressWarnings("null")
+public class SymbolTableTest {
+    
+    /**
+     * Tests that names get dense IDs, and that spans and strings with the same name get the same ID.
+     */
+    @Test
+    public void testIds() {
+        SymbolTable table = new SymbolTable();
+        char[] chars = "A && CONFIG_B".toCharArray();
+        
+        assertThat(table.getId(chars, 0, 1), is(0));
+        assertThat(table.getId(chars, 5, 8), is(1));
+        assertThat(table.getId("CONFIG_B"), is(1));
+        assertThat(table.getId("A"), is(0));
+        assertThat(table.getId("C"), is(2));
+        assertThat(table.size(), is(3));
+        
+        assertThat(table.getName(1), is("CONFIG_B"));
+    }
+    
+    /**
+     * Tests that {@link SymbolTable#intern(String)} returns the canonical instance.
+     */
+    @Test
+    public void testIntern() {
+        SymbolTable table = new SymbolTable();
+        String first = new String("CONFIG_A");
+        String second = new String("CONFIG_A");
+        
+        assertThat(table.intern(first) == first, is(true));
+        assertThat(table.intern(second) == first, is(true));
+        assertThat(table.getName(table.getId("CONFIG_A".toCharArray(), 0, 8)) == first, is(true));
+    }
+    
+    /**
+     * Tests that an unknown ID leads to an exception.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownId() {
+        SymbolTable table = new SymbolTable();
+        table.getId("A");
+        
+        table.getName(1);
+    }
+    
+    /**
+     * Tests that {@link SymbolTable#clear()} removes all names except the permanent ones, and starts a new generation.
+     */
+    @Test
+    public void testClear() {
+        SymbolTable table = new SymbolTable("defined");
+        String defined = table.getName(0);
+        for (int i = 0; i < 5000; i++) {
+            table.getId("CONFIG_" + i);
+        }
+        assertThat(table.size(), is(5001));
+        assertThat(table.getGeneration(), is(0));
+        
+        table.clear();
+        assertThat(table.size(), is(1));
+        assertThat(table.getGeneration(), is(1));
+        assertThat(table.getId("defined"), is(0));
+        assertThat(table.intern(new String("defined")) == defined, is(true));
+        
+        // IDs are re-used
+        assertThat(table.getId("CONFIG_B"), is(1));
+        assertThat(table.getName(1), is("CONFIG_B"));
+        assertThat(table.getId("CONFIG_0"), is(2));
+        assertThat(table.size(), is(3));
+    }
+    
+    /**
+     * Tests that {@link SymbolTable#clear()} invalidates the compact expressions of the old generation.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testClearGlobal() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        CompactExpression before = parser.parseCompact("defined(CLEAR_A) && CLEAR_B");
+        
+        SymbolTable.GLOBAL.clear();
+        CompactExpression after = parser.parseCompact("defined(CLEAR_A) && CLEAR_B");
+        
+        assertThat(after.getName(1), is("defined"));
+        assertThat(after.toAst(), is(parser.parse("defined(CLEAR_A) && CLEAR_B")));
+        assertThat(before.equals(after), is(false));
+        try {
+            before.getName(0);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+    
+    /**
+     * Tests that the table grows correctly.
+     */
+    @Test
+    public void testManyNames() {
+        SymbolTable table = new SymbolTable();
+        for (int i = 0; i < 10000; i++) {
+            assertThat(table.getId("CONFIG_" + i), is(i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            char[] name = ("CONFIG_" + i).toCharArray();
+            assertThat(table.getId(name, 0, name.length), is(i));
+            assertThat(table.getName(i), is("CONFIG_" + i));
+        }
+        assertThat(table.size(), is(10000));
+    }
+    
+    /**
+     * Tests that several threads get the same IDs for the same names.
+     * 
+     * @throws Exception unwanted.
+     */
+    @Test
+    public void testConcurrent() throws Exception {
+        SymbolTable table = new SymbolTable();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    int[] ids = new int[5000];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = table.getId("CONFIG_" + i);
+                    }
+                    return ids;
+                }));
+            }
+            
+            int[] first = futures.get(0).get();
+            for (Future<int[]> future : futures) {
+                assertThat(future.get(), is(first));
+            }
+            for (int i = 0; i < first.length; i++) {
+                assertThat(table.getName(first[i]), is("CONFIG_" + i));
+            }
+            assertThat(table.size(), is(5000));
+            
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    /**
+     * Tests that the {@link CppParser} uses the same string instance for all variables with the same name.
+     * 
+     * @throws ExpressionFormatException unwanted.
+     */
+    @Test
+    public void testParserSharesNames() throws ExpressionFormatException {
+        CppParser parser = new CppParser();
+        
+        Operator op = (Operator) parser.parse("CONFIG_SHARED_NAME > 1 || CONFIG_SHARED_NAME");
+        CppExpression left = ((Operator) op.getLeftSide()).getLeftSide();
+        String name1 = ((Variable) left).getName();
+        String name2 = ((Variable) op.getRightSide()).getName();
+        
+        assertThat(name1 == name2, is(true));
+        assertThat(name1 == SymbolTable.GLOBAL.intern("CONFIG_SHARED_NAME"), is(true));
+    }
+    
+}